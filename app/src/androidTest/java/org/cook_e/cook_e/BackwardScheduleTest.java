@@ -0,0 +1,159 @@
+
+/*
+ * Copyright 2016 the Cook-E development team
+ *
+ * This file is part of Cook-E.
+ *
+ * Cook-E is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Cook-E is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Cook-E.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.cook_e.cook_e;
+
+import org.cook_e.data.BackwardSchedule;
+import org.cook_e.data.Bunch;
+import org.cook_e.data.MealPlan;
+import org.cook_e.data.Recipe;
+import org.cook_e.data.Step;
+import org.cook_e.data.TimeLearnerStub;
+import org.joda.time.Duration;
+import org.joda.time.Instant;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Tests for scheduling backwards from a serve time
+ */
+public class BackwardScheduleTest {
+    private final List<String> ingredients = Collections.emptyList();
+
+    private final Instant serveTime = new Instant(Duration.standardHours(19).getMillis());
+
+    private MealPlan createMeal() {
+        List<Step> steps1 = new ArrayList<>();
+        steps1.add(new Step(ingredients, "Boil the pasta", Duration.standardMinutes(10), true, 0));
+        List<Step> steps2 = new ArrayList<>();
+        steps2.add(new Step(ingredients, "Knead the dough", Duration.standardMinutes(5), false, 0));
+        steps2.add(new Step(ingredients, "Bake the bread", Duration.standardMinutes(20), true, 1));
+        Bunch bunch = new Bunch();
+        bunch.addRecipe(new Recipe("Pasta", "test", steps1));
+        bunch.addRecipe(new Recipe("Bread", "test", steps2));
+        return new MealPlan(bunch, new TimeLearnerStub());
+    }
+
+    private MealPlan createMealEndingWithWork() {
+        List<Step> steps1 = new ArrayList<>();
+        steps1.add(new Step(ingredients, "Stir the soup", Duration.standardMinutes(5), false, 0));
+        List<Step> steps2 = new ArrayList<>();
+        steps2.add(new Step(ingredients, "Plate the salad", Duration.standardMinutes(3), false, 0));
+        Bunch bunch = new Bunch();
+        bunch.addRecipe(new Recipe("Soup", "test", steps1));
+        bunch.addRecipe(new Recipe("Salad", "test", steps2));
+        return new MealPlan(bunch, new TimeLearnerStub());
+    }
+
+    @Test
+    public void testLatestStartTimes() {
+        BackwardSchedule schedule = new BackwardSchedule(createMeal(), 1);
+        assertEquals(Duration.standardMinutes(10), schedule.getStartOffset(0));
+        assertEquals(Duration.standardMinutes(25), schedule.getStartOffset(1));
+        assertEquals(Duration.standardMinutes(20), schedule.getStartOffset(2));
+        assertEquals(Duration.standardMinutes(25), schedule.getTotalDuration());
+        assertEquals(serveTime.minus(Duration.standardMinutes(10)),
+                schedule.getRecipeStartTime(0, serveTime));
+        assertEquals(serveTime.minus(Duration.standardMinutes(25)),
+                schedule.getRecipeStartTime(1, serveTime));
+        assertEquals(serveTime.minus(Duration.standardMinutes(25)),
+                schedule.getStartTime(serveTime));
+    }
+
+    @Test
+    public void testDishesFinishTogether() {
+        BackwardSchedule schedule = new BackwardSchedule(createMeal(), 1);
+        assertEquals(serveTime, schedule.getRecipeEndTime(0, serveTime));
+        assertEquals(serveTime, schedule.getRecipeEndTime(1, serveTime));
+    }
+
+    @Test
+    public void testOneCookCannotFinishTwoStepsTogether() {
+        BackwardSchedule schedule = new BackwardSchedule(createMealEndingWithWork(), 1);
+        assertEquals(serveTime, schedule.getRecipeEndTime(0, serveTime));
+        assertEquals(serveTime.minus(Duration.standardMinutes(5)),
+                schedule.getRecipeEndTime(1, serveTime));
+        assertEquals(Duration.standardMinutes(8), schedule.getTotalDuration());
+    }
+
+    @Test
+    public void testTwoCooksFinishTogether() {
+        BackwardSchedule schedule = new BackwardSchedule(createMealEndingWithWork(), 2);
+        assertEquals(serveTime, schedule.getRecipeEndTime(0, serveTime));
+        assertEquals(serveTime, schedule.getRecipeEndTime(1, serveTime));
+        assertEquals(Duration.standardMinutes(5), schedule.getTotalDuration());
+    }
+
+    @Test
+    public void testOvenIsShared() {
+        List<Step> steps1 = new ArrayList<>();
+        steps1.add(new Step(ingredients, "Bake the bread", Duration.standardMinutes(20), true, 0));
+        List<Step> steps2 = new ArrayList<>();
+        steps2.add(new Step(ingredients, "Bake the cake", Duration.standardMinutes(30), true, 0));
+        Bunch bunch = new Bunch();
+        bunch.addRecipe(new Recipe("Bread", "test", steps1));
+        bunch.addRecipe(new Recipe("Cake", "test", steps2));
+        BackwardSchedule schedule = new BackwardSchedule(
+                new MealPlan(bunch, new TimeLearnerStub()), 1);
+        // The bread goes in the oven first, so that the cake comes out at the serve time
+        assertEquals(Duration.standardMinutes(50), schedule.getStartOffset(0));
+        assertEquals(Duration.standardMinutes(30), schedule.getEndOffset(0));
+        assertEquals(Duration.standardMinutes(30), schedule.getStartOffset(1));
+        assertEquals(serveTime, schedule.getRecipeEndTime(1, serveTime));
+    }
+
+    @Test
+    public void testChangeServeTime() {
+        BackwardSchedule schedule = new BackwardSchedule(createMeal(), 1);
+        Instant laterServeTime = serveTime.plus(Duration.standardMinutes(30));
+        for (int step = 0; step < schedule.getPlan().getStepCount(); step++) {
+            assertEquals(schedule.getStartTime(step, serveTime).plus(Duration.standardMinutes(30)),
+                    schedule.getStartTime(step, laterServeTime));
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testNoCooks() {
+        new BackwardSchedule(createMeal(), 0);
+    }
+
+    @Test
+    public void testIndependentStepsStartAsLateAsPossible() {
+        List<Step> steps = new ArrayList<>();
+        steps.add(new Step(ingredients, "Boil the rice", Duration.standardMinutes(20), true, 0));
+        steps.add(new Step(ingredients, "Chop the vegetables", Duration.standardMinutes(5), false,
+                1, Collections.<String>emptyList(), Collections.<Integer>emptyList()));
+        steps.add(new Step(ingredients, "Stir-fry everything", Duration.standardMinutes(5), false,
+                2, Collections.<String>emptyList(), Arrays.asList(0, 1)));
+        Bunch bunch = new Bunch();
+        bunch.addRecipe(new Recipe("Stir-fry", "test", steps));
+        BackwardSchedule schedule = new BackwardSchedule(
+                new MealPlan(bunch, new TimeLearnerStub()), 1);
+        assertEquals(Duration.standardMinutes(25), schedule.getStartOffset(0));
+        assertEquals(Duration.standardMinutes(10), schedule.getStartOffset(1));
+        assertEquals(Duration.standardMinutes(5), schedule.getStartOffset(2));
+        assertEquals(Duration.standardMinutes(25), schedule.getTotalDuration());
+    }
+}
@@ -0,0 +1,123 @@
+
+/*
+ * Copyright 2016 the Cook-E development team
+ *
+ * This file is part of Cook-E.
+ *
+ * Cook-E is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Cook-E is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Cook-E.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.cook_e.cook_e;
+
+import org.cook_e.data.CookSpeed;
+import org.cook_e.data.SpeedFactor;
+import org.cook_e.data.Step;
+import org.joda.time.Duration;
+import org.junit.Test;
+
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests for {@link CookSpeed}
+ */
+public class CookSpeedTest {
+
+    private static Step step(String description) {
+        return new Step(Collections.<String>emptyList(), description, Duration.standardMinutes(1),
+                false, 0);
+    }
+
+    @Test
+    public void testNothingLearned() {
+        final CookSpeed speed = new CookSpeed();
+        assertEquals(1, speed.getFactor(step("Chop the onions")), 0);
+        assertEquals(1, speed.getFactor(step("Something else")), 0);
+    }
+
+    @Test
+    public void testFewSamplesAreShrunk() {
+        final CookSpeed speed = new CookSpeed();
+        speed.learn(step("Wait"), 2);
+        final double factor = speed.getFactor(step("Wait"));
+        assertTrue(factor > 1);
+        assertTrue(factor < 2);
+        for (int i = 0; i < 100; i++) {
+            speed.learn(step("Wait"), 2);
+        }
+        assertEquals(2, speed.getFactor(step("Wait")), 0.1);
+    }
+
+    @Test
+    public void testVerbFactor() {
+        final CookSpeed speed = new CookSpeed();
+        for (int i = 0; i < 20; i++) {
+            speed.learn(step("Chop the carrots"), 2);
+            speed.learn(step("Stir the sauce"), 1);
+        }
+        // Conjugated and capitalized forms count as the same verb
+        final double chop = speed.getFactor(step("Finely CHOPS the onions"));
+        final double stir = speed.getFactor(step("stir"));
+        final double other = speed.getFactor(step("Wait for the water"));
+        assertTrue(chop > other);
+        assertTrue(other > stir);
+    }
+
+    @Test
+    public void testSameStepIsLookedUpAgain() {
+        final CookSpeed speed = new CookSpeed();
+        final Step chop = step("Chop the carrots");
+        final Step wait = step("Wait");
+        assertEquals(1, speed.getFactor(chop), 0);
+        for (int i = 0; i < 20; i++) {
+            speed.learn(chop, 2);
+        }
+        // The verb found the first time is used again
+        assertEquals("chop", speed.learn(chop, 2).get(1).getToken());
+        assertTrue(speed.getFactor(chop) > speed.getFactor(wait));
+        assertEquals(1, speed.learn(wait, 1).size());
+    }
+
+    @Test
+    public void testRatiosAreLimited() {
+        final CookSpeed speed = new CookSpeed();
+        for (int i = 0; i < 100; i++) {
+            speed.learn(step("Wait"), 1000);
+        }
+        assertEquals(4, speed.getFactor(step("Wait")), 0.5);
+    }
+
+    @Test
+    public void testLearnReturnsChangedFactors() {
+        final CookSpeed speed = new CookSpeed();
+        final List<SpeedFactor> changed = speed.learn(step("Chop the carrots"), 2);
+        assertEquals(2, changed.size());
+        assertEquals(CookSpeed.GLOBAL_TOKEN, changed.get(0).getToken());
+        assertEquals("chop", changed.get(1).getToken());
+        assertEquals(1, speed.learn(step("Wait"), 2).size());
+
+        final CookSpeed loaded = new CookSpeed(speed.getFactors());
+        assertEquals(speed.getFactor(step("Chop")), loaded.getFactor(step("Chop")), 0);
+        loaded.clear();
+        assertEquals(1, loaded.getFactor(step("Chop")), 0);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testNonPositiveRatio() {
+        new CookSpeed().learn(step("Wait"), 0);
+    }
+}
@@ -20,12 +20,17 @@
 package org.cook_e.cook_e;
 
 import org.cook_e.data.Bunch;
+import org.cook_e.data.CompletionTimeDistribution;
 import org.cook_e.data.CookingTimeEstimator;
+import org.cook_e.data.Kitchen;
+import org.cook_e.data.KeywordResourceParser;
+import org.cook_e.data.MealPlan;
 import org.cook_e.data.Recipe;
 import org.cook_e.data.Schedule;
 import org.cook_e.data.Step;
 import org.cook_e.data.StorageAccessor;
 import org.cook_e.data.TimeLearner;
+import org.cook_e.data.TimeLearnerStub;
 import org.joda.time.Duration;
 import org.joda.time.ReadableDuration;
 import org.junit.Test;
@@ -33,9 +38,13 @@ import org.junit.Test;
 import java.sql.SQLClientInfoException;
 import java.sql.SQLException;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
 
 /**
  * Created by Tyler on 2/25/2016.
@@ -205,4 +214,128 @@ public class CookingTimeEstimatorTest {
         assertEquals(3, optimizedTime);
     }
 
+    @Test
+    public void testOptimizedDurationKeepsSeconds() {
+        final ReadableDuration ninetySecondDuration = Duration.standardSeconds(90);
+        List<Step> steps = new ArrayList<Step>();
+        steps.add(new Step(sampleIngredients, sampleDescription, ninetySecondDuration, false, 0));
+        steps.add(new Step(sampleIngredients, sampleDescription, ninetySecondDuration, false, 1));
+        Recipe recipe = new Recipe("title", "author", steps);
+        Bunch bunch = new Bunch();
+        bunch.addRecipe(recipe);
+        MealPlan plan = new MealPlan(bunch, new TimeLearnerStub());
+        assertEquals(Duration.standardSeconds(180), CookingTimeEstimator.getOptimizedDuration(plan));
+        assertEquals(3, CookingTimeEstimator.getOptimizedTime(bunch, new TimeLearnerStub()));
+    }
+
+    @Test
+    public void testOptimizedDurationWaitsForBlockedRecipes() {
+        List<Step> steps1 = new ArrayList<Step>();
+        steps1.add(new Step(sampleIngredients, sampleDescription, twoMinuteDuration, true, 0));
+        steps1.add(new Step(sampleIngredients, sampleDescription, oneMinuteDuration, false, 1));
+        Recipe recipe1 = new Recipe("title1", "author", steps1);
+        List<Step> steps2 = new ArrayList<Step>();
+        steps2.add(new Step(sampleIngredients, sampleDescription, oneMinuteDuration, true, 0));
+        steps2.add(new Step(sampleIngredients, sampleDescription, oneMinuteDuration, true, 1));
+        Recipe recipe2 = new Recipe("title2", "author", steps2);
+        Bunch bunch = new Bunch();
+        bunch.addRecipe(recipe1);
+        bunch.addRecipe(recipe2);
+        MealPlan plan = new MealPlan(bunch, new TimeLearnerStub());
+        // Both recipes start at once, recipe 2 finishes at 2 minutes, and recipe 1 waits for its
+        // first step to end at 2 minutes before its last step
+        assertEquals(Duration.standardMinutes(3), CookingTimeEstimator.getOptimizedDuration(plan));
+    }
+
+    @Test
+    public void testOptimizedTimeWithHelper() {
+        List<Step> steps1 = new ArrayList<Step>();
+        steps1.add(new Step(sampleIngredients, sampleDescription, oneMinuteDuration, false, 0));
+        steps1.add(new Step(sampleIngredients, sampleDescription, twoMinuteDuration, true, 1));
+        Recipe recipe1 = new Recipe("title1", "author", steps1);
+        List<Step> steps2 = new ArrayList<Step>();
+        steps2.add(new Step(sampleIngredients, sampleDescription, twoMinuteDuration, false, 0));
+        steps2.add(new Step(sampleIngredients, sampleDescription, twoMinuteDuration, false, 1));
+        Recipe recipe2 = new Recipe("title2", "author", steps2);
+        Bunch bunch = new Bunch();
+        bunch.addRecipe(recipe1);
+        bunch.addRecipe(recipe2);
+        MealPlan plan = new MealPlan(bunch, new TimeLearnerStub());
+        assertEquals(5, CookingTimeEstimator.getOptimizedTime(plan, 1));
+        // A helper starts recipe 2 while the first cook does the first step of recipe 1
+        assertEquals(4, CookingTimeEstimator.getOptimizedTime(plan, 2));
+        // More helpers cannot do the steps of recipe 2 at the same time
+        assertEquals(Duration.standardMinutes(4), CookingTimeEstimator.getOptimizedDuration(plan, 3));
+    }
+
+    @Test
+    public void testOptimizedTimeWithLimitedEquipment() {
+        List<Step> steps1 = new ArrayList<Step>();
+        steps1.add(new Step(sampleIngredients, sampleDescription, twoMinuteDuration, true, 0,
+                Collections.singletonList(Kitchen.OVEN)));
+        Recipe recipe1 = new Recipe("title1", "author", steps1);
+        List<Step> steps2 = new ArrayList<Step>();
+        steps2.add(new Step(sampleIngredients, sampleDescription, oneMinuteDuration, true, 0,
+                Collections.singletonList(Kitchen.OVEN)));
+        Recipe recipe2 = new Recipe("title2", "author", steps2);
+        Bunch bunch = new Bunch();
+        bunch.addRecipe(recipe1);
+        bunch.addRecipe(recipe2);
+        TimeLearnerStub tl = new TimeLearnerStub();
+        MealPlan onePlan = new MealPlan(bunch, tl);
+        assertEquals(3, CookingTimeEstimator.getOptimizedTime(onePlan));
+        Map<String, Integer> twoOvens = new HashMap<>();
+        twoOvens.put(Kitchen.OVEN, 2);
+        MealPlan twoPlan = new MealPlan(bunch, tl, new KeywordResourceParser(), new Kitchen(twoOvens));
+        assertEquals(2, CookingTimeEstimator.getOptimizedTime(twoPlan));
+        MealPlan unlimitedPlan = new MealPlan(bunch, tl, new KeywordResourceParser(), Kitchen.UNLIMITED);
+        assertEquals(2, CookingTimeEstimator.getOptimizedTime(unlimitedPlan));
+    }
+
+    private Bunch createVariableBunch() {
+        List<Step> steps1 = new ArrayList<Step>();
+        steps1.add(new Step(sampleIngredients, "Chop", Duration.standardMinutes(10), false, 0));
+        steps1.add(new Step(sampleIngredients, "Simmer", Duration.standardMinutes(20), true, 1));
+        List<Step> steps2 = new ArrayList<Step>();
+        steps2.add(new Step(sampleIngredients, "Mix", Duration.standardMinutes(5), false, 0));
+        steps2.add(new Step(sampleIngredients, "Stir", Duration.standardMinutes(15), false, 1));
+        Bunch bunch = new Bunch();
+        bunch.addRecipe(new Recipe("title1", "author", steps1));
+        bunch.addRecipe(new Recipe("title2", "author", steps2));
+        return bunch;
+    }
+
+    @Test
+    public void testDistributionWithCertainTimes() {
+        MealPlan plan = new MealPlan(createVariableBunch(), new TimeLearnerStub());
+        CompletionTimeDistribution distribution =
+                CookingTimeEstimator.getCompletionTimeDistribution(plan, 1);
+        assertEquals(CookingTimeEstimator.DEFAULT_TRIAL_COUNT, distribution.getTrialCount());
+        Duration estimate = CookingTimeEstimator.getOptimizedDuration(plan);
+        assertEquals(estimate, distribution.getMedian());
+        assertEquals(estimate, distribution.get90thPercentile());
+    }
+
+    @Test
+    public void testDistributionWithUncertainTimes() {
+        TimeLearnerStub tl = new TimeLearnerStub() {
+            @Override
+            public double getRelativeDeviation(Recipe r, Step s) {
+                return 0.3;
+            }
+        };
+        MealPlan plan = new MealPlan(createVariableBunch(), tl);
+        CompletionTimeDistribution distribution =
+                CookingTimeEstimator.getCompletionTimeDistribution(plan, 1, 1000, 42);
+        assertEquals(1000, distribution.getTrialCount());
+        assertTrue(distribution.getPercentile(0).isShorterThan(distribution.getMedian()));
+        assertTrue(distribution.getMedian().isShorterThan(distribution.get90thPercentile()));
+        assertTrue(distribution.get90thPercentile().isLongerThan(
+                CookingTimeEstimator.getOptimizedDuration(plan)));
+        // The same seed gives the same distribution
+        CompletionTimeDistribution again =
+                CookingTimeEstimator.getCompletionTimeDistribution(plan, 1, 1000, 42);
+        assertEquals(distribution.getMedian(), again.getMedian());
+        assertEquals(distribution.get90thPercentile(), again.get90thPercentile());
+    }
 }
@@ -0,0 +1,153 @@
+
+/*
+ * Copyright 2016 the Cook-E development team
+ *
+ * This file is part of Cook-E.
+ *
+ * Cook-E is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Cook-E is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Cook-E.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.cook_e.cook_e;
+
+import android.content.Context;
+import android.support.annotation.NonNull;
+import android.support.test.InstrumentationRegistry;
+import android.support.v4.util.LongSparseArray;
+
+import org.cook_e.data.LearnerCache;
+import org.cook_e.data.LearningWeight;
+import org.cook_e.data.Recipe;
+import org.cook_e.data.SQLiteAccessor;
+import org.cook_e.data.StorageParser;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.sql.SQLException;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests the {@link LearnerCache} class
+ */
+public class LearnerCacheTest {
+
+    private SQLiteAccessor mAccessor;
+    private Recipe mRecipe;
+    private Recipe mOtherRecipe;
+
+    @Before
+    public void setUp() throws SQLException {
+        final Context context = InstrumentationRegistry.getTargetContext();
+        mAccessor = new SQLiteAccessor(context, new StorageParser());
+        mAccessor.clearAllTables();
+        mRecipe = RecipeUnitTest.createGenericRecipe("My Recipe", "Kyle Woo", 0, 0, 5, false);
+        mOtherRecipe = RecipeUnitTest.createGenericRecipe("My Recipe 2", "Kyle Woo", 0, 0, 5, false);
+        mAccessor.storeRecipe(mRecipe);
+        mAccessor.storeRecipe(mOtherRecipe);
+        mAccessor.storeLearnerData(mRecipe, Arrays.asList(new LearningWeight(0, 2, 0.75),
+                new LearningWeight(2, 0.5, 0.75)));
+    }
+
+    @After
+    public void tearDown() throws SQLException {
+        mAccessor.clearAllTables();
+    }
+
+    @Test
+    public void testCachedRecipesAreNotReloaded() throws SQLException {
+        final LearnerCache cache = new LearnerCache(4);
+        final long[] ids = { mRecipe.getObjectId(), mOtherRecipe.getObjectId() };
+        LongSparseArray<List<LearningWeight>> weights = cache.get(ids, mAccessor);
+        assertEquals(2, cache.size());
+        assertEquals(2, weights.get(mRecipe.getObjectId()).size());
+        assertTrue(weights.get(mOtherRecipe.getObjectId()).isEmpty());
+
+        // Changes made directly to the database are not seen until the recipe is invalidated
+        mAccessor.deleteLearnerData();
+        weights = cache.get(ids, mAccessor);
+        assertEquals(2, weights.get(mRecipe.getObjectId()).size());
+        cache.invalidate(mRecipe.getObjectId());
+        weights = cache.get(ids, mAccessor);
+        assertTrue(weights.get(mRecipe.getObjectId()).isEmpty());
+    }
+
+    @Test
+    public void testUpdate() throws SQLException {
+        final LearnerCache cache = new LearnerCache(4);
+        final long[] ids = { mRecipe.getObjectId() };
+        cache.get(ids, mAccessor);
+        cache.update(mRecipe.getObjectId(), new LearningWeight(1, 1.5, 0.75));
+        cache.update(mRecipe.getObjectId(), new LearningWeight(2, 3, 0.5));
+
+        final List<LearningWeight> weights = cache.get(ids, mAccessor).get(mRecipe.getObjectId());
+        assertEquals(3, weights.size());
+        assertEquals(1, weights.get(1).getIndex());
+        assertEquals(1.5, weights.get(1).getTimeWeight(), 0);
+        assertEquals(3, weights.get(2).getTimeWeight(), 0);
+        assertEquals(0.5, weights.get(2).getLearnRate(), 0);
+    }
+
+    @Test
+    public void testCopiesAreReturned() throws SQLException {
+        final LearnerCache cache = new LearnerCache(4);
+        final long[] ids = { mRecipe.getObjectId() };
+        cache.get(ids, mAccessor).get(mRecipe.getObjectId()).get(0).setTimeWeight(10);
+        assertEquals(2, cache.get(ids, mAccessor).get(mRecipe.getObjectId()).get(0)
+                .getTimeWeight(), 0);
+    }
+
+    @Test
+    public void testLeastRecentlyUsedIsEvicted() throws SQLException {
+        final LearnerCache cache = new LearnerCache(1);
+        cache.get(new long[] { mRecipe.getObjectId() }, mAccessor);
+        cache.get(new long[] { mOtherRecipe.getObjectId() }, mAccessor);
+        assertEquals(1, cache.size());
+
+        mAccessor.deleteLearnerData();
+        final List<LearningWeight> weights = cache.get(new long[] { mRecipe.getObjectId() },
+                mAccessor).get(mRecipe.getObjectId());
+        assertTrue(weights.isEmpty());
+    }
+
+    @Test
+    public void testSourceIsOnlyUsedForMissingRecipes() throws SQLException {
+        final LearnerCache cache = new LearnerCache(4);
+        final long[] ids = { mRecipe.getObjectId(), mOtherRecipe.getObjectId() };
+        final int[] loadCount = { 0 };
+        final LearnerCache.Source source = new LearnerCache.Source() {
+            @NonNull
+            @Override
+            public LongSparseArray<List<LearningWeight>> load(@NonNull long[] recipeIds)
+                    throws SQLException {
+                loadCount[0]++;
+                return mAccessor.loadLearnerData(recipeIds);
+            }
+        };
+        cache.get(ids, source);
+        cache.get(ids, source);
+        assertEquals(1, loadCount[0]);
+        cache.invalidate(mOtherRecipe.getObjectId());
+        cache.get(ids, source);
+        assertEquals(2, loadCount[0]);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testZeroCapacity() {
+        new LearnerCache(0);
+    }
+}
@@ -0,0 +1,161 @@
+
+/*
+ * Copyright 2016 the Cook-E development team
+ *
+ * This file is part of Cook-E.
+ *
+ * Cook-E is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Cook-E is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Cook-E.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.cook_e.cook_e;
+
+import android.content.Context;
+import android.support.test.InstrumentationRegistry;
+
+import org.cook_e.data.LearnerDataWriter;
+import org.cook_e.data.LearningWeight;
+import org.cook_e.data.Recipe;
+import org.cook_e.data.SQLiteAccessor;
+import org.cook_e.data.StorageParser;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.sql.SQLException;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests the {@link LearnerDataWriter} class
+ */
+public class LearnerDataWriterTest {
+    /**
+     * A flush delay long enough that no flush happens during a test unless requested
+     */
+    private static final long NEVER = 60 * 60 * 1000;
+
+    private SQLiteAccessor mAccessor;
+    private File mJournal;
+    private Recipe mRecipe;
+
+    @Before
+    public void setUp() throws SQLException {
+        final Context context = InstrumentationRegistry.getTargetContext();
+        mAccessor = new SQLiteAccessor(context, new StorageParser());
+        mAccessor.clearAllTables();
+        mJournal = new File(context.getCacheDir(), "test_learner_journal");
+        //noinspection ResultOfMethodCallIgnored
+        mJournal.delete();
+        mRecipe = RecipeUnitTest.createGenericRecipe("My Recipe", "Kyle Woo", 0, 0, 3, false);
+        mAccessor.storeRecipe(mRecipe);
+    }
+
+    @After
+    public void tearDown() throws SQLException {
+        mAccessor.clearAllTables();
+        //noinspection ResultOfMethodCallIgnored
+        mJournal.delete();
+    }
+
+    @Test
+    public void testUpdateIsBufferedUntilFlush() throws SQLException, IOException {
+        final LearnerDataWriter writer = new LearnerDataWriter(mAccessor, mJournal, NEVER);
+        writer.update(mRecipe.getObjectId(), new LearningWeight(1, 1.5, 0.75));
+        assertEquals(1, writer.getPendingCount());
+        assertTrue(mAccessor.loadLearnerData(mRecipe).isEmpty());
+
+        writer.flush();
+        assertEquals(0, writer.getPendingCount());
+        assertFalse(mJournal.exists());
+        final List<LearningWeight> weights = mAccessor.loadLearnerData(mRecipe);
+        assertEquals(1, weights.size());
+        assertEquals(1, weights.get(0).getIndex());
+        assertEquals(1.5, weights.get(0).getTimeWeight(), 0);
+        assertEquals(0.75, weights.get(0).getLearnRate(), 0);
+        writer.close();
+    }
+
+    @Test
+    public void testLatestUpdateWins() throws SQLException, IOException {
+        final LearnerDataWriter writer = new LearnerDataWriter(mAccessor, mJournal, NEVER);
+        final LearningWeight weight = new LearningWeight(0, 2, 0.75);
+        writer.update(mRecipe.getObjectId(), weight);
+        weight.setTimeWeight(3);
+        weight.setLearnRate(0.5);
+        writer.update(mRecipe.getObjectId(), weight);
+        assertEquals(1, writer.getPendingCount());
+        writer.close();
+
+        final List<LearningWeight> weights = mAccessor.loadLearnerData(mRecipe);
+        assertEquals(1, weights.size());
+        assertEquals(3, weights.get(0).getTimeWeight(), 0);
+        assertEquals(0.5, weights.get(0).getLearnRate(), 0);
+    }
+
+    @Test
+    public void testJournalIsReplayed() throws SQLException, IOException {
+        // The first writer never writes to the database, as if the process had died
+        final LearnerDataWriter lost = new LearnerDataWriter(mAccessor, mJournal, NEVER);
+        lost.update(mRecipe.getObjectId(), new LearningWeight(0, 1.25, 0.75));
+        lost.update(mRecipe.getObjectId(), new LearningWeight(2, 0.5, 0.75));
+
+        final LearnerDataWriter writer = new LearnerDataWriter(mAccessor, mJournal, NEVER);
+        writer.flush();
+        assertEquals(2, mAccessor.loadLearnerData(mRecipe).size());
+        writer.close();
+    }
+
+    @Test
+    public void testUpdatesAfterDamagedRecordAreReplayed() throws SQLException, IOException {
+        final LearnerDataWriter lost = new LearnerDataWriter(mAccessor, mJournal, NEVER);
+        lost.update(mRecipe.getObjectId(), new LearningWeight(0, 1.25, 0.75));
+        // Part of a record, as if the process had died while writing it
+        final FileOutputStream stream = new FileOutputStream(mJournal, true);
+        stream.write(new byte[] { 1, 0, 0, 0, 0 });
+        stream.close();
+
+        // This writer also dies, maybe before writing its update to the database
+        final LearnerDataWriter lostAgain = new LearnerDataWriter(mAccessor, mJournal, NEVER);
+        lostAgain.update(mRecipe.getObjectId(), new LearningWeight(2, 0.5, 0.75));
+
+        final LearnerDataWriter writer = new LearnerDataWriter(mAccessor, mJournal, NEVER);
+        writer.flush();
+        assertEquals(2, mAccessor.loadLearnerData(mRecipe).size());
+        writer.close();
+    }
+
+    @Test
+    public void testDiscardRemovesRecipeFromJournal() throws SQLException, IOException {
+        final Recipe other = RecipeUnitTest.createGenericRecipe("Other", "Kyle Woo", 0, 0, 3,
+                false);
+        mAccessor.storeRecipe(other);
+        final LearnerDataWriter lost = new LearnerDataWriter(mAccessor, mJournal, NEVER);
+        lost.update(mRecipe.getObjectId(), new LearningWeight(0, 1.25, 0.75));
+        lost.update(other.getObjectId(), new LearningWeight(1, 0.5, 0.75));
+        lost.discard(mRecipe.getObjectId());
+        assertEquals(1, lost.getPendingCount());
+
+        final LearnerDataWriter writer = new LearnerDataWriter(mAccessor, mJournal, NEVER);
+        writer.flush();
+        assertTrue(mAccessor.loadLearnerData(mRecipe).isEmpty());
+        assertEquals(1, mAccessor.loadLearnerData(other).size());
+        writer.close();
+    }
+}
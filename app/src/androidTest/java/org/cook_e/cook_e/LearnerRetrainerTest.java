@@ -0,0 +1,173 @@
+
+/*
+ * Copyright 2016 the Cook-E development team
+ *
+ * This file is part of Cook-E.
+ *
+ * Cook-E is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Cook-E is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Cook-E.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.cook_e.cook_e;
+
+import org.cook_e.data.CookingLog;
+import org.cook_e.data.LearnerRetrainer;
+import org.cook_e.data.LearningWeight;
+import org.cook_e.data.Recipe;
+import org.cook_e.data.Step;
+import org.joda.time.Duration;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests for {@link CookingLog} and {@link LearnerRetrainer}
+ */
+public class LearnerRetrainerTest {
+    private static final Step STEP_ONE = new Step(Collections.<String>emptyList(), "step 1",
+            new Duration(10000), false, 0);
+    private static final Step STEP_TWO = new Step(Collections.<String>emptyList(), "step 2",
+            new Duration(20000), true, 1);
+
+    private File mFile;
+    private CookingLog mLog;
+    private Recipe mRecipe;
+    private Map<Long, Recipe> mRecipes;
+
+    @Before
+    public void setUp() throws IOException {
+        mFile = File.createTempFile("cooking", "log");
+        assertTrue(mFile.delete());
+        mLog = new CookingLog(mFile);
+        mRecipe = new Recipe("title", "author", Arrays.asList(STEP_ONE, STEP_TWO));
+        mRecipe.setObjectId(1);
+        mRecipes = new HashMap<>();
+        mRecipes.put(mRecipe.getObjectId(), mRecipe);
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        mLog.clear();
+    }
+
+    private void logStep(long start, long finish, Step step) throws IOException {
+        mLog.logStepEvent(CookingLog.STEP_START, start, mRecipe, step);
+        mLog.logStepEvent(CookingLog.STEP_FINISH, finish, mRecipe, step);
+    }
+
+    @Test
+    public void testReadWhatWasLogged() throws IOException {
+        mLog.logSessionStart(100);
+        mLog.logStepEvent(CookingLog.TIMER_START, 200, mRecipe, STEP_TWO);
+        final List<CookingLog.Event> events = mLog.read();
+        assertEquals(2, events.size());
+        assertEquals(CookingLog.SESSION_START, events.get(0).getType());
+        assertEquals(100, events.get(0).getTimeMillis());
+        final CookingLog.Event timer = events.get(1);
+        assertEquals(CookingLog.TIMER_START, timer.getType());
+        assertEquals(200, timer.getTimeMillis());
+        assertEquals(mRecipe.getObjectId(), timer.getRecipeId());
+        assertEquals(STEP_TWO.getIndex(), timer.getStepIndex());
+    }
+
+    @Test
+    public void testIncompleteEventIsIgnored() throws IOException {
+        mLog.logSessionStart(100);
+        mLog.close();
+        // The process died while writing an event
+        final FileOutputStream stream = new FileOutputStream(mFile, true);
+        stream.write(new byte[] { CookingLog.STEP_START, 0, 0 });
+        stream.close();
+        assertEquals(1, mLog.read().size());
+        // Later events are still read
+        mLog.logSessionStart(200);
+        final List<CookingLog.Event> events = mLog.read();
+        assertEquals(2, events.size());
+        assertEquals(200, events.get(1).getTimeMillis());
+    }
+
+    @Test
+    public void testRetrain() throws Exception {
+        mLog.logSessionStart(0);
+        logStep(0, 8000, STEP_ONE);
+        logStep(8000, 9000, STEP_TWO);
+        mLog.logSessionStart(100000);
+        logStep(100000, 112000, STEP_ONE);
+
+        final LearnerRetrainer.Result result = new LearnerRetrainer().retrain(mLog.read(),
+                mRecipes);
+        // The same steps as TimeLearnerTest.testOneStepMulLearn. Simultaneous steps are not
+        // learned.
+        assertEquals(2, result.getSampleCount());
+        final List<LearningWeight> weights = result.getWeights().get(mRecipe.getObjectId());
+        assertEquals(1, weights.size());
+        assertEquals(STEP_ONE.getIndex(), weights.get(0).getIndex());
+        assertEquals(1.1, weights.get(0).getTimeWeight(), 1e-9);
+        assertFalse(result.getSpeedFactors().isEmpty());
+    }
+
+    @Test
+    public void testEditedStepsAreSkipped() throws Exception {
+        mLog.logSessionStart(0);
+        logStep(0, 8000, STEP_ONE);
+
+        final Step edited = new Step(Collections.<String>emptyList(), "step 1 edited",
+                new Duration(10000), false, 0);
+        mRecipe.setSteps(Arrays.asList(edited, STEP_TWO));
+        final LearnerRetrainer.Result result = new LearnerRetrainer().retrain(mLog.read(),
+                mRecipes);
+        assertEquals(0, result.getSampleCount());
+        assertTrue(result.getWeights().isEmpty());
+    }
+
+    @Test
+    public void testMovedStepsAreLearnedAtTheirNewPosition() throws Exception {
+        mLog.logSessionStart(0);
+        logStep(0, 8000, STEP_ONE);
+
+        // A step is added before the logged step, which moves it to position 1
+        final Step added = new Step(Collections.<String>emptyList(), "step 0",
+                new Duration(5000), false, 0);
+        final Step moved = new Step(Collections.<String>emptyList(), "step 1",
+                new Duration(10000), false, 1);
+        mRecipe.setSteps(Arrays.asList(added, moved));
+        final LearnerRetrainer.Result result = new LearnerRetrainer().retrain(mLog.read(),
+                mRecipes);
+        assertEquals(1, result.getSampleCount());
+        final List<LearningWeight> weights = result.getWeights().get(mRecipe.getObjectId());
+        assertEquals(1, weights.size());
+        assertEquals(1, weights.get(0).getIndex());
+    }
+
+    @Test
+    public void testUnfinishedStepsAreSkipped() throws Exception {
+        mLog.logSessionStart(0);
+        mLog.logStepEvent(CookingLog.STEP_START, 0, mRecipe, STEP_ONE);
+        mLog.logSessionStart(100000);
+        mLog.logStepEvent(CookingLog.STEP_FINISH, 108000, mRecipe, STEP_ONE);
+        assertEquals(0, new LearnerRetrainer().retrain(mLog.read(), mRecipes).getSampleCount());
+    }
+}
@@ -21,8 +21,11 @@ package org.cook_e.cook_e;
 
 import org.cook_e.data.Recipe;
 import org.cook_e.data.Step;
+import org.joda.time.Duration;
 import org.junit.Test;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
 import java.lang.NullPointerException;
 
@@ -77,6 +80,47 @@ public class RecipeUnitTest {
 
     }
 
+    @Test
+    public void testRemoveStepRenumbersDependencies() {
+        Recipe r = new Recipe("My Recipe", "Kyle", Arrays.asList(
+                createStepWithDependencies("a", null),
+                createStepWithDependencies("b", Collections.singletonList(0)),
+                createStepWithDependencies("c", Collections.singletonList(1)),
+                createStepWithDependencies("d", Arrays.asList(0, 2))));
+        r.removeStep(0);
+        assertEquals(Collections.<Integer>emptyList(), r.getStep(0).getDependencies());
+        assertEquals(Collections.singletonList(0), r.getStep(1).getDependencies());
+        assertEquals(Collections.singletonList(1), r.getStep(2).getDependencies());
+    }
+
+    @Test
+    public void testRemoveStepKeepsTransitiveDependencies() {
+        Recipe r = new Recipe("My Recipe", "Kyle", Arrays.asList(
+                createStepWithDependencies("a", null),
+                createStepWithDependencies("b", Collections.<Integer>emptyList()),
+                createStepWithDependencies("c", Collections.singletonList(0)),
+                createStepWithDependencies("d", null),
+                createStepWithDependencies("e", null)));
+        r.removeStep(2);
+        // d depended on c, which depended on a
+        assertEquals(Collections.singletonList(0), r.getStep(2).getDependencies());
+        // e still depends on the step before it
+        assertNull(r.getStep(3).getDependencies());
+        assertEquals("e", r.getStep(3).getDescription());
+    }
+
+    @Test
+    public void testRemoveStepFromSequentialRecipe() {
+        Recipe r = new Recipe("My Recipe", "Kyle", Arrays.asList(
+                createStepWithDependencies("a", null),
+                createStepWithDependencies("b", null),
+                createStepWithDependencies("c", null)));
+        r.removeStep(1);
+        assertNull(r.getStep(0).getDependencies());
+        assertNull(r.getStep(1).getDependencies());
+        assertNull(r.removeStep(2));
+    }
+
     @Test(expected = NullPointerException.class)
     public void testNonNullExceptionNoAuthor() {
         List<Step> steps = new ArrayList<>();
@@ -94,6 +138,11 @@ public class RecipeUnitTest {
         final Recipe recipe = new Recipe("test recipe", "kyle", null);
     }
 
+    private static Step createStepWithDependencies(String description, List<Integer> dependencies) {
+        return new Step(Collections.<String>emptyList(), description, Duration.standardMinutes(1),
+                false, 0, Collections.<String>emptyList(), dependencies);
+    }
+
     /**
      * Creates generic recipe with 1 step
      *
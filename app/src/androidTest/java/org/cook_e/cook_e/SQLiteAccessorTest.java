@@ -21,12 +21,16 @@ package org.cook_e.cook_e;
 
 import android.content.Context;
 import android.support.test.InstrumentationRegistry;
+import android.support.v4.util.LongSparseArray;
 
 import org.cook_e.data.Bunch;
+import org.cook_e.data.LearningWeight;
 import org.cook_e.data.Recipe;
 import org.cook_e.data.SQLiteAccessor;
+import org.cook_e.data.SpeedFactor;
 import org.cook_e.data.Step;
 import org.cook_e.data.StorageParser;
+import org.joda.time.Duration;
 import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
@@ -35,7 +39,9 @@ import java.sql.SQLException;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNull;
@@ -269,4 +275,116 @@ public class SQLiteAccessorTest {
         mAccessor.checkInvariants();
         assertEquals(expected, result);
     }
+
+    @Test
+    public void testLoadAllBunchesWithEmptyAndSharedRecipes() throws SQLException {
+        Recipe r = RecipeUnitTest.createGenericRecipe("My Recipe", "Kyle Woo", 0, 0, 5, false);
+        Recipe r2 = RecipeUnitTest.createGenericRecipe("My Recipe 2", "Kyle Woo", 0, 0, 5, false);
+        mAccessor.storeRecipe(r);
+        mAccessor.storeRecipe(r2);
+
+        // Stored out of order, so that the result must be sorted by name
+        final Bunch b3 = new Bunch("Bunch 3", Arrays.asList(r, r2));
+        final Bunch b1 = new Bunch("Bunch 1", Arrays.asList(r, r2));
+        final Bunch b2 = new Bunch("Bunch 2", Collections.<Recipe>emptyList());
+        mAccessor.storeBunch(b3);
+        mAccessor.storeBunch(b1);
+        mAccessor.storeBunch(b2);
+        mAccessor.checkInvariants();
+
+        assertEquals(Arrays.asList(b1, b2, b3), mAccessor.loadAllBunches(-1));
+        assertEquals(Arrays.asList(b1, b2), mAccessor.loadAllBunches(2));
+        assertEquals(b2, mAccessor.loadBunch("Bunch 2"));
+        assertNull(mAccessor.loadBunch("Bunch 4"));
+    }
+
+    @Test
+    public void testLoadLearnerDataForSeveralRecipes() throws SQLException {
+        Recipe r = RecipeUnitTest.createGenericRecipe("My Recipe", "Kyle Woo", 0, 0, 5, false);
+        Recipe r2 = RecipeUnitTest.createGenericRecipe("My Recipe 2", "Kyle Woo", 0, 0, 5, false);
+        Recipe r3 = RecipeUnitTest.createGenericRecipe("My Recipe 3", "Kyle Woo", 0, 0, 5, false);
+        mAccessor.storeRecipe(r);
+        mAccessor.storeRecipe(r2);
+        mAccessor.storeRecipe(r3);
+        mAccessor.storeLearnerData(r, Arrays.asList(new LearningWeight(1, 2, 0.5),
+                new LearningWeight(0, 1.5, 0.75)));
+        mAccessor.storeLearnerData(r3, Collections.singletonList(new LearningWeight(0, 0.5, 0.75)));
+
+        final LongSparseArray<List<LearningWeight>> result = mAccessor.loadLearnerData(
+                new long[] { r3.getObjectId(), r.getObjectId(), r2.getObjectId(), r.getObjectId() });
+        assertEquals(2, result.size());
+        assertNull(result.get(r2.getObjectId()));
+        final List<LearningWeight> weights = result.get(r.getObjectId());
+        assertEquals(2, weights.size());
+        // Sorted by step index
+        assertEquals(0, weights.get(0).getIndex());
+        assertEquals(1.5, weights.get(0).getTimeWeight(), 0);
+        assertEquals(1, weights.get(1).getIndex());
+        assertEquals(0.5, result.get(r3.getObjectId()).get(0).getTimeWeight(), 0);
+    }
+
+    @Test
+    public void testReplaceLearnerData() throws SQLException {
+        Recipe r = RecipeUnitTest.createGenericRecipe("My Recipe", "Kyle Woo", 0, 0, 5, false);
+        Recipe r2 = RecipeUnitTest.createGenericRecipe("My Recipe 2", "Kyle Woo", 0, 0, 5, false);
+        mAccessor.storeRecipe(r);
+        mAccessor.storeRecipe(r2);
+        mAccessor.storeLearnerData(r, Arrays.asList(new LearningWeight(0, 2, 0.5),
+                new LearningWeight(1, 1.5, 0.75)));
+        mAccessor.updateSpeedFactors(Arrays.asList(new SpeedFactor("chop", 1.5, 2),
+                new SpeedFactor("stir", 0.5, 1)));
+
+        final Map<Long, List<LearningWeight>> weights = new HashMap<>();
+        weights.put(r2.getObjectId(), Collections.singletonList(new LearningWeight(0, 0.5, 0.75)));
+        mAccessor.replaceLearnerData(weights,
+                Collections.singletonList(new SpeedFactor("chop", 1.25, 3)));
+
+        assertEquals(0, mAccessor.loadLearnerData(r).size());
+        final List<LearningWeight> loaded = mAccessor.loadLearnerData(r2);
+        assertEquals(1, loaded.size());
+        assertEquals(0.5, loaded.get(0).getTimeWeight(), 0);
+        final List<SpeedFactor> factors = mAccessor.loadSpeedFactors();
+        assertEquals(1, factors.size());
+        assertEquals("chop", factors.get(0).getToken());
+        assertEquals(1.25, factors.get(0).getFactor(), 0);
+    }
+
+    @Test
+    public void testRecipeEditKeepsLearnerDataOfUnchangedSteps() throws SQLException {
+        final Step chop = new Step(Collections.<String>emptyList(), "Chop the onions",
+                Duration.standardMinutes(5), false, 0);
+        final Step stir = new Step(Collections.<String>emptyList(), "Stir the sauce",
+                Duration.standardMinutes(2), false, 1);
+        final Step boil = new Step(Collections.<String>emptyList(), "Boil the pasta",
+                Duration.standardMinutes(10), false, 2);
+        Recipe r = new Recipe("My Recipe", "Kyle Woo", Arrays.asList(chop, stir, boil));
+        mAccessor.storeRecipe(r);
+        mAccessor.storeLearnerData(r, Arrays.asList(new LearningWeight(0, 1.5, 0.5),
+                new LearningWeight(1, 0.5, 0.5), new LearningWeight(2, 2, 0.5)));
+
+        // A new title does not change any step
+        r.setTitle("My Renamed Recipe");
+        mAccessor.editRecipe(r);
+        assertEquals(3, mAccessor.loadLearnerData(r).size());
+
+        // Remove chopping, and boil for twice as long. The steps are built the way the recipe
+        // editor builds them: the stirring step keeps its old index, and the edited boiling step
+        // has no index.
+        final Step newBoil = new Step(Collections.<String>emptyList(), "Boil the pasta",
+                Duration.standardMinutes(20));
+        assertEquals(-1, newBoil.getIndex());
+        r.setSteps(Arrays.asList(stir, newBoil));
+        mAccessor.editRecipe(r);
+        mAccessor.checkInvariants();
+
+        final List<LearningWeight> weights = mAccessor.loadLearnerData(
+                new long[] { r.getObjectId() }).get(r.getObjectId());
+        assertEquals(2, weights.size());
+        // Learner data is stored by position, which is how loaded steps are numbered
+        assertEquals(0, weights.get(0).getIndex());
+        assertEquals(0.5, weights.get(0).getTimeWeight(), 0);
+        // The learned time of boiling stays 20 minutes
+        assertEquals(1, weights.get(1).getIndex());
+        assertEquals(1, weights.get(1).getTimeWeight(), 1e-9);
+    }
 }
@@ -0,0 +1,172 @@
+
+/*
+ * Copyright 2016 the Cook-E development team
+ *
+ * This file is part of Cook-E.
+ *
+ * Cook-E is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Cook-E is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Cook-E.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.cook_e.cook_e;
+
+import android.support.annotation.NonNull;
+
+import org.cook_e.data.Bunch;
+import org.cook_e.data.MealPlan;
+import org.cook_e.data.Recipe;
+import org.cook_e.data.ScheduleCache;
+import org.cook_e.data.Step;
+import org.cook_e.data.TimeLearnerStub;
+import org.joda.time.Duration;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+/**
+ * Tests for the schedule cache
+ */
+public class ScheduleCacheTest {
+    private final List<String> ingredients = Collections.emptyList();
+
+    private Bunch createBunch(Duration boilTime) {
+        List<Step> steps1 = new ArrayList<>();
+        steps1.add(new Step(ingredients, "Chop the onions", Duration.standardMinutes(5), false, 0));
+        steps1.add(new Step(ingredients, "Boil the pasta", boilTime, true, 1));
+        List<Step> steps2 = new ArrayList<>();
+        steps2.add(new Step(ingredients, "Bake the bread", Duration.standardMinutes(20), true, 0));
+        Bunch bunch = new Bunch();
+        bunch.addRecipe(new Recipe("Pasta", "test", steps1));
+        bunch.addRecipe(new Recipe("Bread", "test", steps2));
+        return bunch;
+    }
+
+    private static void setRecipeIds(Bunch bunch, long firstId, long secondId) {
+        final List<Recipe> recipes = bunch.getRecipes();
+        recipes.get(0).setObjectId(firstId);
+        recipes.get(1).setObjectId(secondId);
+        bunch.setRecipes(recipes);
+    }
+
+    @Test
+    public void testFingerprintStable() {
+        assertEquals(ScheduleCache.getFingerprint(createBunch(Duration.standardMinutes(10))),
+                ScheduleCache.getFingerprint(createBunch(Duration.standardMinutes(10))));
+    }
+
+    @Test
+    public void testFingerprintChangesWithSteps() {
+        assertNotEquals(ScheduleCache.getFingerprint(createBunch(Duration.standardMinutes(10))),
+                ScheduleCache.getFingerprint(createBunch(Duration.standardMinutes(11))));
+    }
+
+    @Test
+    public void testHit() {
+        ScheduleCache cache = new ScheduleCache(4);
+        MealPlan plan = cache.getPlan(createBunch(Duration.standardMinutes(10)),
+                new TimeLearnerStub(), 1, 0);
+        assertSame(plan, cache.getPlan(createBunch(Duration.standardMinutes(10)),
+                new TimeLearnerStub(), 1, 0));
+        assertEquals(1, cache.size());
+    }
+
+    @Test
+    public void testCookCountIsPartOfKey() {
+        ScheduleCache cache = new ScheduleCache(4);
+        Bunch bunch = createBunch(Duration.standardMinutes(10));
+        MealPlan plan = cache.getPlan(bunch, new TimeLearnerStub(), 1, 0);
+        assertNotSame(plan, cache.getPlan(bunch, new TimeLearnerStub(), 2, 0));
+        assertEquals(2, cache.size());
+    }
+
+    @Test
+    public void testInvalidate() {
+        ScheduleCache cache = new ScheduleCache(4);
+        Bunch bunch = createBunch(Duration.standardMinutes(10));
+        MealPlan plan = cache.getPlan(bunch, new TimeLearnerStub(), 1, 0);
+        cache.invalidate();
+        assertEquals(0, cache.size());
+        assertNotSame(plan, cache.getPlan(bunch, new TimeLearnerStub(), 1, 0));
+    }
+
+    @Test
+    public void testInvalidateRecipe() {
+        ScheduleCache cache = new ScheduleCache(4);
+        Bunch bunch1 = createBunch(Duration.standardMinutes(1));
+        Bunch bunch2 = createBunch(Duration.standardMinutes(2));
+        setRecipeIds(bunch1, 1, 2);
+        setRecipeIds(bunch2, 3, 4);
+        MealPlan plan1 = cache.getPlan(bunch1, new TimeLearnerStub(), 1, 0);
+        MealPlan plan2 = cache.getPlan(bunch2, new TimeLearnerStub(), 1, 0);
+        cache.invalidateRecipe(2);
+        assertEquals(1, cache.size());
+        assertNotSame(plan1, cache.getPlan(bunch1, new TimeLearnerStub(), 1, 0));
+        assertSame(plan2, cache.getPlan(bunch2, new TimeLearnerStub(), 1, 0));
+    }
+
+    @Test
+    public void testInvalidateCookSpeed() {
+        ScheduleCache cache = new ScheduleCache(4);
+        Bunch bunch1 = createBunch(Duration.standardMinutes(1));
+        Bunch bunch2 = createBunch(Duration.standardMinutes(2));
+        MealPlan plan1 = cache.getPlan(bunch1, new TimeLearnerStub(), 1, 0);
+        // This learner estimates every step with the cook speed
+        cache.getPlan(bunch2, new TimeLearnerStub() {
+            @Override
+            public boolean usesCookSpeed(@NonNull Recipe r, @NonNull Step s) {
+                return true;
+            }
+        }, 1, 0);
+        cache.invalidateCookSpeed();
+        assertEquals(1, cache.size());
+        assertSame(plan1, cache.getPlan(bunch1, new TimeLearnerStub(), 1, 0));
+    }
+
+    @Test
+    public void testChangingBunchAfterCachingDoesNotChangeCachedRecipes() {
+        ScheduleCache cache = new ScheduleCache(4);
+        Bunch bunch = createBunch(Duration.standardMinutes(10));
+        MealPlan plan = cache.getPlan(bunch, new TimeLearnerStub(), 1, 0);
+        // Bunch.getRecipes() does not copy the recipes themselves
+        bunch.getRecipes().get(0).setSteps(Collections.<Step>emptyList());
+        assertSame(plan, cache.getPlan(createBunch(Duration.standardMinutes(10)),
+                new TimeLearnerStub(), 1, 0));
+    }
+
+    @Test
+    public void testEvictsLeastRecentlyUsed() {
+        ScheduleCache cache = new ScheduleCache(2);
+        Bunch bunch1 = createBunch(Duration.standardMinutes(1));
+        Bunch bunch2 = createBunch(Duration.standardMinutes(2));
+        Bunch bunch3 = createBunch(Duration.standardMinutes(3));
+        MealPlan plan1 = cache.getPlan(bunch1, new TimeLearnerStub(), 1, 0);
+        MealPlan plan2 = cache.getPlan(bunch2, new TimeLearnerStub(), 1, 0);
+        // Use bunch 1 so that bunch 2 is evicted
+        assertSame(plan1, cache.getPlan(bunch1, new TimeLearnerStub(), 1, 0));
+        cache.getPlan(bunch3, new TimeLearnerStub(), 1, 0);
+        assertEquals(2, cache.size());
+        assertSame(plan1, cache.getPlan(bunch1, new TimeLearnerStub(), 1, 0));
+        assertNotSame(plan2, cache.getPlan(bunch2, new TimeLearnerStub(), 1, 0));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testNoCapacity() {
+        new ScheduleCache(0);
+    }
+}
@@ -0,0 +1,131 @@
+
+/*
+ * Copyright 2016 the Cook-E development team
+ *
+ * This file is part of Cook-E.
+ *
+ * Cook-E is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Cook-E is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Cook-E.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.cook_e.cook_e;
+
+import org.cook_e.data.Bunch;
+import org.cook_e.data.CookingTimeEstimator;
+import org.cook_e.data.MealPlan;
+import org.cook_e.data.Recipe;
+import org.cook_e.data.Schedule;
+import org.cook_e.data.ScheduleOptimizer;
+import org.cook_e.data.Step;
+import org.cook_e.data.TimeLearnerStub;
+import org.joda.time.Duration;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests for the branch-and-bound schedule optimizer
+ */
+public class ScheduleOptimizerTest {
+    private final List<String> ingredients = Collections.emptyList();
+
+    /**
+     * Returns a meal where starting the longest simultaneous-to-end recipe first is not optimal
+     */
+    private MealPlan createMeal() {
+        List<Step> steps1 = new ArrayList<>();
+        steps1.add(new Step(ingredients, "a", Duration.standardMinutes(9), true, 0));
+        steps1.add(new Step(ingredients, "b", Duration.standardMinutes(8), true, 1));
+        steps1.add(new Step(ingredients, "c", Duration.standardMinutes(8), true, 2));
+        List<Step> steps2 = new ArrayList<>();
+        steps2.add(new Step(ingredients, "d", Duration.standardMinutes(8), false, 0));
+        steps2.add(new Step(ingredients, "e", Duration.standardMinutes(5), true, 1));
+        List<Step> steps3 = new ArrayList<>();
+        steps3.add(new Step(ingredients, "f", Duration.standardMinutes(6), true, 0));
+        steps3.add(new Step(ingredients, "g", Duration.standardMinutes(2), false, 1));
+        Bunch bunch = new Bunch();
+        bunch.addRecipe(new Recipe("r1", "test", steps1));
+        bunch.addRecipe(new Recipe("r2", "test", steps2));
+        bunch.addRecipe(new Recipe("r3", "test", steps3));
+        return new MealPlan(bunch, new TimeLearnerStub());
+    }
+
+    @Test
+    public void testFindsBetterOrdering() {
+        MealPlan plan = createMeal();
+        assertEquals(26, CookingTimeEstimator.getOptimizedTime(plan));
+        MealPlan optimized = ScheduleOptimizer.optimize(plan, 1, 1000);
+        assertEquals(25, CookingTimeEstimator.getOptimizedTime(optimized));
+        assertEquals(25, new Schedule(optimized, 1).getOptimizedEstimatedTime());
+    }
+
+    @Test
+    public void testNoBudgetKeepsGreedyOrdering() {
+        MealPlan plan = createMeal();
+        assertSame(plan, ScheduleOptimizer.optimize(plan, 1, 0));
+    }
+
+    @Test
+    public void testBestPlanFindsBetterOrdering() {
+        MealPlan best = CookingTimeEstimator.getBestPlan(createMeal(), 1, 1000);
+        assertEquals(25, CookingTimeEstimator.getOptimizedTime(best));
+    }
+
+    @Test
+    public void testBestPlanWithNoBudget() {
+        MealPlan best = CookingTimeEstimator.getBestPlan(createMeal(), 2, 0);
+        assertTrue(CookingTimeEstimator.getOptimizedTime(best, 2)
+                <= CookingTimeEstimator.getOptimizedTime(createMeal(), 2));
+    }
+
+    @Test
+    public void testRescheduleFollowsBetterOrdering() {
+        MealPlan plan = createMeal();
+        Schedule greedy = new Schedule(plan, 1);
+        assertEquals("a", greedy.getNextStep().getDescription());
+        assertEquals("f", greedy.getNextStep().getDescription());
+
+        Schedule rescheduled = new Schedule(plan, 1);
+        rescheduled.reschedule(Collections.<Recipe, Duration>emptyMap(), 1000);
+        assertEquals("a", rescheduled.getNextStep().getDescription());
+        assertEquals("d", rescheduled.getNextStep().getDescription());
+        // The estimate is for the original ordering
+        assertEquals(26, rescheduled.getOptimizedEstimatedTime());
+    }
+
+    @Test
+    public void testRescheduleKeepsHistory() {
+        MealPlan plan = createMeal();
+        Schedule sched = new Schedule(plan, 1);
+        Step first = sched.getNextStep();
+        Step second = sched.getNextStep();
+        Map<Recipe, Duration> elapsed = new HashMap<>();
+        elapsed.put(sched.getCurrentStepRecipe(), Duration.standardMinutes(1));
+        sched.reschedule(elapsed, 1000);
+        assertEquals(first, sched.getPrevStep());
+        assertEquals(second, sched.getNextStep());
+        assertEquals(1, sched.getCurrStepIndex());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testNoCooks() {
+        ScheduleOptimizer.optimize(createMeal(), 0, 50);
+    }
+}
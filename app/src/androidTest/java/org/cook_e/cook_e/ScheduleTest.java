@@ -32,9 +32,15 @@ import org.junit.Test;
 
 import java.sql.SQLException;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
 import java.util.List;
+import java.util.NoSuchElementException;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
 
 public class ScheduleTest {
     public List<String> ingre = new ArrayList<>();
@@ -177,6 +183,47 @@ public class ScheduleTest {
         assertEquals(0, sched.getCurrStepIndex());
     }
 
+    @Test
+    public void testScheduleLongestSimultaneousToEndFirst() throws SQLException  {
+        List<Recipe> recipes = new ArrayList<>();
+        List<Step> steps = new ArrayList<>();
+        steps.add(fiveNonSimul);
+        steps.add(fiveSimul);
+        Recipe recipeN5Y5 = new Recipe("N5Y5", "test", steps);
+        recipes.add(recipeN5Y5);
+        steps.clear();
+        steps.add(tenSimul);
+        steps.add(sevenNonSimul);
+        Recipe recipeY10N7 = new Recipe("Y10N7", "test", steps);
+        recipes.add(recipeY10N7);
+        steps.clear();
+        steps.add(sevenNonSimul);
+        steps.add(fiveSimul);
+        Recipe recipeN7Y5 = new Recipe("N7Y5", "test", steps);
+        recipes.add(recipeN7Y5);
+        Bunch bunch = new Bunch("test", recipes);
+        Schedule sched = new Schedule(bunch, new TimeLearnerStub());
+        assertEquals(6, sched.getStepCount());
+
+        // Y10N7 has the longest simultaneous-to-end time, and N5Y5 wins the tie with N7Y5
+        assertEquals(tenSimul, sched.getNextStep());
+        assertEquals(fiveNonSimul, sched.getNextStep());
+        assertEquals(fiveSimul, sched.getNextStep());
+        assertEquals(recipeN5Y5, sched.getCurrentStepRecipe());
+        assertEquals(sevenNonSimul, sched.getNextStep());
+        assertEquals(recipeN7Y5, sched.getCurrentStepRecipe());
+        assertEquals(fiveSimul, sched.getNextStep());
+        // Only Y10N7 has a step left, and it is still blocked
+        assertEquals(null, sched.getNextStep());
+        // Finishing a recipe with no steps left does not unblock anything
+        sched.finishSimultaneousStepFromRecipe(recipeN5Y5);
+        assertEquals(null, sched.getNextStep());
+        sched.finishSimultaneousStepFromRecipe(recipeY10N7);
+        assertEquals(sevenNonSimul, sched.getNextStep());
+        assertEquals(recipeY10N7, sched.getCurrentStepRecipe());
+        assertEquals(null, sched.getNextStep());
+    }
+
     @Test
     public void testGetCurrStepIndex() throws SQLException  {
         List<Step> steps = new ArrayList<>();
@@ -382,4 +429,209 @@ public class ScheduleTest {
         sched.getPrevStep();
         assertEquals(2, sched.getMaxVisitedStepIndex());
     }
+
+    @Test
+    public void testEstimatedTimes() throws SQLException {
+        List<Step> steps1 = new ArrayList<>();
+        steps1.add(fiveNonSimul);
+        steps1.add(tenSimul);
+        Recipe recipe1 = new Recipe("r1", "test", steps1);
+        List<Step> steps2 = new ArrayList<>();
+        steps2.add(sevenNonSimul);
+        Recipe recipe2 = new Recipe("r2", "test", steps2);
+        List<Recipe> recipies = new ArrayList<>();
+        recipies.add(recipe1);
+        recipies.add(recipe2);
+        Bunch bunch = new Bunch("test", recipies);
+        Schedule sched = new Schedule(bunch, new TimeLearnerStub());
+
+        // Following the schedule does not change the estimates
+        sched.getNextStep();
+        sched.getNextStep();
+        assertEquals(22, sched.getOriginalEstimatedTime());
+        assertEquals(15, sched.getOptimizedEstimatedTime());
+        sched.getNextStep();
+        assertEquals(22, sched.getOriginalEstimatedTime());
+        assertEquals(15, sched.getOptimizedEstimatedTime());
+    }
+
+    @Test
+    public void testMultipleCooks() {
+        List<Step> steps1 = new ArrayList<>();
+        steps1.add(fiveNonSimul);
+        steps1.add(tenNonSimul);
+        Recipe recipe1 = new Recipe("r1", "test", steps1);
+        List<Step> steps2 = new ArrayList<>();
+        steps2.add(sevenNonSimul);
+        Recipe recipe2 = new Recipe("r2", "test", steps2);
+        List<Recipe> recipies = new ArrayList<>();
+        recipies.add(recipe1);
+        recipies.add(recipe2);
+        Bunch bunch = new Bunch("test", recipies);
+        Schedule sched = new Schedule(bunch, new TimeLearnerStub(), 2);
+
+        assertEquals(2, sched.getCookCount());
+        assertEquals(fiveNonSimul, sched.getNextStep(0));
+        assertEquals(recipe1, sched.getCurrentStepRecipe(0));
+        // Recipe 1 is held by cook 0, so cook 1 gets recipe 2
+        assertEquals(sevenNonSimul, sched.getNextStep(1));
+        assertEquals(recipe2, sched.getCurrentStepRecipe(1));
+        // Nothing is ready until cook 0 finishes
+        assertEquals(null, sched.getNextStep(1));
+        assertEquals(null, sched.getCurrStep(1));
+        assertEquals(tenNonSimul, sched.getNextStep(0));
+        assertEquals(tenNonSimul, sched.getCurrStep(0));
+        assertEquals(null, sched.getNextStep(0));
+
+        assertEquals(22, sched.getOptimizedEstimatedTime(1));
+        assertEquals(15, sched.getOptimizedEstimatedTime());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testNoCooks() {
+        new Schedule(new Bunch(), new TimeLearnerStub(), 0);
+    }
+
+    @Test
+    public void testOvenIsShared() {
+        final Step bakeCake = new Step(ingre, "Bake the cake", Duration.standardMinutes(30), true, 0);
+        final Step bakeBread = new Step(ingre, "Bake the bread", Duration.standardMinutes(40), true, 0);
+        List<Step> steps1 = new ArrayList<>();
+        steps1.add(bakeCake);
+        Recipe recipe1 = new Recipe("r1", "test", steps1);
+        List<Step> steps2 = new ArrayList<>();
+        steps2.add(bakeBread);
+        Recipe recipe2 = new Recipe("r2", "test", steps2);
+        List<Recipe> recipies = new ArrayList<>();
+        recipies.add(recipe1);
+        recipies.add(recipe2);
+        Bunch bunch = new Bunch("test", recipies);
+        Schedule sched = new Schedule(bunch, new TimeLearnerStub());
+
+        assertEquals(bakeBread, sched.getNextStep());
+        // There is only one oven
+        assertEquals(null, sched.getNextStep());
+        sched.finishSimultaneousStepFromRecipe(recipe2);
+        assertEquals(bakeCake, sched.getNextStep());
+        assertEquals(70, sched.getOptimizedEstimatedTime());
+    }
+
+    @Test
+    public void testIndependentStepDuringSimultaneousStep() {
+        final Step boilRice = new Step(ingre, "Boil the rice", Duration.standardMinutes(20), true, 0);
+        final Step chop = new Step(ingre, "Chop the vegetables", Duration.standardMinutes(5), false,
+                1, Collections.<String>emptyList(), Collections.<Integer>emptyList());
+        final Step stirFry = new Step(ingre, "Stir-fry everything", Duration.standardMinutes(5),
+                false, 2, Collections.<String>emptyList(), Arrays.asList(0, 1));
+        Recipe recipe = new Recipe("r1", "test", Arrays.asList(boilRice, chop, stirFry));
+        Bunch bunch = new Bunch("test", Collections.singletonList(recipe));
+        Schedule sched = new Schedule(bunch, new TimeLearnerStub());
+
+        assertEquals(boilRice, sched.getNextStep());
+        // The vegetables do not need the rice
+        assertEquals(chop, sched.getNextStep());
+        // Stir-frying needs both
+        assertEquals(null, sched.getNextStep());
+        sched.finishSimultaneousStep(recipe, boilRice);
+        assertEquals(stirFry, sched.getNextStep());
+        assertEquals(25, sched.getOptimizedEstimatedTime());
+    }
+
+    @Test
+    public void testDependencyOnLaterStep() {
+        final Step first = new Step(ingre, "t1", Duration.standardMinutes(5), false, 0,
+                Collections.<String>emptyList(), Collections.singletonList(1));
+        final Step second = new Step(ingre, "t2", Duration.standardMinutes(5), false, 1);
+        Recipe recipe = new Recipe("r1", "test", Arrays.asList(first, second));
+        Schedule sched = new Schedule(new Bunch("test", Collections.singletonList(recipe)),
+                new TimeLearnerStub());
+
+        // The dependency cannot be resolved, so the steps are done in order
+        assertEquals(first, sched.getNextStep());
+        assertEquals(second, sched.getNextStep());
+        assertEquals(null, sched.getNextStep());
+    }
+
+    @Test
+    public void testDependencyOnMissingStep() {
+        final Step first = new Step(ingre, "t1", Duration.standardMinutes(5), false, 0);
+        final Step second = new Step(ingre, "t2", Duration.standardMinutes(5), true, 1);
+        // A step that was deleted from the recipe used to be at position 3
+        final Step third = new Step(ingre, "t3", Duration.standardMinutes(5), false, 2,
+                Collections.<String>emptyList(), Arrays.asList(0, 3));
+        Recipe recipe = new Recipe("r1", "test", Arrays.asList(first, second, third));
+        Schedule sched = new Schedule(new Bunch("test", Collections.singletonList(recipe)),
+                new TimeLearnerStub());
+
+        assertEquals(first, sched.getNextStep());
+        assertEquals(second, sched.getNextStep());
+        // The third step waits for the step before it
+        assertEquals(null, sched.getNextStep());
+        sched.finishSimultaneousStep(recipe, second);
+        assertEquals(third, sched.getNextStep());
+    }
+
+    @Test
+    public void testIterator() {
+        Recipe recipe1 = new Recipe("r1", "test", Arrays.asList(fiveNonSimul, sevenNonSimul));
+        Recipe recipe2 = new Recipe("r2", "test", Arrays.asList(tenSimul, tenNonSimul));
+        Bunch bunch = new Bunch("test", Arrays.asList(recipe1, recipe2));
+        Schedule sched = new Schedule(bunch, new TimeLearnerStub());
+
+        Iterator<Step> iterator = sched.iterator();
+        assertTrue(iterator.hasNext());
+        // Checking again does not skip a step
+        assertTrue(iterator.hasNext());
+        assertEquals(tenSimul, iterator.next());
+        assertEquals(fiveNonSimul, iterator.next());
+        assertEquals(sevenNonSimul, iterator.next());
+        // The last step waits for the timer
+        assertFalse(iterator.hasNext());
+        assertEquals(sevenNonSimul, sched.getCurrStep());
+        assertEquals(2, sched.getMaxVisitedStepIndex());
+        sched.finishSimultaneousStepFromRecipe(recipe2);
+        assertTrue(iterator.hasNext());
+        assertEquals(tenNonSimul, iterator.next());
+        assertFalse(iterator.hasNext());
+        assertTrue(sched.isAtFinalStep());
+    }
+
+    @Test
+    public void testIteratorSharesHistory() {
+        Recipe recipe = new Recipe("r1", "test",
+                Arrays.asList(fiveNonSimul, sevenNonSimul, tenNonSimul));
+        Bunch bunch = new Bunch("test", Collections.singletonList(recipe));
+        Schedule sched = new Schedule(bunch, new TimeLearnerStub());
+
+        assertEquals(fiveNonSimul, sched.getNextStep());
+        Iterator<Step> iterator = sched.iterator();
+        assertTrue(iterator.hasNext());
+        // A step scheduled by hasNext() is not visited until it is handed out
+        assertEquals(0, sched.getMaxVisitedStepIndex());
+        assertEquals(sevenNonSimul, sched.getNextStep());
+        assertEquals(fiveNonSimul, sched.getPrevStep());
+        // Going forward again replays the history
+        assertEquals(sevenNonSimul, iterator.next());
+        assertEquals(tenNonSimul, iterator.next());
+        assertEquals(2, sched.getMaxVisitedStepIndex());
+
+        List<Step> visited = new ArrayList<>();
+        sched.getPrevStep();
+        sched.getPrevStep();
+        for (Step step : sched) {
+            visited.add(step);
+        }
+        assertEquals(Arrays.asList(sevenNonSimul, tenNonSimul), visited);
+    }
+
+    @Test(expected = NoSuchElementException.class)
+    public void testIteratorNoStepReady() {
+        Recipe recipe = new Recipe("r1", "test", Arrays.asList(fiveSimul, fiveNonSimul));
+        Bunch bunch = new Bunch("test", Collections.singletonList(recipe));
+        Schedule sched = new Schedule(bunch, new TimeLearnerStub());
+
+        Iterator<Step> iterator = sched.iterator();
+        assertEquals(fiveSimul, iterator.next());
+        iterator.next();
+    }
 }
@@ -97,4 +97,33 @@ public class StepParcelTest {
         final String unparceledButter = unparceled.getIngredients().get(1);
         assertEquals(butterIng, unparceledButter);
     }
+
+    @Test
+    public void testParcelResources() {
+        final Parcel parcel = Parcel.obtain();
+        final Step original = new Step(new ArrayList<String>(), "Roast the vegetables",
+                Duration.standardMinutes(40), true, 0, Collections.singletonList("oven"));
+
+        original.writeToParcel(parcel, 0);
+        parcel.setDataPosition(0);
+        final Step unparceled = Step.CREATOR.createFromParcel(parcel);
+        assertNotNull(unparceled);
+        assertEquals(original, unparceled);
+        assertEquals(Collections.singletonList("oven"), unparceled.getResources());
+    }
+
+    @Test
+    public void testParcelDependencies() {
+        final Parcel parcel = Parcel.obtain();
+        final Step original = new Step(new ArrayList<String>(), "Stir-fry everything",
+                Duration.standardMinutes(5), false, 2, Collections.<String>emptyList(),
+                Arrays.asList(0, 1));
+
+        original.writeToParcel(parcel, 0);
+        parcel.setDataPosition(0);
+        final Step unparceled = Step.CREATOR.createFromParcel(parcel);
+        assertNotNull(unparceled);
+        assertEquals(original, unparceled);
+        assertEquals(Arrays.asList(0, 1), unparceled.getDependencies());
+    }
 }
@@ -93,4 +93,39 @@ public class StorageParserTest {
         final List<Step> deserialized = parser.parseRecipeSteps(serialized);
         assertEquals(steps, deserialized);
     }
+
+    @Test
+    public void testStepWithResources() throws ParseException {
+        checkRoundTrip(Collections.singletonList(
+                new Step(Collections.<String>emptyList(), "Sear the steak",
+                        Duration.standardMinutes(4), false, 0, Arrays.asList("burner", "grill"))));
+    }
+
+    @Test
+    public void testStepWithDependencies() throws ParseException {
+        checkRoundTrip(Arrays.asList(
+                new Step(Collections.<String>emptyList(), "Boil the rice",
+                        Duration.standardMinutes(20), true, 0),
+                new Step(Collections.<String>emptyList(), "Chop the vegetables",
+                        Duration.standardMinutes(5), false, 1, Collections.<String>emptyList(),
+                        Collections.<Integer>emptyList()),
+                new Step(Collections.<String>emptyList(), "Stir-fry everything",
+                        Duration.standardMinutes(5), false, 2, Collections.<String>emptyList(),
+                        Arrays.asList(0, 1))));
+    }
+
+    @Test
+    public void testDependenciesThatAreNotEarlierSteps() throws ParseException {
+        final String stepDesc = "[{\"description\":\"a\",\"duration_ms\":1000," +
+                "\"ingredients\":[],\"simultaneous\":false,\"dependencies\":[0]}," +
+                "{\"description\":\"b\",\"duration_ms\":1000,\"ingredients\":[]," +
+                "\"simultaneous\":false,\"dependencies\":[]}," +
+                "{\"description\":\"c\",\"duration_ms\":1000,\"ingredients\":[]," +
+                "\"simultaneous\":false,\"dependencies\":[0,2,5,-1]}]";
+        final List<Step> steps = new StorageParser().parseRecipeSteps(stepDesc);
+        assertEquals(Collections.<Integer>emptyList(), steps.get(0).getDependencies());
+        assertEquals(Collections.<Integer>emptyList(), steps.get(1).getDependencies());
+        // Positions that are not before the step are replaced with the step before it
+        assertEquals(Arrays.asList(0, 1), steps.get(2).getDependencies());
+    }
 }
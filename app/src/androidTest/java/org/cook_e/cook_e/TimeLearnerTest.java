@@ -48,6 +48,7 @@ public class TimeLearnerTest {
 
     @Before
     public void setUp() throws SQLException {
+        accessor.deleteLearnerData();
         List<Step> steps = new ArrayList<Step>();
         steps.add(STEP_ONE);
         steps.add(STEP_TWO);
@@ -107,4 +108,69 @@ public class TimeLearnerTest {
         assertEquals(30000, learner.getEstimatedTime(recipe, STEP_TWO).getMillis());
         assertEquals(12000, learner.getEstimatedTime(recipe, STEP_THREE).getMillis());
     }
+
+    @Test
+    public void testEstimatedMillis() throws SQLException {
+        assertEquals(20000, learner.getEstimatedMillis(recipe, STEP_TWO));
+        learner.learnStep(recipe, STEP_TWO, new Duration(30000));
+        assertEquals(30000, learner.getEstimatedMillis(recipe, STEP_TWO));
+        assertEquals(learner.getEstimatedTime(recipe, STEP_TWO).getMillis(),
+                learner.getEstimatedMillis(recipe, STEP_TWO));
+        // Step one has not been learned, so it is estimated from the cook speed
+        assertEquals(11066, learner.getEstimatedMillis(recipe, STEP_ONE));
+    }
+
+    @Test
+    public void testLearnedWeightsAreLoaded() throws SQLException {
+        learner.learnStep(recipe, STEP_ONE, new Duration(8000));
+        Bunch bunch = new Bunch();
+        bunch.addRecipe(recipe);
+        TimeLearner reloaded = new TimeLearner(accessor, bunch);
+        assertEquals(8000, reloaded.getEstimatedMillis(recipe, STEP_ONE));
+        assertEquals(18914, reloaded.getEstimatedMillis(recipe, STEP_TWO));
+    }
+
+    @Test
+    public void testKeepsLearningAfterManySessions() throws SQLException {
+        for (int i = 0; i < 50; i++) {
+            learner.learnStep(recipe, STEP_ONE, new Duration(10000));
+        }
+        learner.learnStep(recipe, STEP_ONE, new Duration(15000));
+        // A learn rate that decayed to zero would leave the estimate at 10000
+        assertTrue(learner.getEstimatedMillis(recipe, STEP_ONE) >= 10500);
+    }
+
+    @Test
+    public void testDeviationFromLearnedVariance() throws SQLException {
+        for (int i = 0; i < 20; i++) {
+            learner.learnStep(recipe, STEP_TWO, new Duration(20000));
+        }
+        final double steady = learner.getRelativeDeviation(recipe, STEP_TWO);
+        for (int i = 0; i < 10; i++) {
+            learner.learnStep(recipe, STEP_TWO, new Duration(i % 2 == 0 ? 14000 : 26000));
+        }
+        assertTrue(learner.getRelativeDeviation(recipe, STEP_TWO) > steady);
+        assertEquals(0, learner.getRelativeDeviation(recipe, STEP_THREE), 0);
+    }
+
+    @Test
+    public void testCookSpeedIsSharedAcrossRecipes() throws SQLException {
+        for (int i = 0; i < 10; i++) {
+            learner.learnStep(recipe, STEP_ONE, new Duration(15000));
+        }
+        final Step other = new Step(Collections.<String>emptyList(), "other step",
+                new Duration(60000), false, 0);
+        final Recipe otherRecipe = new Recipe("other title", "author",
+                Collections.singletonList(other));
+        otherRecipe.setObjectId(recipe.getObjectId() + 1);
+        final Bunch bunch = new Bunch();
+        bunch.addRecipe(otherRecipe);
+        final TimeLearner otherLearner = new TimeLearner(accessor, bunch);
+        // The cook has been 50% slower, but one recipe is not enough to trust that fully
+        final long estimate = otherLearner.getEstimatedMillis(otherRecipe, other);
+        assertTrue(estimate > 60000);
+        assertTrue(estimate < 90000);
+        // Simultaneous steps are timed, so the cook speed does not apply
+        assertEquals(10000, learner.getEstimatedMillis(recipe, STEP_THREE));
+    }
 }
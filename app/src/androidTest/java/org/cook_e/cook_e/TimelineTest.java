@@ -0,0 +1,135 @@
+
+/*
+ * Copyright 2016 the Cook-E development team
+ *
+ * This file is part of Cook-E.
+ *
+ * Cook-E is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Cook-E is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Cook-E.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.cook_e.cook_e;
+
+import org.cook_e.data.Bunch;
+import org.cook_e.data.CookingTimeEstimator;
+import org.cook_e.data.MealPlan;
+import org.cook_e.data.Recipe;
+import org.cook_e.data.Schedule;
+import org.cook_e.data.Step;
+import org.cook_e.data.TimeLearnerStub;
+import org.cook_e.data.Timeline;
+import org.joda.time.Duration;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+/**
+ * Tests for schedule timelines
+ */
+public class TimelineTest {
+    private final List<String> ingredients = Collections.emptyList();
+
+    private MealPlan createMeal() {
+        List<Step> steps1 = new ArrayList<>();
+        steps1.add(new Step(ingredients, "Boil the pasta", Duration.standardMinutes(10), true, 0));
+        List<Step> steps2 = new ArrayList<>();
+        steps2.add(new Step(ingredients, "Knead the dough", Duration.standardMinutes(5), false, 0));
+        steps2.add(new Step(ingredients, "Bake the bread", Duration.standardMinutes(20), true, 1));
+        Bunch bunch = new Bunch();
+        bunch.addRecipe(new Recipe("Pasta", "test", steps1));
+        bunch.addRecipe(new Recipe("Bread", "test", steps2));
+        return new MealPlan(bunch, new TimeLearnerStub());
+    }
+
+    private void assertEntry(Timeline.Entry entry, String description, int startMinutes,
+                             int endMinutes, int lane) {
+        assertEquals(description, entry.getStep().getDescription());
+        assertEquals(Duration.standardMinutes(startMinutes), entry.getStartOffset());
+        assertEquals(Duration.standardMinutes(endMinutes), entry.getEndOffset());
+        assertEquals(lane, entry.getLane());
+    }
+
+    @Test
+    public void testEntries() {
+        Timeline timeline = new Timeline(createMeal(), 1);
+        assertEquals(3, timeline.size());
+        assertEntry(timeline.get(0), "Knead the dough", 0, 5, 0);
+        assertEntry(timeline.get(1), "Bake the bread", 5, 25, 1);
+        assertEntry(timeline.get(2), "Boil the pasta", 5, 15, 2);
+        assertEquals("Pasta", timeline.get(2).getRecipe().getTitle());
+        assertEquals(3, timeline.getLaneCount());
+        assertEquals(Duration.standardMinutes(25), timeline.getTotalDuration());
+    }
+
+    @Test
+    public void testMatchesEstimate() {
+        MealPlan plan = createMeal();
+        for (int cooks = 1; cooks <= 2; cooks++) {
+            assertEquals(CookingTimeEstimator.getOptimizedDuration(plan, cooks),
+                    new Timeline(plan, cooks).getTotalDuration());
+        }
+    }
+
+    @Test
+    public void testFindByTime() {
+        Timeline timeline = new Timeline(createMeal(), 1);
+        assertEquals(0, timeline.findFirstStartingAt(Duration.ZERO));
+        assertEquals(1, timeline.findFirstStartingAt(Duration.standardMinutes(1)));
+        assertEquals(3, timeline.findFirstStartingAt(Duration.standardMinutes(6)));
+
+        List<Timeline.Entry> entries = timeline.getEntriesAt(Duration.standardMinutes(4));
+        assertEquals(1, entries.size());
+        assertEquals(0, entries.get(0).getIndex());
+
+        entries = timeline.getEntriesAt(Duration.standardMinutes(10));
+        assertEquals(2, entries.size());
+        assertEquals(1, entries.get(0).getIndex());
+        assertEquals(2, entries.get(1).getIndex());
+
+        entries = timeline.getEntriesBetween(Duration.standardMinutes(15),
+                Duration.standardMinutes(30));
+        assertEquals(1, entries.size());
+        assertEquals("Bake the bread", entries.get(0).getStep().getDescription());
+
+        assertEquals(0, timeline.getEntriesAt(Duration.standardMinutes(25)).size());
+    }
+
+    @Test
+    public void testStepEntry() {
+        Timeline timeline = new Timeline(createMeal(), 1);
+        for (int i = 0; i < timeline.size(); i++) {
+            Timeline.Entry entry = timeline.get(i);
+            assertEquals(i, timeline.getStepEntry(entry.getStepIndex()).getIndex());
+        }
+    }
+
+    @Test
+    public void testScheduleTimeline() {
+        Schedule schedule = new Schedule(createMeal(), 2);
+        Timeline timeline = schedule.getTimeline();
+        assertSame(timeline, schedule.getTimeline());
+        assertEquals(2, timeline.getCookCount());
+        // The cook lanes are used before the simultaneous lanes
+        assertEntry(timeline.get(0), "Knead the dough", 0, 5, 0);
+        assertEntry(timeline.get(1), "Boil the pasta", 0, 10, 2);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testNoCooks() {
+        new Timeline(createMeal(), 0);
+    }
+}
@@ -61,6 +61,15 @@ public class App extends Application {
         }
     }
 
+    @Override
+    public void onTrimMemory(int level) {
+        super.onTrimMemory(level);
+        if (level >= TRIM_MEMORY_UI_HIDDEN && mAccessor != null) {
+            // The app has gone to the background and may be killed
+            mAccessor.requestLearnerDataFlush();
+        }
+    }
+
     /**
      * Returns the application context for this application.
      *
@@ -28,6 +28,7 @@ import android.os.Bundle;
 import android.support.v7.app.ActionBar;
 import android.support.v7.app.AppCompatActivity;
 import android.support.v7.widget.Toolbar;
+import android.util.Log;
 import android.view.Menu;
 import android.view.MenuItem;
 import android.widget.Toast;
@@ -35,14 +36,21 @@ import android.widget.Toast;
 import org.cook_e.cook_e.ui.CookStep;
 import org.cook_e.cook_e.ui.TimerFragment;
 import org.cook_e.data.Bunch;
+import org.cook_e.data.CookingLog;
+import org.cook_e.data.MealPlan;
 import org.cook_e.data.Recipe;
 import org.cook_e.data.Schedule;
+import org.cook_e.data.ScheduleCache;
+import org.cook_e.data.ScheduleOptimizer;
 import org.cook_e.data.Step;
 import org.cook_e.data.TimeLearner;
 import org.joda.time.Duration;
 import org.joda.time.Instant;
 
+import java.io.IOException;
 import java.sql.SQLException;
+import java.util.HashMap;
+import java.util.Map;
 
 /**
  * An activity that shows the steps involved in cooking a {@link Bunch}
@@ -54,8 +62,12 @@ public class CookActivity extends AppCompatActivity implements TimerFragment.Ste
     /**
      * The tag used for logging
      */
-    @SuppressWarnings("unused")
     private static final String TAG = CookActivity.class.getSimpleName();
+    /**
+     * The maximum time to spend improving the order of the remaining steps after each step,
+     * in milliseconds
+     */
+    private static final long RESCHEDULE_BUDGET_MILLIS = 20;
     /**
      * The extra key used to provide a bunch/meal to cook
      */
@@ -91,6 +103,10 @@ public class CookActivity extends AppCompatActivity implements TimerFragment.Ste
      * The number of simultaneous steps with active timers
      */
     private int mActiveSimultaneousSteps = 0;
+    /**
+     * The start instant of each active timer, keyed by the recipe of its step
+     */
+    private final Map<Recipe, Instant> mTimerStartInstants = new HashMap<>();
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
@@ -106,7 +122,9 @@ public class CookActivity extends AppCompatActivity implements TimerFragment.Ste
                     .setMessage(e.getLocalizedMessage())
                     .show();
         }
-        mSchedule = new Schedule(mBunch, mTimeLearner);
+        final MealPlan plan = ScheduleCache.getInstance().getPlan(mBunch, mTimeLearner, 1,
+                ScheduleOptimizer.DEFAULT_BUDGET_MILLIS);
+        mSchedule = new Schedule(plan, 1);
 
         Toolbar toolbar = (Toolbar) findViewById(R.id.toolbar);
         setSupportActionBar(toolbar);
@@ -116,9 +134,14 @@ public class CookActivity extends AppCompatActivity implements TimerFragment.Ste
         if (firstStep == null) {
             throw new IllegalStateException("No steps");
         }
-        setCurrentStep(firstStep, mSchedule.getCurrentStepRecipe(), true);
         mFirstInstant = new Instant();
         mStartInstant = mFirstInstant;
+        try {
+            App.getAccessor().getCookingLog().logSessionStart(mFirstInstant.getMillis());
+        } catch (IOException e) {
+            Log.w(TAG, "Failed to log cooking session", e);
+        }
+        setCurrentStep(firstStep, mSchedule.getCurrentStepRecipe(), true);
 
         setUpActionBar();
     }
@@ -161,6 +184,7 @@ public class CookActivity extends AppCompatActivity implements TimerFragment.Ste
                     Instant mEndInstant = new Instant();
                     Duration stepDuration = new Duration(mStartInstant, mEndInstant);
                     mStartInstant = mEndInstant;
+                    logStepEvent(CookingLog.STEP_FINISH, mEndInstant, originalRecipe, originalStep);
                     if (!originalStep.isSimultaneous()) {
                         try {
                             mTimeLearner.learnStep(originalRecipe, originalStep, stepDuration);
@@ -175,6 +199,9 @@ public class CookActivity extends AppCompatActivity implements TimerFragment.Ste
 
                 if (step != null) {
                     setCurrentStep(step, recipe, nextIsNew);
+                    if (nextIsNew) {
+                        rescheduleRemainingSteps();
+                    }
                 } else  if (mActiveSimultaneousSteps != 0) {
                     // Explain to the user why they cannot advance
                     new AlertDialog.Builder(this)
@@ -185,8 +212,9 @@ public class CookActivity extends AppCompatActivity implements TimerFragment.Ste
                     // The final step has been completed!
                     Instant mLastInstant = new Instant();
                     Duration cookDuration = new Duration(mFirstInstant, mLastInstant);
-                    String exitMessage = "Unoptimized: " + mSchedule.mOriginalEstimatedTime + " min." +
-                            "\nOptimized: " + mSchedule.mOptimizedEstimatedTime + " min." +
+                    String exitMessage = "Unoptimized: " + mSchedule.getOriginalEstimatedTime() + " min." +
+                            "\nOptimized: " + mSchedule.getOptimizedEstimatedTime() + " min." +
+                            "\nWith a helper: " + mSchedule.getOptimizedEstimatedTime(2) + " min." +
                             "\n\nActual: " + cookDuration.getStandardMinutes() + " min.";
                     new AlertDialog.Builder(this)
                             .setTitle(R.string.meal_completed)
@@ -217,6 +245,10 @@ public class CookActivity extends AppCompatActivity implements TimerFragment.Ste
      */
     private void setCurrentStep(Step step, Recipe recipe, boolean isNew) {
         mCookStep.setStep(step, recipe.getTitle());
+        if (isNew) {
+            // The step starts when the previous step finishes
+            logStepEvent(CookingLog.STEP_START, mStartInstant, recipe, step);
+        }
         if (step.isSimultaneous() && isNew) {
             // Add a timer fragment for the step
             final TimerFragment timerFragment = TimerFragment.newInstance(recipe, step);
@@ -225,9 +257,42 @@ public class CookActivity extends AppCompatActivity implements TimerFragment.Ste
             transaction.commit();
 
             mActiveSimultaneousSteps++;
+            final Instant timerStart = new Instant();
+            mTimerStartInstants.put(recipe, timerStart);
+            logStepEvent(CookingLog.TIMER_START, timerStart, recipe, step);
         }
     }
 
+    /**
+     * Records an event in the cooking log. Failures are logged, because the cooking session can
+     * continue without them.
+     */
+    private void logStepEvent(byte type, Instant instant, Recipe recipe, Step step) {
+        try {
+            App.getAccessor().getCookingLog().logStepEvent(type, instant.getMillis(), recipe, step);
+        } catch (IOException e) {
+            Log.w(TAG, "Failed to log cooking event", e);
+        }
+    }
+
+    @Override
+    protected void onPause() {
+        super.onPause();
+        // Cooking events are buffered; write them in case the process is stopped
+        try {
+            App.getAccessor().getCookingLog().flush();
+        } catch (IOException e) {
+            Log.w(TAG, "Failed to write cooking log", e);
+        }
+    }
+
+    @Override
+    protected void onDestroy() {
+        super.onDestroy();
+        // The cooking session is over, so write what was learned
+        App.getAccessor().requestLearnerDataFlush();
+    }
+
     @Override
     public boolean onSupportNavigateUp() {
         finish();
@@ -254,9 +319,24 @@ public class CookActivity extends AppCompatActivity implements TimerFragment.Ste
         transaction.remove(timerFragment);
         transaction.commit();
         // Notify the scheduler that the step is done
-        mSchedule.finishSimultaneousStepFromRecipe(recipe);
+        mSchedule.finishSimultaneousStep(recipe, step);
         Toast.makeText(this, "Step \"" + step.getDescription() + "\" finished", Toast.LENGTH_LONG).show();
 
         mActiveSimultaneousSteps--;
+        mTimerStartInstants.remove(recipe);
+        logStepEvent(CookingLog.TIMER_FINISH, new Instant(), recipe, step);
+    }
+
+    /**
+     * Reorders the steps that have not been shown yet, using how long the active timers have
+     * been running
+     */
+    private void rescheduleRemainingSteps() {
+        final Instant now = new Instant();
+        final Map<Recipe, Duration> elapsedTimes = new HashMap<>();
+        for (Map.Entry<Recipe, Instant> entry : mTimerStartInstants.entrySet()) {
+            elapsedTimes.put(entry.getKey(), new Duration(entry.getValue(), now));
+        }
+        mSchedule.reschedule(elapsedTimes, RESCHEDULE_BUDGET_MILLIS);
     }
 }
@@ -48,6 +48,7 @@ import org.cook_e.data.Step;
 
 import java.io.File;
 import java.sql.SQLException;
+import java.util.List;
 
 /**
  * Created by Tyler on 2/4/2016.
@@ -93,6 +94,12 @@ public class EditRecipeActivity extends AppCompatActivity
      */
     private int mStepEditIndex;
 
+    /**
+     * True while {@link #mSteps} is being updated to match {@link #mRecipe}, so that the changes
+     * are not copied back to mRecipe
+     */
+    private boolean mSyncingSteps;
+
     /**
      * Text view that shows the recipe author
      */
@@ -210,7 +217,7 @@ public class EditRecipeActivity extends AppCompatActivity
 
             @Override
             public void onItemRangeRemoved(ObservableList sender, int positionStart, int itemCount) {
-                updateRecipeSteps();
+                removeRecipeSteps(positionStart, itemCount);
             }
         });
     }
@@ -252,10 +259,49 @@ public class EditRecipeActivity extends AppCompatActivity
      * Updates the steps in {@link #mRecipe} to equal {@link #mSteps}, and saves mRecipe
      */
     private void updateRecipeSteps() {
+        if (mSyncingSteps) {
+            return;
+        }
         mRecipe.setSteps(mSteps);
         saveRecipe();
     }
 
+    /**
+     * Removes steps from {@link #mRecipe} after they have been removed from {@link #mSteps},
+     * and saves mRecipe
+     *
+     * Removing a step renumbers the dependencies of the steps after it, so the steps that
+     * changed are copied back to mSteps.
+     *
+     * @param position the position of the first removed step
+     * @param count the number of removed steps
+     */
+    private void removeRecipeSteps(int position, int count) {
+        if (mSyncingSteps) {
+            return;
+        }
+        if (mRecipe.getSteps().size() != mSteps.size() + count) {
+            // Not in sync, so the dependencies cannot be renumbered
+            updateRecipeSteps();
+            return;
+        }
+        for (int i = 0; i < count; i++) {
+            mRecipe.removeStep(position);
+        }
+        final List<Step> steps = mRecipe.getSteps();
+        mSyncingSteps = true;
+        try {
+            for (int i = position; i < steps.size(); i++) {
+                if (!steps.get(i).equals(mSteps.get(i))) {
+                    mSteps.set(i, steps.get(i));
+                }
+            }
+        } finally {
+            mSyncingSteps = false;
+        }
+        saveRecipe();
+    }
+
     /**
      * Tries to save the recipe
      */
@@ -65,6 +65,15 @@ public class StepDialogFragment extends DialogFragment {
      * Argument key for simultaneous (boolean)
      */
     private static final String ARG_SIMULTANEOUS = StepDialogFragment.class.getName() + ".ARG_SIMULTANEOUS";
+    /**
+     * Argument key for resources (List&lt;String&gt;)
+     */
+    private static final String ARG_RESOURCES = StepDialogFragment.class.getName() + ".ARG_RESOURCES";
+    /**
+     * Argument key for dependencies (List&lt;Integer&gt;, absent if the step only depends on the
+     * step before it)
+     */
+    private static final String ARG_DEPENDENCIES = StepDialogFragment.class.getName() + ".ARG_DEPENDENCIES";
 
     /**
      * An interface for objects that can accept notifications of when the user finishes editing
@@ -121,6 +130,11 @@ public class StepDialogFragment extends DialogFragment {
             args.putStringArrayList(ARG_INGREDIENTS, new ArrayList<>(step.getIngredients()));
             args.putSerializable(ARG_DURATION, step.getTime().toDuration());
             args.putBoolean(ARG_SIMULTANEOUS, step.isSimultaneous());
+            args.putStringArrayList(ARG_RESOURCES, new ArrayList<>(step.getResources()));
+            final List<Integer> dependencies = step.getDependencies();
+            if (dependencies != null) {
+                args.putIntegerArrayList(ARG_DEPENDENCIES, new ArrayList<>(dependencies));
+            }
             fragment.setArguments(args);
         }
         return fragment;
@@ -156,7 +170,22 @@ public class StepDialogFragment extends DialogFragment {
             final List<String> ingredients = ingredientsString.isEmpty() ? Collections.<String>emptyList()
                     : Arrays.asList(ingredientsString.split("\n"));
 
-            final Step step = new Step(ingredients, description, duration);
+            // The dialog cannot edit resources or dependencies, so an edited step keeps those
+            // of the original step
+            List<String> resources = Collections.emptyList();
+            List<Integer> dependencies = null;
+            final Bundle args = getArguments();
+            if (args != null) {
+                final List<String> argResources = args.getStringArrayList(ARG_RESOURCES);
+                if (argResources != null) {
+                    resources = argResources;
+                }
+                dependencies = args.getIntegerArrayList(ARG_DEPENDENCIES);
+            }
+            // Whether the step is simultaneous is inferred from its description
+            final Step inferred = new Step(ingredients, description, duration);
+            final Step step = new Step(ingredients, description, duration,
+                    inferred.isSimultaneous(), inferred.getIndex(), resources, dependencies);
 
             // Pass the step to the parent
             ((StepEditListener) getActivity()).stepEditingFinished(step);
@@ -0,0 +1,63 @@
+/*
+ * Copyright 2016 the Cook-E development team
+ *
+ * This file is part of Cook-E.
+ *
+ * Cook-E is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Cook-E is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Cook-E.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.cook_e.data;
+
+import android.support.annotation.NonNull;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Holds the thread pool shared by the searches and simulations that use every processor core
+ */
+final class BackgroundExecutor {
+
+    /**
+     * The number of threads in the pool
+     */
+    static final int THREAD_COUNT = Math.max(1, Runtime.getRuntime().availableProcessors());
+
+    private BackgroundExecutor() {}
+
+    /**
+     * Holds the executor, so that threads are only created when it is first used
+     */
+    private static final class Holder {
+        static final ExecutorService EXECUTOR = Executors.newFixedThreadPool(THREAD_COUNT,
+                new ThreadFactory() {
+                    @Override
+                    public Thread newThread(@NonNull Runnable runnable) {
+                        final Thread thread = new Thread(runnable, "BackgroundExecutor");
+                        // Do not keep the process alive for abandoned work
+                        thread.setDaemon(true);
+                        return thread;
+                    }
+                });
+    }
+
+    /**
+     * @return the shared executor
+     */
+    @NonNull
+    static ExecutorService get() {
+        return Holder.EXECUTOR;
+    }
+}
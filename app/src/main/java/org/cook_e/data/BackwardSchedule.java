@@ -0,0 +1,172 @@
+/*
+ * Copyright 2016 the Cook-E development team
+ *
+ * This file is part of Cook-E.
+ *
+ * Cook-E is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Cook-E is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Cook-E.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.cook_e.data;
+
+import android.support.annotation.NonNull;
+
+import org.joda.time.Duration;
+import org.joda.time.Instant;
+import org.joda.time.ReadableInstant;
+
+/**
+ * A timetable for a meal that works back from the time that it will be served, so that every
+ * step starts as late as possible and the dishes finish together.
+ *
+ * The timetable is found by making a {@link Timeline} of the steps of each recipe in reverse
+ * order, starting at the serve time. Cooks and limited equipment are only constraints on which steps can overlap,
+ * so a valid schedule running backwards is also a valid schedule running forwards. A recipe
+ * only finishes before the serve time if a cook or a piece of equipment is busy with another
+ * recipe at the end.
+ *
+ * Start times are stored relative to the serve time, so a timetable for a new serve time can be
+ * read from the same object without scheduling again.
+ *
+ * Objects of this class are immutable.
+ */
+public final class BackwardSchedule {
+
+    /**
+     * The plan being scheduled
+     */
+    @NonNull
+    private final MealPlan mPlan;
+
+    /**
+     * For each step, the time from the start of the step to the serve time, in milliseconds
+     */
+    @NonNull
+    private final long[] mStartOffsets;
+
+    /**
+     * The time from the start of the first step to the serve time, in milliseconds
+     */
+    private final long mTotalDuration;
+
+    /**
+     * Schedules a plan backwards from its serve time
+     * @param plan the plan to schedule
+     * @param cookCount the number of cooks
+     * @throws NullPointerException if plan is null
+     * @throws IllegalArgumentException if cookCount is less than 1
+     */
+    public BackwardSchedule(@NonNull MealPlan plan, int cookCount) {
+        Objects.requireNonNull(plan, "plan must not be null");
+        if (cookCount < 1) {
+            throw new IllegalArgumentException("cookCount must be at least 1");
+        }
+        mPlan = plan;
+        mStartOffsets = new long[plan.getStepCount()];
+
+        // Time runs backwards from the serve time in the timeline of the reversed plan, so the
+        // end of each reversed step is the start of the original step
+        final MealPlan reversed = plan.reversed();
+        final Timeline timeline = new Timeline(reversed, cookCount);
+        for (int r = 0; r < reversed.getRecipeCount(); r++) {
+            final int start = reversed.getRecipeStart(r);
+            final int end = reversed.getRecipeEnd(r);
+            for (int step = start; step < end; step++) {
+                mStartOffsets[start + end - 1 - step] =
+                        timeline.getStepEntry(step).getEndOffset().getMillis();
+            }
+        }
+        mTotalDuration = timeline.getTotalDuration().getMillis();
+    }
+
+    /**
+     * @return the plan that this timetable is for
+     */
+    @NonNull
+    public MealPlan getPlan() {
+        return mPlan;
+    }
+
+    /**
+     * @return the time from the start of the first step to the serve time
+     */
+    @NonNull
+    public Duration getTotalDuration() {
+        return Duration.millis(mTotalDuration);
+    }
+
+    /**
+     * Returns the time from the start of a step to the serve time
+     * @param step the plan index of the step
+     * @return the time before the serve time that the step must start
+     */
+    @NonNull
+    public Duration getStartOffset(int step) {
+        return Duration.millis(mStartOffsets[step]);
+    }
+
+    /**
+     * Returns the time from the end of a step to the serve time
+     * @param step the plan index of the step
+     * @return the time before the serve time that the step ends
+     */
+    @NonNull
+    public Duration getEndOffset(int step) {
+        return Duration.millis(mStartOffsets[step] - mPlan.getDuration(step));
+    }
+
+    /**
+     * Returns the latest time that a step can start for the meal to be served on time
+     * @param step the plan index of the step
+     * @param serveTime the time that the meal will be served
+     * @return the start time
+     */
+    @NonNull
+    public Instant getStartTime(int step, @NonNull ReadableInstant serveTime) {
+        return new Instant(serveTime.getMillis() - mStartOffsets[step]);
+    }
+
+    /**
+     * Returns the latest time that a recipe can be started for the meal to be served on time
+     * @param recipe the plan index of the recipe
+     * @param serveTime the time that the meal will be served
+     * @return the start time of the first step of the recipe
+     */
+    @NonNull
+    public Instant getRecipeStartTime(int recipe, @NonNull ReadableInstant serveTime) {
+        return getStartTime(mPlan.getRecipeStart(recipe), serveTime);
+    }
+
+    /**
+     * Returns the time that a recipe is done, which may be before the serve time if a cook
+     * or piece of equipment is needed for another recipe at the end
+     * @param recipe the plan index of the recipe
+     * @param serveTime the time that the meal will be served
+     * @return the end time of the last step of the recipe
+     */
+    @NonNull
+    public Instant getRecipeEndTime(int recipe, @NonNull ReadableInstant serveTime) {
+        return new Instant(serveTime.getMillis()
+                - getEndOffset(mPlan.getRecipeEnd(recipe) - 1).getMillis());
+    }
+
+    /**
+     * Returns the latest time that cooking can start for the meal to be served on time
+     * @param serveTime the time that the meal will be served
+     * @return the start time of the first step
+     */
+    @NonNull
+    public Instant getStartTime(@NonNull ReadableInstant serveTime) {
+        return new Instant(serveTime.getMillis() - mTotalDuration);
+    }
+}
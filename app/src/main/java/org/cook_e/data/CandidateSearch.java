@@ -0,0 +1,290 @@
+/*
+ * Copyright 2016 the Cook-E development team
+ *
+ * This file is part of Cook-E.
+ *
+ * Cook-E is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Cook-E is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Cook-E.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.cook_e.data;
+
+import android.support.annotation.NonNull;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Evaluates many candidate step orderings for a plan at the same time, one task per
+ * candidate generator, and keeps the one that finishes soonest.
+ *
+ * The candidates are the ordering of the plan itself, greedy orderings with other priority rules,
+ * the {@link ScheduleOptimizer branch-and-bound} result, random restarts, and local search by
+ * swapping the priorities of pairs of steps. Every task stops when the time budget runs out.
+ * Because the thread pool is shared with other background work, tasks that have not finished
+ * shortly after the budget runs out are cancelled, and the greedy ordering is used in their place.
+ */
+final class CandidateSearch {
+
+    /**
+     * The relative amount by which random restarts change the default priorities
+     */
+    private static final double RANDOM_PRIORITY_SPREAD = 0.5;
+
+    /**
+     * How long to wait for the candidates after the time budget runs out, in milliseconds. The
+     * thread pool is shared, so candidates that have not finished by then are cancelled.
+     */
+    private static final long TIMEOUT_SLACK_MILLIS = 25;
+
+    private CandidateSearch() {}
+
+    /**
+     * A plan and how long it takes to cook
+     */
+    private static final class Candidate {
+        final MealPlan plan;
+        final long time;
+
+        Candidate(MealPlan plan, long time) {
+            this.plan = plan;
+            this.time = time;
+        }
+    }
+
+    /**
+     * Finds the candidate ordering of a plan that finishes soonest
+     * @param plan the plan
+     * @param cookCount the number of cooks
+     * @param budgetMillis the maximum time to search, in milliseconds
+     * @return the best plan found, which finishes no later than the given plan
+     * @throws IllegalArgumentException if cookCount is less than 1 or budgetMillis is negative
+     */
+    @NonNull
+    static MealPlan search(@NonNull final MealPlan plan, final int cookCount,
+                           final long budgetMillis) {
+        if (cookCount < 1) {
+            throw new IllegalArgumentException("cookCount must be at least 1");
+        }
+        if (budgetMillis < 0) {
+            throw new IllegalArgumentException("budgetMillis must not be negative");
+        }
+        final long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(budgetMillis);
+        final List<Callable<Candidate>> tasks = new ArrayList<>();
+        // Greedy orderings with different priority rules
+        tasks.add(new Callable<Candidate>() {
+            @Override
+            public Candidate call() {
+                return evaluate(plan, cookCount);
+            }
+        });
+        tasks.add(new Callable<Candidate>() {
+            @Override
+            public Candidate call() {
+                return evaluate(plan.withPriorities(getTimeToEndPriorities(plan)), cookCount);
+            }
+        });
+        tasks.add(new Callable<Candidate>() {
+            @Override
+            public Candidate call() {
+                return evaluate(plan.withPriorities(getStepsToEndPriorities(plan)), cookCount);
+            }
+        });
+        tasks.add(new Callable<Candidate>() {
+            @Override
+            public Candidate call() {
+                // Only use the time left if this task had to wait for a thread
+                final long millisLeft = TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime());
+                return evaluate(ScheduleOptimizer.optimize(plan, cookCount,
+                        Math.max(0, millisLeft)), cookCount);
+            }
+        });
+        // Use the rest of the threads for randomized searches
+        final int randomTaskCount = Math.max(2, BackgroundExecutor.THREAD_COUNT - tasks.size());
+        for (int i = 0; i < randomTaskCount; i++) {
+            final long seed = i;
+            if (i % 2 == 0) {
+                tasks.add(new Callable<Candidate>() {
+                    @Override
+                    public Candidate call() {
+                        return randomRestarts(plan, cookCount, deadline, new Random(seed));
+                    }
+                });
+            } else {
+                tasks.add(new Callable<Candidate>() {
+                    @Override
+                    public Candidate call() {
+                        return swapSearch(plan, cookCount, deadline, new Random(seed));
+                    }
+                });
+            }
+        }
+
+        Candidate best = null;
+        try {
+            final List<Future<Candidate>> results = BackgroundExecutor.get().invokeAll(tasks,
+                    budgetMillis + TIMEOUT_SLACK_MILLIS, TimeUnit.MILLISECONDS);
+            if (results.get(0).isCancelled()) {
+                // Other work kept the pool busy, so make sure the greedy ordering is a candidate
+                best = evaluate(plan, cookCount);
+            }
+            for (Future<Candidate> result : results) {
+                if (result.isCancelled()) {
+                    continue;
+                }
+                final Candidate candidate = result.get();
+                // Ties go to the earlier, simpler candidate
+                if (best == null || candidate.time < best.time) {
+                    best = candidate;
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return plan;
+        } catch (ExecutionException e) {
+            throw new RuntimeException("Unexpected exception evaluating a schedule", e.getCause());
+        }
+        return best.plan;
+    }
+
+    @NonNull
+    private static Candidate evaluate(@NonNull MealPlan plan, int cookCount) {
+        return new Candidate(plan,
+                CookingTimeEstimator.getOptimizedDuration(plan, cookCount).getMillis());
+    }
+
+    /**
+     * Repeatedly tries the priorities of a plan with random changes, keeping the best
+     */
+    @NonNull
+    private static Candidate randomRestarts(@NonNull MealPlan plan, int cookCount, long deadline,
+                                            @NonNull Random random) {
+        Candidate best = evaluate(plan, cookCount);
+        final long[] priorities = new long[plan.getStepCount()];
+        while (System.nanoTime() < deadline) {
+            for (int i = 0; i < priorities.length; i++) {
+                final long priority = plan.getPriority(i);
+                priorities[i] = priority
+                        + (long) (random.nextDouble() * RANDOM_PRIORITY_SPREAD * (priority + 1));
+            }
+            final Candidate candidate = evaluate(plan.withPriorities(priorities), cookCount);
+            if (candidate.time < best.time) {
+                best = candidate;
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Starting from the ordering of a plan, repeatedly swaps the priorities of two random steps
+     * and keeps the swap if the result is no worse
+     */
+    @NonNull
+    private static Candidate swapSearch(@NonNull MealPlan plan, int cookCount, long deadline,
+                                        @NonNull Random random) {
+        Candidate best = evaluate(plan, cookCount);
+        final int stepCount = plan.getStepCount();
+        if (stepCount < 2) {
+            return best;
+        }
+        final long[] priorities = getDefaultRanks(plan);
+        long currentTime = best.time;
+        while (System.nanoTime() < deadline) {
+            final int a = random.nextInt(stepCount);
+            final int b = random.nextInt(stepCount);
+            swap(priorities, a, b);
+            final Candidate candidate = evaluate(plan.withPriorities(priorities), cookCount);
+            if (candidate.time <= currentTime) {
+                currentTime = candidate.time;
+                if (candidate.time < best.time) {
+                    best = candidate;
+                }
+            } else {
+                swap(priorities, a, b);
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Returns distinct priorities that order steps in the same way as the priorities of a plan
+     */
+    @NonNull
+    private static long[] getDefaultRanks(@NonNull final MealPlan plan) {
+        final int stepCount = plan.getStepCount();
+        final Integer[] steps = new Integer[stepCount];
+        for (int i = 0; i < stepCount; i++) {
+            steps[i] = i;
+        }
+        // Ties between ready recipes go to the earlier recipe, which has the smaller step index
+        Arrays.sort(steps, new Comparator<Integer>() {
+            @Override
+            public int compare(Integer a, Integer b) {
+                final long pa = plan.getPriority(a);
+                final long pb = plan.getPriority(b);
+                if (pa != pb) {
+                    return pa > pb ? -1 : 1;
+                }
+                return a.compareTo(b);
+            }
+        });
+        final long[] ranks = new long[stepCount];
+        for (int i = 0; i < stepCount; i++) {
+            ranks[steps[i]] = stepCount - i;
+        }
+        return ranks;
+    }
+
+    /**
+     * Returns priorities that prefer the recipe with the most time left, counting every step
+     */
+    @NonNull
+    private static long[] getTimeToEndPriorities(@NonNull MealPlan plan) {
+        final long[] priorities = new long[plan.getStepCount()];
+        for (int r = 0; r < plan.getRecipeCount(); r++) {
+            long timeToEnd = 0;
+            for (int i = plan.getRecipeEnd(r) - 1; i >= plan.getRecipeStart(r); i--) {
+                timeToEnd += plan.getDuration(i);
+                priorities[i] = timeToEnd;
+            }
+        }
+        return priorities;
+    }
+
+    /**
+     * Returns priorities that prefer the recipe with the most steps left
+     */
+    @NonNull
+    private static long[] getStepsToEndPriorities(@NonNull MealPlan plan) {
+        final long[] priorities = new long[plan.getStepCount()];
+        for (int r = 0; r < plan.getRecipeCount(); r++) {
+            for (int i = plan.getRecipeStart(r); i < plan.getRecipeEnd(r); i++) {
+                priorities[i] = plan.getRecipeEnd(r) - i;
+            }
+        }
+        return priorities;
+    }
+
+    private static void swap(long[] array, int i, int j) {
+        final long temp = array[i];
+        array[i] = array[j];
+        array[j] = temp;
+    }
+}
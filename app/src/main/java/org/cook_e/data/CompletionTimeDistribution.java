@@ -0,0 +1,204 @@
+/*
+ * Copyright 2016 the Cook-E development team
+ *
+ * This file is part of Cook-E.
+ *
+ * Cook-E is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Cook-E is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Cook-E.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.cook_e.data;
+
+import android.support.annotation.NonNull;
+
+import org.joda.time.Duration;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+
+/**
+ * The distribution of the time it takes to cook a meal, found by simulating cooking it many
+ * times with random step durations.
+ *
+ * The duration of each step in a trial is drawn from a log-normal distribution whose mean is the
+ * estimated duration of the step and whose standard deviation is the
+ * {@link MealPlan#getRelativeDeviation(int) relative deviation} of the step times that mean.
+ * Steps are handed out in the same order as a {@link Schedule} would, so only the times change.
+ *
+ * Trials are split into fixed-size batches that run in parallel. Each batch has its own random
+ * number generator seeded from the batch number, so the results for a seed do not depend on the
+ * number of processors.
+ *
+ * Objects of this class are immutable.
+ */
+public final class CompletionTimeDistribution {
+
+    /**
+     * The number of trials run by each task
+     */
+    private static final int TRIALS_PER_TASK = 256;
+
+    /**
+     * Used to spread the seeds of the tasks apart
+     */
+    private static final long SEED_INCREMENT = 0x9e3779b97f4a7c15L;
+
+    /**
+     * The total cooking time of each trial in milliseconds, in increasing order
+     */
+    @NonNull
+    private final long[] mTimes;
+
+    private CompletionTimeDistribution(@NonNull long[] times) {
+        mTimes = times;
+    }
+
+    /**
+     * Simulates cooking a plan many times with random step durations
+     * @param plan the plan to simulate
+     * @param cookCount the number of cooks
+     * @param trialCount the number of times to simulate cooking the plan
+     * @param seed the seed for the random step durations
+     * @return the distribution of the total cooking times
+     * @throws IllegalArgumentException if cookCount or trialCount is less than 1
+     */
+    @NonNull
+    static CompletionTimeDistribution simulate(@NonNull final MealPlan plan, final int cookCount,
+                                               int trialCount, long seed) {
+        Objects.requireNonNull(plan, "plan must not be null");
+        if (cookCount < 1) {
+            throw new IllegalArgumentException("cookCount must be at least 1");
+        }
+        if (trialCount < 1) {
+            throw new IllegalArgumentException("trialCount must be at least 1");
+        }
+        // Parameters of the log-normal distribution of each step duration
+        final int stepCount = plan.getStepCount();
+        final double[] mus = new double[stepCount];
+        final double[] sigmas = new double[stepCount];
+        for (int i = 0; i < stepCount; i++) {
+            final double deviation = plan.getRelativeDeviation(i);
+            sigmas[i] = Math.sqrt(Math.log1p(deviation * deviation));
+            mus[i] = -0.5 * sigmas[i] * sigmas[i];
+        }
+
+        final List<Callable<long[]>> tasks = new ArrayList<>();
+        for (int first = 0; first < trialCount; first += TRIALS_PER_TASK) {
+            final int taskTrialCount = Math.min(TRIALS_PER_TASK, trialCount - first);
+            final long taskSeed = seed + (first / TRIALS_PER_TASK) * SEED_INCREMENT;
+            tasks.add(new Callable<long[]>() {
+                @Override
+                public long[] call() {
+                    return runTrials(plan, cookCount, mus, sigmas, taskTrialCount,
+                            new Random(taskSeed));
+                }
+            });
+        }
+
+        final long[] times = new long[trialCount];
+        try {
+            int position = 0;
+            for (Future<long[]> result : BackgroundExecutor.get().invokeAll(tasks)) {
+                final long[] taskTimes = result.get();
+                System.arraycopy(taskTimes, 0, times, position, taskTimes.length);
+                position += taskTimes.length;
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while simulating", e);
+        } catch (ExecutionException e) {
+            throw new RuntimeException("Unexpected exception simulating a schedule", e.getCause());
+        }
+        Arrays.sort(times);
+        return new CompletionTimeDistribution(times);
+    }
+
+    /**
+     * Runs trials with one random number generator and returns their total cooking times
+     */
+    @NonNull
+    private static long[] runTrials(@NonNull MealPlan plan, int cookCount, @NonNull double[] mus,
+                                    @NonNull double[] sigmas, int trialCount,
+                                    @NonNull Random random) {
+        final long[] durations = new long[plan.getStepCount()];
+        final long[] times = new long[trialCount];
+        for (int trial = 0; trial < trialCount; trial++) {
+            for (int i = 0; i < durations.length; i++) {
+                final long estimate = plan.getDuration(i);
+                if (sigmas[i] == 0) {
+                    durations[i] = estimate;
+                } else {
+                    durations[i] = Math.round(
+                            estimate * Math.exp(mus[i] + sigmas[i] * random.nextGaussian()));
+                }
+            }
+            times[trial] = CookingTimeEstimator.simulate(plan, cookCount, durations);
+        }
+        return times;
+    }
+
+    /**
+     * @return the number of trials
+     */
+    public int getTrialCount() {
+        return mTimes.length;
+    }
+
+    /**
+     * Returns the cooking time that a percentage of trials finished within
+     * @param percent the percentage, from 0 to 100
+     * @return the shortest time that at least that percentage of trials took no longer than
+     * @throws IllegalArgumentException if percent is not in the range [0, 100]
+     */
+    @NonNull
+    public Duration getPercentile(double percent) {
+        if (!(percent >= 0 && percent <= 100)) {
+            throw new IllegalArgumentException("percent must be from 0 to 100");
+        }
+        final int rank = (int) Math.ceil(percent / 100 * mTimes.length);
+        return Duration.millis(mTimes[Math.max(0, rank - 1)]);
+    }
+
+    /**
+     * @return the time that half of the trials finished within
+     */
+    @NonNull
+    public Duration getMedian() {
+        return getPercentile(50);
+    }
+
+    /**
+     * @return the time that 90% of the trials finished within
+     */
+    @NonNull
+    public Duration get90thPercentile() {
+        return getPercentile(90);
+    }
+
+    /**
+     * @return the mean cooking time
+     */
+    @NonNull
+    public Duration getMean() {
+        long total = 0;
+        for (long time : mTimes) {
+            total += time;
+        }
+        return Duration.millis(total / mTimes.length);
+    }
+}
@@ -0,0 +1,223 @@
+/*
+ * Copyright 2016 the Cook-E development team
+ *
+ * This file is part of Cook-E.
+ *
+ * Cook-E is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Cook-E is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Cook-E.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.cook_e.data;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * How fast a cook works compared to the times written in recipes, learned across all recipes so
+ * that steps that have never been timed get a better estimate than their written time.
+ *
+ * A global factor is learned from every timed step, and a factor for each cooking verb, such as
+ * "chop" or "saute", is learned from the steps with that verb. The verb of a step is the first
+ * word of its description that is a known verb, so "Finely chop the onions" is a "chop" step.
+ * Each factor is a geometric moving average of the ratio of actual time to written time. Factors
+ * learned from few steps are pulled towards their prior: 1 for the global factor, and the global
+ * factor for verbs. Each step remembers its verb, so looking up a factor takes O(1) time and
+ * does not allocate after the first lookup for the step.
+ *
+ * This class is thread-safe.
+ */
+public final class CookSpeed {
+
+    /**
+     * The token of the global factor
+     */
+    public static final String GLOBAL_TOKEN = "";
+
+    /**
+     * The number of samples that the prior of a factor counts as
+     */
+    private static final double PRIOR_STRENGTH = 3;
+
+    /**
+     * The smallest weight that a new sample gets, so that factors keep adapting
+     */
+    private static final double MIN_LEARN_RATE = 0.05;
+
+    /**
+     * The largest ratio of actual to written time that is learned from one step. Larger and
+     * smaller ratios are limited, so that a forgotten timer does not skew every estimate.
+     */
+    private static final double MAX_RATIO = 4;
+
+    /**
+     * The verbs that get their own factors
+     */
+    private static final Set<String> VERBS = new HashSet<>(Arrays.asList(
+            "add", "bake", "beat", "blend", "boil", "braise", "broil", "brown", "chill", "chop",
+            "combine", "cook", "cool", "crush", "cut", "dice", "drain", "fold", "fry", "grate",
+            "grill", "grind", "heat", "julienne", "knead", "marinate", "mash", "measure", "melt",
+            "mince", "mix", "peel", "poach", "pour", "preheat", "puree", "reduce", "rinse",
+            "roast", "roll", "saute", "scramble", "sear", "season", "shred", "sift", "simmer",
+            "slice", "spread", "steam", "stir", "strain", "toast", "toss", "trim", "wash",
+            "whip", "whisk"));
+
+    /**
+     * The learned factors, keyed by token
+     */
+    @NonNull
+    private final Map<String, SpeedFactor> mFactors = new HashMap<>();
+
+    /**
+     * Creates a cook speed that has not learned anything
+     */
+    public CookSpeed() {}
+
+    /**
+     * Creates a cook speed with loaded factors
+     * @param factors the factors
+     */
+    public CookSpeed(@NonNull Collection<SpeedFactor> factors) {
+        for (SpeedFactor factor : factors) {
+            mFactors.put(factor.getToken(), factor);
+        }
+    }
+
+    /**
+     * Returns the factor to multiply the written time of a step by to estimate how long the
+     * step will take, if the step itself has not been timed
+     * @param step the step
+     * @return the factor
+     */
+    public synchronized double getFactor(@NonNull Step step) {
+        final double global = shrink(mFactors.get(GLOBAL_TOKEN), 1);
+        final String verb = step.getVerb();
+        if (verb == null) {
+            return global;
+        }
+        return shrink(mFactors.get(verb), global);
+    }
+
+    /**
+     * Learns from a timed step
+     * @param step the step
+     * @param ratio the ratio of the actual time of the step to its written time
+     * @return the factors that changed
+     * @throws IllegalArgumentException if ratio is not positive
+     */
+    @NonNull
+    public synchronized List<SpeedFactor> learn(@NonNull Step step, double ratio) {
+        if (!(ratio > 0)) {
+            throw new IllegalArgumentException("ratio must be positive");
+        }
+        final double logRatio = Math.log(Math.max(1 / MAX_RATIO, Math.min(MAX_RATIO, ratio)));
+        final List<SpeedFactor> changed = new ArrayList<>(2);
+        changed.add(learn(GLOBAL_TOKEN, logRatio));
+        final String verb = step.getVerb();
+        if (verb != null) {
+            changed.add(learn(verb, logRatio));
+        }
+        return changed;
+    }
+
+    /**
+     * @return every learned factor
+     */
+    @NonNull
+    public synchronized List<SpeedFactor> getFactors() {
+        return new ArrayList<>(mFactors.values());
+    }
+
+    /**
+     * Forgets every learned factor
+     */
+    public synchronized void clear() {
+        mFactors.clear();
+    }
+
+    /**
+     * Replaces every learned factor
+     * @param factors the new factors
+     */
+    public synchronized void replace(@NonNull Collection<SpeedFactor> factors) {
+        mFactors.clear();
+        for (SpeedFactor factor : factors) {
+            mFactors.put(factor.getToken(), factor);
+        }
+    }
+
+    /**
+     * Finds the cooking verb of a step description
+     * @param description the description
+     * @return the first word of the description that is a known cooking verb, in lower case and
+     * without accents, or null if there is none
+     */
+    @Nullable
+    static String getVerb(@NonNull String description) {
+        // Decompose accented letters and remove the accents, so that "saute" with an
+        // accent matches "saute"
+        final String normalized = Normalizer.normalize(description, Normalizer.Form.NFD)
+                .replaceAll("\\p{Mn}+", "")
+                .toLowerCase(Locale.US);
+        for (String word : normalized.split("[^a-z]+")) {
+            if (VERBS.contains(word)) {
+                return word;
+            }
+            // Plural or third person forms, such as "chops"
+            if (word.endsWith("s")) {
+                final String stem = word.substring(0, word.length() - 1);
+                if (VERBS.contains(stem)) {
+                    return stem;
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Updates the factor of a token with a sample. Must be called while holding this.
+     */
+    @NonNull
+    private SpeedFactor learn(@NonNull String token, double logRatio) {
+        final SpeedFactor old = mFactors.get(token);
+        final int count = old == null ? 1 : old.getSampleCount() + 1;
+        final double oldLog = old == null ? logRatio : Math.log(old.getFactor());
+        final double rate = Math.max(MIN_LEARN_RATE, 1.0 / count);
+        final SpeedFactor updated = new SpeedFactor(token,
+                Math.exp(oldLog + rate * (logRatio - oldLog)), count);
+        mFactors.put(token, updated);
+        return updated;
+    }
+
+    /**
+     * Combines a learned factor with its prior, in proportion to the number of samples
+     */
+    private static double shrink(@Nullable SpeedFactor factor, double prior) {
+        if (factor == null) {
+            return prior;
+        }
+        final int count = factor.getSampleCount();
+        return Math.exp((count * Math.log(factor.getFactor()) + PRIOR_STRENGTH * Math.log(prior))
+                / (count + PRIOR_STRENGTH));
+    }
+}
@@ -0,0 +1,280 @@
+/*
+ * Copyright 2016 the Cook-E development team
+ *
+ * This file is part of Cook-E.
+ *
+ * Cook-E is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Cook-E is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Cook-E.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.cook_e.data;
+
+import android.support.annotation.NonNull;
+import android.util.Log;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * An append-only log of what happened while cooking, from which learner data can be rebuilt
+ * with a {@link LearnerRetrainer}
+ *
+ * Each event is a fixed-size binary record: the event type, the time in milliseconds since the
+ * epoch, the recipe ID, the step index, and the identity of the step as calculated by
+ * {@link StepMatcher#getIdentity(Step)}, so that events of steps that have since been edited
+ * can be recognized. Events are buffered in memory and written sequentially when the buffer is
+ * full, when {@link #flush()} is called, or when the log is closed.
+ *
+ * This class is thread-safe.
+ */
+public final class CookingLog implements Closeable {
+    /**
+     * The tag used for logging
+     */
+    private static final String TAG = CookingLog.class.getSimpleName();
+
+    /**
+     * Event types
+     */
+    public static final byte SESSION_START = 1;
+    public static final byte STEP_START = 2;
+    public static final byte STEP_FINISH = 3;
+    public static final byte TIMER_START = 4;
+    public static final byte TIMER_FINISH = 5;
+
+    /**
+     * The size of an event record: type, time, recipe ID, step index, and step identity
+     */
+    private static final int RECORD_SIZE = 1 + 8 + 8 + 4 + 8;
+
+    /**
+     * The size of the write buffer, in bytes
+     */
+    private static final int BUFFER_SIZE = 4096;
+
+    /**
+     * The log file
+     */
+    @NonNull
+    private final File mFile;
+
+    /**
+     * The stream that appends to the log, or null if it is not open. Guarded by this.
+     */
+    private DataOutputStream mOutput;
+
+    /**
+     * Creates a log that appends to a file
+     * @param file the file, which does not need to exist
+     */
+    public CookingLog(@NonNull File file) {
+        Objects.requireNonNull(file, "file must not be null");
+        mFile = file;
+    }
+
+    /**
+     * Records the start of a cooking session
+     * @param timeMillis the time of the event, in milliseconds since the epoch
+     * @throws IOException if the event could not be written
+     */
+    public synchronized void logSessionStart(long timeMillis) throws IOException {
+        write(SESSION_START, timeMillis, 0, 0, 0);
+    }
+
+    /**
+     * Records an event of a step
+     * @param type the type of the event: {@link #STEP_START}, {@link #STEP_FINISH},
+     *             {@link #TIMER_START}, or {@link #TIMER_FINISH}
+     * @param timeMillis the time of the event, in milliseconds since the epoch
+     * @param recipe the recipe that contains the step
+     * @param step the step
+     * @throws IllegalArgumentException if type is not a step event type
+     * @throws IOException if the event could not be written
+     */
+    public synchronized void logStepEvent(byte type, long timeMillis, @NonNull Recipe recipe,
+                                          @NonNull Step step) throws IOException {
+        if (type < STEP_START || type > TIMER_FINISH) {
+            throw new IllegalArgumentException("Invalid step event type " + type);
+        }
+        write(type, timeMillis, recipe.getObjectId(), step.getIndex(),
+                StepMatcher.getIdentity(step));
+    }
+
+    /**
+     * Writes buffered events to the file
+     * @throws IOException if an error occurs
+     */
+    public synchronized void flush() throws IOException {
+        if (mOutput != null) {
+            mOutput.flush();
+        }
+    }
+
+    /**
+     * Writes buffered events and closes the file. Events logged later reopen it.
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        if (mOutput != null) {
+            try {
+                mOutput.close();
+            } finally {
+                mOutput = null;
+            }
+        }
+    }
+
+    /**
+     * Reads every complete event in the log, including buffered events
+     * @return the events, in the order they were logged
+     * @throws IOException if the log could not be read
+     */
+    @NonNull
+    public synchronized List<Event> read() throws IOException {
+        flush();
+        final List<Event> events = new ArrayList<>();
+        if (!mFile.exists()) {
+            return events;
+        }
+        final DataInputStream input = new DataInputStream(
+                new BufferedInputStream(new FileInputStream(mFile)));
+        try {
+            while (true) {
+                final int type = input.read();
+                if (type == -1) {
+                    break;
+                }
+                if (type < SESSION_START || type > TIMER_FINISH) {
+                    Log.w(TAG, "Unknown cooking log event type " + type + ", ignoring the rest");
+                    break;
+                }
+                events.add(new Event((byte) type, input.readLong(), input.readLong(),
+                        input.readInt(), input.readLong()));
+            }
+        } catch (EOFException e) {
+            // The process died while writing the last event
+        } finally {
+            input.close();
+        }
+        return events;
+    }
+
+    /**
+     * Deletes every event
+     * @throws IOException if the log could not be deleted
+     */
+    public synchronized void clear() throws IOException {
+        close();
+        if (mFile.exists() && !mFile.delete()) {
+            throw new IOException("Failed to delete " + mFile.getPath());
+        }
+    }
+
+    /**
+     * Appends an event to the buffer. Must be called while holding this.
+     */
+    private void write(byte type, long timeMillis, long recipeId, int stepIndex,
+                       long stepIdentity) throws IOException {
+        if (mOutput == null) {
+            truncateIncompleteRecord();
+            mOutput = new DataOutputStream(new BufferedOutputStream(
+                    new FileOutputStream(mFile, true), BUFFER_SIZE));
+        }
+        mOutput.writeByte(type);
+        mOutput.writeLong(timeMillis);
+        mOutput.writeLong(recipeId);
+        mOutput.writeInt(stepIndex);
+        mOutput.writeLong(stepIdentity);
+    }
+
+    /**
+     * Removes the incomplete record that is left at the end of the file if the process died
+     * while writing it, so that new records are aligned
+     */
+    private void truncateIncompleteRecord() throws IOException {
+        final long length = mFile.length();
+        if (length % RECORD_SIZE != 0) {
+            final RandomAccessFile file = new RandomAccessFile(mFile, "rw");
+            try {
+                file.setLength(length - length % RECORD_SIZE);
+            } finally {
+                file.close();
+            }
+        }
+    }
+
+    /**
+     * An event read from a log
+     */
+    public static final class Event {
+        private final byte mType;
+        private final long mTimeMillis;
+        private final long mRecipeId;
+        private final int mStepIndex;
+        private final long mStepIdentity;
+
+        Event(byte type, long timeMillis, long recipeId, int stepIndex, long stepIdentity) {
+            mType = type;
+            mTimeMillis = timeMillis;
+            mRecipeId = recipeId;
+            mStepIndex = stepIndex;
+            mStepIdentity = stepIdentity;
+        }
+
+        /**
+         * @return the type of the event
+         */
+        public byte getType() {
+            return mType;
+        }
+
+        /**
+         * @return the time of the event, in milliseconds since the epoch
+         */
+        public long getTimeMillis() {
+            return mTimeMillis;
+        }
+
+        /**
+         * @return the ID of the recipe that contains the step, or 0 for a session start
+         */
+        public long getRecipeId() {
+            return mRecipeId;
+        }
+
+        /**
+         * @return the index of the step, or 0 for a session start
+         */
+        public int getStepIndex() {
+            return mStepIndex;
+        }
+
+        /**
+         * @return the identity of the step, or 0 for a session start
+         */
+        public long getStepIdentity() {
+            return mStepIdentity;
+        }
+    }
+}
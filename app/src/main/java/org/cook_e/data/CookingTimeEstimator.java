@@ -19,61 +19,144 @@
 
 package org.cook_e.data;
 
+import android.support.annotation.Nullable;
 
-import java.util.*;
+import org.joda.time.DateTimeConstants;
+import org.joda.time.Duration;
+
+import java.util.List;
 
 /**
  * A class for estimating cooking times.
  */
 public class CookingTimeEstimator {
-    private CookingTimeEstimator(Schedule schedule) {}
+    /**
+     * The number of trials used to estimate the distribution of cooking times
+     */
+    public static final int DEFAULT_TRIAL_COUNT = 2000;
 
+    private CookingTimeEstimator() {}
 
     /**
-     * Calculates and returns the estimated amount of time it would take to cook
-     * the given schedule. The given schedule should be brand new and will be
-     * modified by the function.
+     * Calculates and returns the estimated amount of time in minutes it would take to cook
+     * the steps of the given schedule. The schedule is not modified.
      *
      * @param schedule the schedule to measure the estimated time of
+     * @param timeLearner unused; the durations estimated when the schedule was created are used
      * @return the estimated amount of time it would take to cook the given schedule
      */
     public static int getOptimizedTime(Schedule schedule, TimeLearnerInterface timeLearner) {
-        int totalTime = 0;
-        Map<Recipe, Integer> busyTimes = new HashMap<Recipe, Integer>();
-        for (int i = 0; i < schedule.getStepCount(); i++) {
-            Step currStep = schedule.getNextStep();
-            if (currStep == null) {
-                // handles case where all remaining recipes are blocked
-                int minBusyTime = Integer.MAX_VALUE;
-                for (Recipe recipe : busyTimes.keySet()) {
-                    minBusyTime = Math.min(minBusyTime, busyTimes.get(recipe));
-                }
-                updateBusyTimes(busyTimes, minBusyTime, schedule);
-                totalTime += minBusyTime;
-                i--;// retry the current step
-            } else {
-                Recipe currRecipe = schedule.getCurrentStepRecipe();
-                if (currStep.isSimultaneous()) {
-                    // handles case where the next step is simultaneous
-                    busyTimes.put(schedule.getCurrentStepRecipe(),
-                            (int) timeLearner.getEstimatedTime(currRecipe, currStep).getStandardMinutes());
-                } else {
-                    // handles case where the next step is not simultaneous
-                    int currStepTime = (int) timeLearner.getEstimatedTime(currRecipe, currStep).getStandardMinutes();
-                    updateBusyTimes(busyTimes, currStepTime, schedule);
-                    totalTime += currStepTime;
-                }
-            }
-        }
+        return getOptimizedTime(schedule.getPlan());
+    }
 
-        // adds the maximum remaining busy time into the total time
-        int maxRemainingBusyTime = 0;
-        for (Recipe recipe : busyTimes.keySet()) {
-            maxRemainingBusyTime = Math.max(maxRemainingBusyTime, busyTimes.get(recipe));
-        }
-        totalTime += maxRemainingBusyTime;
+    /**
+     * Calculates and returns the estimated amount of time in minutes it would take to cook
+     * the given plan, interleaving steps in the same way as a {@link Schedule} would.
+     *
+     * @param plan the plan to estimate the cook time of
+     * @return the estimated cooking time, in minutes
+     */
+    public static int getOptimizedTime(MealPlan plan) {
+        return toMinutes(simulate(plan, 1));
+    }
 
-        return totalTime;
+    /**
+     * Calculates and returns the estimated amount of time in minutes it would take a number
+     * of cooks working together to cook the given plan, dividing and interleaving steps in
+     * the same way as a {@link Schedule} with that many cooks would.
+     *
+     * @param plan the plan to estimate the cook time of
+     * @param cookCount the number of cooks
+     * @return the estimated cooking time, in minutes
+     * @throws IllegalArgumentException if cookCount is less than 1
+     */
+    public static int getOptimizedTime(MealPlan plan, int cookCount) {
+        return toMinutes(simulate(plan, cookCount));
+    }
+
+    /**
+     * Calculates and returns the estimated amount of time in minutes it would take to cook
+     * the given bunch, interleaving steps in the same way as a {@link Schedule} would.
+     *
+     * @param bunch the group of recipes to estimate the cook time of
+     * @param timeLearner the time learner used to estimate the duration of each step
+     * @return the estimated cooking time, in minutes
+     */
+    public static int getOptimizedTime(Bunch bunch, TimeLearnerInterface timeLearner) {
+        return toMinutes(simulate(new MealPlan(bunch, timeLearner), 1));
+    }
+
+    /**
+     * Calculates and returns the estimated amount of time it would take to cook the given
+     * plan, interleaving steps in the same way as a {@link Schedule} would.
+     *
+     * @param plan the plan to estimate the cook time of
+     * @return the estimated cooking time, with millisecond precision
+     */
+    public static Duration getOptimizedDuration(MealPlan plan) {
+        return Duration.millis(simulate(plan, 1));
+    }
+
+    /**
+     * Calculates and returns the estimated amount of time it would take a number of cooks
+     * working together to cook the given plan.
+     *
+     * @param plan the plan to estimate the cook time of
+     * @param cookCount the number of cooks
+     * @return the estimated cooking time, with millisecond precision
+     * @throws IllegalArgumentException if cookCount is less than 1
+     */
+    public static Duration getOptimizedDuration(MealPlan plan, int cookCount) {
+        return Duration.millis(simulate(plan, cookCount));
+    }
+
+    /**
+     * Searches for the ordering of the steps of a plan that a number of cooks can finish
+     * soonest. Several candidate orderings are evaluated at the same time, using every
+     * processor core, until the time budget runs out.
+     *
+     * @param plan the plan to optimize
+     * @param cookCount the number of cooks
+     * @param budgetMillis the maximum time to search, in milliseconds
+     * @return a plan, with priorities that give the best ordering found, that finishes no later
+     * than the given plan
+     * @throws IllegalArgumentException if cookCount is less than 1 or budgetMillis is negative
+     */
+    public static MealPlan getBestPlan(MealPlan plan, int cookCount, long budgetMillis) {
+        Objects.requireNonNull(plan, "plan must not be null");
+        return CandidateSearch.search(plan, cookCount, budgetMillis);
+    }
+
+    /**
+     * Estimates how the time it takes a number of cooks to cook a plan may vary, by simulating
+     * cooking it {@value #DEFAULT_TRIAL_COUNT} times with step durations drawn around their
+     * estimates. The trials run in parallel on every processor core.
+     *
+     * @param plan the plan to estimate the cook time of
+     * @param cookCount the number of cooks
+     * @return the distribution of cooking times
+     * @throws IllegalArgumentException if cookCount is less than 1
+     */
+    public static CompletionTimeDistribution getCompletionTimeDistribution(MealPlan plan,
+                                                                           int cookCount) {
+        return getCompletionTimeDistribution(plan, cookCount, DEFAULT_TRIAL_COUNT, 0);
+    }
+
+    /**
+     * Estimates how the time it takes a number of cooks to cook a plan may vary, by simulating
+     * cooking it many times with step durations drawn around their estimates. The same seed
+     * always gives the same result.
+     *
+     * @param plan the plan to estimate the cook time of
+     * @param cookCount the number of cooks
+     * @param trialCount the number of times to simulate cooking the plan
+     * @param seed the seed for the random step durations
+     * @return the distribution of cooking times
+     * @throws IllegalArgumentException if cookCount or trialCount is less than 1
+     */
+    public static CompletionTimeDistribution getCompletionTimeDistribution(MealPlan plan,
+            int cookCount, int trialCount, long seed) {
+        return CompletionTimeDistribution.simulate(plan, cookCount, trialCount, seed);
     }
 
     /**
@@ -99,24 +182,100 @@ public class CookingTimeEstimator {
     }
 
     /**
+     * Calculates and returns the estimated amount of time it would take to cook
+     * the recipes in the given plan if each recipe is done one after another and no
+     * interleaving of steps is done.
+     *
+     * @param plan the plan to estimate the cook time of
+     * @return the estimated cooking time of cooking one recipe after another
+     */
+    public static int getOriginalTime(MealPlan plan) {
+        int totalTime = 0;
+        for (int i = 0; i < plan.getStepCount(); i++) {
+            totalTime += plan.getStep(i).getDurationMinutes();
+        }
+        return totalTime;
+    }
+
+    /**
+     * Simulates cooking a plan with some number of cooks and returns the time when the last
+     * step ends.
+     *
+     * Whenever a cook is free, the cook starts the step that a {@link Schedule} would hand out
+     * next. A non-simultaneous step occupies its cook for its duration, and the steps that
+     * depend on it are not ready until the cook finishes. A simultaneous step takes none of the
+     * cook's time, but the steps that depend on it wait until it ends, while other steps of the
+     * same recipe can go ahead. A step that needs equipment that is in use waits
+     * until the equipment is free. When no cook can start a step, time jumps to the next time
+     * that a step ends.
+     *
+     * Each step is started once and ends once, and both are O(log n) heap operations,
+     * so the simulation takes O(n log n) time for n steps when equipment is not a bottleneck.
      *
+     * @param plan the plan to simulate
+     * @param cookCount the number of cooks
+     * @return the total cooking time, in milliseconds
+     * @throws IllegalArgumentException if cookCount is less than 1
+     */
+    private static long simulate(MealPlan plan, int cookCount) {
+        return simulate(plan, cookCount, null);
+    }
+
+    /**
+     * Simulates cooking a plan, with steps taking different times than the plan estimates.
+     * Steps are handed out in the same order as for the estimated times.
      *
-     * @param busyTimes the map of recipes to the amount of busy time left to update
-     * @param offset the amount to decrease the busy times by
-     * @param schedule the schedule to update when recipes busy times hit zero
+     * @param plan the plan to simulate
+     * @param cookCount the number of cooks
+     * @param durations the duration of each step in milliseconds, or null to use the
+     *                  estimated durations
+     * @return the total cooking time, in milliseconds
+     * @throws IllegalArgumentException if cookCount is less than 1
      */
-    private static void updateBusyTimes(Map<Recipe, Integer> busyTimes, int offset, Schedule schedule) {
-        Iterator<Map.Entry<Recipe, Integer>> busyTimesIterator = busyTimes.entrySet().iterator();
-        while (busyTimesIterator.hasNext()) {
-            Map.Entry<Recipe, Integer> currBusyTimeEntry = busyTimesIterator.next();
-            Recipe recipe = currBusyTimeEntry.getKey();
-            int busyTime = currBusyTimeEntry.getValue();
-
-            busyTimes.put(recipe, Math.max(busyTime - offset, 0));
-            if (busyTimes.get(recipe) == 0) {
-                busyTimesIterator.remove();
-                schedule.finishSimultaneousStepFromRecipe(recipe);
+    static long simulate(MealPlan plan, int cookCount, @Nullable long[] durations) {
+        if (cookCount < 1) {
+            throw new IllegalArgumentException("cookCount must be at least 1");
+        }
+        final ListScheduler scheduler = new ListScheduler(plan);
+        // The steps in progress, keyed by their negated end times so that the earliest end is at
+        // the head
+        final IndexedPriorityQueue running = new IndexedPriorityQueue(plan.getStepCount());
+
+        long now = 0;
+        long endTime = 0;
+        int freeCooks = cookCount;
+        while (scheduler.getUnstartedStepCount() > 0) {
+            final int step = freeCooks != 0 ? scheduler.startNextStep() : -1;
+            if (step == -1) {
+                // Wait for the next step to end
+                now = -running.getKey(running.peek());
+            } else {
+                final long end = now
+                        + (durations != null ? durations[step] : plan.getDuration(step));
+                running.insert(step, -end);
+                endTime = Math.max(endTime, end);
+                if (!plan.isSimultaneous(step)) {
+                    freeCooks--;
+                }
+            }
+            // Release the cooks, steps, and equipment whose steps have ended
+            while (!running.isEmpty() && -running.getKey(running.peek()) <= now) {
+                final int ended = running.poll();
+                if (!plan.isSimultaneous(ended)) {
+                    freeCooks++;
+                }
+                scheduler.finishStep(ended);
             }
         }
+        return endTime;
+    }
+
+    /**
+     * Converts a time in milliseconds into whole minutes, rounding down
+     * @param millis the time in milliseconds
+     * @return the time in minutes
+     */
+    private static int toMinutes(long millis) {
+        return (int) (millis / DateTimeConstants.MILLIS_PER_MINUTE);
     }
 }
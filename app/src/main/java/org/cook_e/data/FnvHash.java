@@ -0,0 +1,69 @@
+/*
+ * Copyright 2016 the Cook-E development team
+ *
+ * This file is part of Cook-E.
+ *
+ * Cook-E is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Cook-E is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Cook-E.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.cook_e.data;
+
+/**
+ * The 64-bit FNV-1a hash, used for fingerprints of recipes and steps that do not depend on
+ * object identity
+ *
+ * A hash is built by starting with {@link #OFFSET_BASIS} and passing the result of each call
+ * to the next.
+ */
+final class FnvHash {
+    /**
+     * The initial value of a hash
+     */
+    static final long OFFSET_BASIS = 0xcbf29ce484222325L;
+    private static final long PRIME = 0x100000001b3L;
+
+    private FnvHash() {}
+
+    /**
+     * Adds the eight bytes of a value to a hash
+     * @param hash the hash so far
+     * @param value the value to add
+     * @return the new hash
+     */
+    static long hashLong(long hash, long value) {
+        for (int i = 0; i < 8; i++) {
+            hash ^= (value >>> (8 * i)) & 0xff;
+            hash *= PRIME;
+        }
+        return hash;
+    }
+
+    /**
+     * Adds the length and the characters of a string to a hash
+     * @param hash the hash so far
+     * @param value the string to add
+     * @return the new hash
+     */
+    static long hashString(long hash, String value) {
+        hash = hashLong(hash, value.length());
+        for (int i = 0; i < value.length(); i++) {
+            final char c = value.charAt(i);
+            hash ^= c & 0xff;
+            hash *= PRIME;
+            hash ^= c >>> 8;
+            hash *= PRIME;
+        }
+        return hash;
+    }
+}
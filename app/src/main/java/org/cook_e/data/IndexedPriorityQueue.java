@@ -0,0 +1,224 @@
+/*
+ * Copyright 2016 the Cook-E development team
+ *
+ * This file is part of Cook-E.
+ *
+ * Cook-E is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Cook-E is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Cook-E.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.cook_e.data;
+
+import java.util.NoSuchElementException;
+
+/**
+ * A binary heap of integer indices in the range [0, capacity), each with a long key.
+ *
+ * The index with the largest key is at the head of the queue. Ties are broken in favor of the
+ * smaller index. Because every index can be located in constant time, an index can be removed
+ * or have its key changed in O(log n) time.
+ */
+final class IndexedPriorityQueue {
+    /**
+     * The heap, holding indices. Positions 0 to mSize - 1 are used.
+     */
+    private final int[] mHeap;
+    /**
+     * Maps each index to its position in mHeap, or -1 if the index is not in the queue
+     */
+    private final int[] mPositions;
+    /**
+     * The key of each index in the queue
+     */
+    private final long[] mKeys;
+    /**
+     * The number of indices in the queue
+     */
+    private int mSize;
+
+    /**
+     * Creates an empty queue
+     * @param capacity the number of distinct indices that this queue can hold
+     * @throws IllegalArgumentException if capacity is negative
+     */
+    public IndexedPriorityQueue(int capacity) {
+        if (capacity < 0) {
+            throw new IllegalArgumentException("capacity must not be negative");
+        }
+        mHeap = new int[capacity];
+        mPositions = new int[capacity];
+        mKeys = new long[capacity];
+        for (int i = 0; i < capacity; i++) {
+            mPositions[i] = -1;
+        }
+        mSize = 0;
+    }
+
+    /**
+     * @return true if this queue contains no indices
+     */
+    public boolean isEmpty() {
+        return mSize == 0;
+    }
+
+    /**
+     * @return the number of indices in this queue
+     */
+    public int size() {
+        return mSize;
+    }
+
+    /**
+     * Determines if an index is in this queue
+     * @param index the index to check
+     * @return true if the index is in this queue
+     */
+    public boolean contains(int index) {
+        return mPositions[index] != -1;
+    }
+
+    /**
+     * Adds an index to this queue
+     * @param index the index to add
+     * @param key the key of the index
+     * @throws IllegalStateException if the index is already in this queue
+     */
+    public void insert(int index, long key) {
+        if (contains(index)) {
+            throw new IllegalStateException("Index " + index + " is already in the queue");
+        }
+        mKeys[index] = key;
+        mHeap[mSize] = index;
+        mPositions[index] = mSize;
+        mSize++;
+        siftUp(mSize - 1);
+    }
+
+    /**
+     * Returns the index at the head of this queue without removing it
+     * @return the index with the largest key
+     * @throws NoSuchElementException if this queue is empty
+     */
+    public int peek() {
+        if (mSize == 0) {
+            throw new NoSuchElementException("Queue is empty");
+        }
+        return mHeap[0];
+    }
+
+    /**
+     * Removes and returns the index at the head of this queue
+     * @return the index with the largest key
+     * @throws NoSuchElementException if this queue is empty
+     */
+    public int poll() {
+        final int head = peek();
+        removeAt(0);
+        return head;
+    }
+
+    /**
+     * Removes an index from this queue. Does nothing if the index is not in the queue.
+     * @param index the index to remove
+     */
+    public void remove(int index) {
+        final int position = mPositions[index];
+        if (position != -1) {
+            removeAt(position);
+        }
+    }
+
+    /**
+     * Returns the key of an index in this queue
+     * @param index the index
+     * @return the key
+     * @throws NoSuchElementException if the index is not in this queue
+     */
+    public long getKey(int index) {
+        if (!contains(index)) {
+            throw new NoSuchElementException("Index " + index + " is not in the queue");
+        }
+        return mKeys[index];
+    }
+
+    /**
+     * Removes all indices from this queue
+     */
+    public void clear() {
+        for (int i = 0; i < mSize; i++) {
+            mPositions[mHeap[i]] = -1;
+        }
+        mSize = 0;
+    }
+
+    private void removeAt(int position) {
+        final int index = mHeap[position];
+        mSize--;
+        if (position != mSize) {
+            swap(position, mSize);
+        }
+        mPositions[index] = -1;
+        if (position < mSize) {
+            siftDown(position);
+            siftUp(position);
+        }
+    }
+
+    private void siftUp(int position) {
+        while (position > 0) {
+            final int parent = (position - 1) / 2;
+            if (!before(mHeap[position], mHeap[parent])) {
+                break;
+            }
+            swap(position, parent);
+            position = parent;
+        }
+    }
+
+    private void siftDown(int position) {
+        while (true) {
+            final int left = 2 * position + 1;
+            if (left >= mSize) {
+                break;
+            }
+            int child = left;
+            final int right = left + 1;
+            if (right < mSize && before(mHeap[right], mHeap[left])) {
+                child = right;
+            }
+            if (!before(mHeap[child], mHeap[position])) {
+                break;
+            }
+            swap(position, child);
+            position = child;
+        }
+    }
+
+    /**
+     * @return true if index a should be closer to the head of the queue than index b
+     */
+    private boolean before(int a, int b) {
+        if (mKeys[a] != mKeys[b]) {
+            return mKeys[a] > mKeys[b];
+        }
+        return a < b;
+    }
+
+    private void swap(int i, int j) {
+        final int temp = mHeap[i];
+        mHeap[i] = mHeap[j];
+        mHeap[j] = temp;
+        mPositions[mHeap[i]] = i;
+        mPositions[mHeap[j]] = j;
+    }
+}
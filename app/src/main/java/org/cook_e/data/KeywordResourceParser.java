@@ -0,0 +1,70 @@
+/*
+ * Copyright 2016 the Cook-E development team
+ *
+ * This file is part of Cook-E.
+ *
+ * Cook-E is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Cook-E is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Cook-E.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.cook_e.data;
+
+import android.support.annotation.NonNull;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * A resource parser that uses the resources that a step has been tagged with, or infers them
+ * from keywords in its description if it has not been tagged.
+ */
+public final class KeywordResourceParser implements ResourceParser {
+
+    /**
+     * Maps description keywords to the resources that they indicate
+     */
+    private static final Map<String, String> KEYWORD_RESOURCES;
+    static {
+        final Map<String, String> keywords = new LinkedHashMap<>();
+        keywords.put("bake", Kitchen.OVEN);
+        keywords.put("roast", Kitchen.OVEN);
+        keywords.put("broil", Kitchen.OVEN);
+        keywords.put("boil", Kitchen.BURNER);
+        keywords.put("simmer", Kitchen.BURNER);
+        keywords.put("fry", Kitchen.BURNER);
+        keywords.put("saute", Kitchen.BURNER);
+        keywords.put("skillet", Kitchen.BURNER);
+        keywords.put("microwave", Kitchen.MICROWAVE);
+        KEYWORD_RESOURCES = Collections.unmodifiableMap(keywords);
+    }
+
+    @NonNull
+    @Override
+    public Set<String> getResources(@NonNull Step step) {
+        Objects.requireNonNull(step, "step must not be null");
+        final Set<String> resources = new HashSet<>(step.getResources());
+        if (resources.isEmpty()) {
+            final String description = step.getDescription().toLowerCase(Locale.US);
+            for (Map.Entry<String, String> entry : KEYWORD_RESOURCES.entrySet()) {
+                if (description.contains(entry.getKey())) {
+                    resources.add(entry.getValue());
+                }
+            }
+        }
+        return resources;
+    }
+}
@@ -0,0 +1,128 @@
+/*
+ * Copyright 2016 the Cook-E development team
+ *
+ * This file is part of Cook-E.
+ *
+ * Cook-E is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Cook-E is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Cook-E.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.cook_e.data;
+
+import android.support.annotation.NonNull;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * The equipment available for cooking, given as the number of steps that can use each
+ * resource at the same time. Resources that are not listed are unlimited.
+ *
+ * Objects of this class are immutable.
+ */
+public final class Kitchen {
+
+    /**
+     * An oven
+     */
+    public static final String OVEN = "oven";
+    /**
+     * A stove burner
+     */
+    public static final String BURNER = "burner";
+    /**
+     * A microwave oven
+     */
+    public static final String MICROWAVE = "microwave";
+
+    /**
+     * A typical home kitchen, with one oven, four burners, and one microwave
+     */
+    public static final Kitchen DEFAULT;
+    static {
+        final Map<String, Integer> capacities = new HashMap<>();
+        capacities.put(OVEN, 1);
+        capacities.put(BURNER, 4);
+        capacities.put(MICROWAVE, 1);
+        DEFAULT = new Kitchen(capacities);
+    }
+
+    /**
+     * A kitchen with unlimited equipment
+     */
+    public static final Kitchen UNLIMITED = new Kitchen(new HashMap<String, Integer>());
+
+    /**
+     * The capacity of each limited resource
+     */
+    @NonNull
+    private final Map<String, Integer> mCapacities;
+
+    /**
+     * Creates a kitchen
+     * @param capacities the number of steps that can use each resource at the same time
+     * @throws NullPointerException if capacities is null or contains a null key or value
+     * @throws IllegalArgumentException if any capacity is less than 1
+     */
+    public Kitchen(@NonNull Map<String, Integer> capacities) {
+        Objects.requireNonNull(capacities, "capacities must not be null");
+        mCapacities = new HashMap<>(capacities.size());
+        for (Map.Entry<String, Integer> entry : capacities.entrySet()) {
+            Objects.requireNonNull(entry.getKey(), "resource must not be null");
+            Objects.requireNonNull(entry.getValue(), "capacity must not be null");
+            if (entry.getValue() < 1) {
+                throw new IllegalArgumentException("Capacity of " + entry.getKey()
+                        + " must be at least 1");
+            }
+            mCapacities.put(entry.getKey(), entry.getValue());
+        }
+    }
+
+    /**
+     * Returns the number of steps that can use a resource at the same time
+     * @param resource the resource name
+     * @return the capacity, or Integer.MAX_VALUE if the resource is unlimited
+     */
+    public int getCapacity(@NonNull String resource) {
+        final Integer capacity = mCapacities.get(resource);
+        return capacity != null ? capacity : Integer.MAX_VALUE;
+    }
+
+    /**
+     * Determines if a resource is limited
+     * @param resource the resource name
+     * @return true if the resource has a capacity
+     */
+    public boolean isLimited(@NonNull String resource) {
+        return mCapacities.containsKey(resource);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        return mCapacities.equals(((Kitchen) o).mCapacities);
+    }
+
+    @Override
+    public int hashCode() {
+        return mCapacities.hashCode();
+    }
+
+    @Override
+    public String toString() {
+        return "Kitchen{" +
+                "mCapacities=" + mCapacities +
+                '}';
+    }
+}
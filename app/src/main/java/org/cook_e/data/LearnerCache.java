@@ -0,0 +1,249 @@
+/*
+ * Copyright 2016 the Cook-E development team
+ *
+ * This file is part of Cook-E.
+ *
+ * Cook-E is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Cook-E is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Cook-E.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.cook_e.data;
+
+import android.support.annotation.NonNull;
+import android.support.v4.util.LongSparseArray;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A process-wide cache of learner data, so that weights learned in one cook session are used by
+ * the next one without reading them from the database again.
+ *
+ * Entries are kept per recipe. A recipe that has no learner data is cached as an empty list, so
+ * that it is not looked up again either. {@link StorageAccessor} updates the cache when learner
+ * data is learned, and removes entries when recipes or learner data are changed in other ways.
+ * When the cache is full, the least recently used recipe is evicted.
+ *
+ * This class is thread-safe.
+ */
+public final class LearnerCache {
+
+    /**
+     * The number of recipes kept by the process-wide cache
+     */
+    private static final int DEFAULT_CAPACITY = 64;
+
+    /**
+     * The process-wide cache
+     */
+    private static final LearnerCache INSTANCE = new LearnerCache(DEFAULT_CAPACITY);
+
+    /**
+     * The learning weights of each cached recipe, sorted by step index, in order from least to
+     * most recently used. These are never given out, only copies.
+     */
+    @NonNull
+    private final LinkedHashMap<Long, List<LearningWeight>> mEntries;
+
+    /**
+     * Incremented every time entries are changed or removed, so that data loaded from the
+     * database at the same time is not cached
+     */
+    private long mVersion;
+
+    /**
+     * Creates an empty cache
+     * @param capacity the maximum number of recipes to keep
+     * @throws IllegalArgumentException if capacity is less than 1
+     */
+    public LearnerCache(final int capacity) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("capacity must be at least 1");
+        }
+        mEntries = new LinkedHashMap<Long, List<LearningWeight>>(capacity, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Long, List<LearningWeight>> eldest) {
+                return size() > capacity;
+            }
+        };
+    }
+
+    /**
+     * @return the process-wide cache
+     */
+    @NonNull
+    public static LearnerCache getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * Returns the learner data of some recipes. Recipes that are not cached are loaded from a
+     * database in one query and added to the cache.
+     *
+     * @param recipeIds the IDs of the recipes. Duplicate IDs are allowed.
+     * @param source the database to load recipes that are not cached from
+     * @return a copy of the learning weights of each recipe, keyed by recipe ID
+     * @throws SQLException if the recipes could not be loaded
+     */
+    @NonNull
+    public LongSparseArray<List<LearningWeight>> get(@NonNull long[] recipeIds,
+                                                     @NonNull final SQLAccessor source)
+            throws SQLException {
+        return get(recipeIds, new Source() {
+            @NonNull
+            @Override
+            public LongSparseArray<List<LearningWeight>> load(@NonNull long[] recipeIds)
+                    throws SQLException {
+                return source.loadLearnerData(recipeIds);
+            }
+        });
+    }
+
+    /**
+     * Returns the learner data of some recipes. Recipes that are not cached are loaded from a
+     * source in one call and added to the cache. The source is not used if every recipe is
+     * cached.
+     *
+     * @param recipeIds the IDs of the recipes. Duplicate IDs are allowed.
+     * @param source the source to load recipes that are not cached from
+     * @return a copy of the learning weights of each recipe, keyed by recipe ID
+     * @throws SQLException if the recipes could not be loaded
+     */
+    @NonNull
+    public LongSparseArray<List<LearningWeight>> get(@NonNull long[] recipeIds,
+                                                     @NonNull Source source)
+            throws SQLException {
+        final LongSparseArray<List<LearningWeight>> result =
+                new LongSparseArray<>(recipeIds.length);
+        final long[] missing = new long[recipeIds.length];
+        int missingCount = 0;
+        final long version;
+        synchronized (this) {
+            version = mVersion;
+            for (long recipeId : recipeIds) {
+                final List<LearningWeight> cached = mEntries.get(recipeId);
+                if (cached != null) {
+                    result.put(recipeId, copy(cached));
+                } else {
+                    missing[missingCount++] = recipeId;
+                }
+            }
+        }
+        if (missingCount == 0) {
+            return result;
+        }
+        // Load without holding the lock, so that other sessions can use the cache meanwhile
+        final LongSparseArray<List<LearningWeight>> loaded =
+                source.load(Arrays.copyOf(missing, missingCount));
+        synchronized (this) {
+            for (int i = 0; i < missingCount; i++) {
+                List<LearningWeight> weights = loaded.get(missing[i]);
+                if (weights == null) {
+                    weights = Collections.emptyList();
+                }
+                result.put(missing[i], copy(weights));
+                // Do not cache data that may have changed since it was loaded
+                if (version == mVersion) {
+                    mEntries.put(missing[i], copy(weights));
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Records a learned weight. If the recipe is cached, its entry is updated.
+     *
+     * @param recipeId the ID of the recipe that contains the step
+     * @param weight the new learning weight of the step, which is copied
+     */
+    public synchronized void update(long recipeId, @NonNull LearningWeight weight) {
+        mVersion++;
+        final List<LearningWeight> weights = mEntries.get(recipeId);
+        if (weights == null) {
+            return;
+        }
+        final LearningWeight copy = copy(weight);
+        for (int i = 0; i < weights.size(); i++) {
+            final int index = weights.get(i).getIndex();
+            if (index == weight.getIndex()) {
+                weights.set(i, copy);
+                return;
+            } else if (index > weight.getIndex()) {
+                weights.add(i, copy);
+                return;
+            }
+        }
+        weights.add(copy);
+    }
+
+    /**
+     * Removes a recipe from the cache. This must be called when the learner data of the recipe
+     * changes other than through {@link #update(long, LearningWeight)}.
+     *
+     * @param recipeId the ID of the recipe
+     */
+    public synchronized void invalidate(long recipeId) {
+        mVersion++;
+        mEntries.remove(recipeId);
+    }
+
+    /**
+     * Removes every recipe from the cache
+     */
+    public synchronized void clear() {
+        mVersion++;
+        mEntries.clear();
+    }
+
+    /**
+     * @return the number of cached recipes
+     */
+    public synchronized int size() {
+        return mEntries.size();
+    }
+
+    @NonNull
+    private static List<LearningWeight> copy(@NonNull List<LearningWeight> weights) {
+        final List<LearningWeight> copy = new ArrayList<>(weights.size());
+        for (LearningWeight weight : weights) {
+            copy.add(copy(weight));
+        }
+        return copy;
+    }
+
+    @NonNull
+    private static LearningWeight copy(@NonNull LearningWeight weight) {
+        return new LearningWeight(weight.getIndex(), weight.getTimeWeight(),
+                weight.getLearnRate(), weight.getVariance(), weight.getSampleCount());
+    }
+
+    /**
+     * Loads the learner data of recipes that are not cached
+     */
+    public interface Source {
+        /**
+         * @param recipeIds the IDs of the recipes
+         * @return the learning weights of each recipe that has any, keyed by recipe ID
+         * @throws SQLException if the recipes could not be loaded
+         */
+        @NonNull
+        LongSparseArray<List<LearningWeight>> load(@NonNull long[] recipeIds)
+                throws SQLException;
+    }
+}
@@ -0,0 +1,655 @@
+/*
+ * Copyright 2016 the Cook-E development team
+ *
+ * This file is part of Cook-E.
+ *
+ * Cook-E is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Cook-E is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Cook-E.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.cook_e.data;
+
+import android.support.annotation.NonNull;
+import android.util.Log;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedInputStream;
+
+/**
+ * Buffers learner data and speed factor updates in memory and writes them to a database in one transaction
+ * on a background thread.
+ *
+ * Each update is also appended to a small journal file before it is buffered, so that updates
+ * that had not been written to the database when the process died are written when the next
+ * writer with the same journal is created. The journal is deleted once everything in it has been
+ * written to the database.
+ *
+ * Updates are written {@link #DEFAULT_FLUSH_DELAY_MILLIS} milliseconds after the first buffered
+ * update, when {@link #requestFlush()} or {@link #flush()} is called, or when the writer is closed.
+ */
+public final class LearnerDataWriter implements Closeable {
+    /**
+     * The tag used for logging
+     */
+    private static final String TAG = LearnerDataWriter.class.getSimpleName();
+
+    /**
+     * The default time between the first buffered update and writing it, in milliseconds
+     */
+    public static final long DEFAULT_FLUSH_DELAY_MILLIS = 5000;
+
+    /**
+     * The types of journal records. Each record is a type, the fields of the update, and the
+     * CRC32 checksum of the type and fields.
+     */
+    private static final byte RECORD_LEARNING_WEIGHT = 1;
+    private static final byte RECORD_SPEED_FACTOR = 2;
+
+    /**
+     * The accessor that updates are written to
+     */
+    @NonNull
+    private final SQLAccessor mAccessor;
+    /**
+     * The journal file
+     */
+    @NonNull
+    private final File mJournal;
+    /**
+     * The time between the first buffered update and writing it, in milliseconds
+     */
+    private final long mFlushDelayMillis;
+    /**
+     * Runs flushes in the background
+     */
+    @NonNull
+    private final ScheduledExecutorService mExecutor;
+    /**
+     * Held while writing to the database, so that only one flush runs at a time
+     */
+    private final Object mFlushLock = new Object();
+
+    /**
+     * The updates that have not been written to the database, keyed by recipe ID and then
+     * step index. Guarded by this.
+     */
+    @NonNull
+    private Map<Long, Map<Integer, LearningWeight>> mPending = new HashMap<>();
+    /**
+     * The speed factors that have not been written to the database, keyed by token.
+     * Guarded by this.
+     */
+    @NonNull
+    private Map<String, SpeedFactor> mPendingSpeeds = new HashMap<>();
+    /**
+     * The stream that appends to the journal, or null if it is not open. Guarded by this.
+     */
+    private FileOutputStream mJournalStream;
+    /**
+     * True if a flush has been scheduled and has not started. Guarded by this.
+     */
+    private boolean mFlushScheduled;
+
+    /**
+     * Creates a writer and schedules writing any updates left in the journal by an earlier
+     * process
+     *
+     * @param accessor the accessor to write updates to
+     * @param journal the journal file, which does not need to exist
+     */
+    public LearnerDataWriter(@NonNull SQLAccessor accessor, @NonNull File journal) {
+        this(accessor, journal, DEFAULT_FLUSH_DELAY_MILLIS);
+    }
+
+    /**
+     * Creates a writer and schedules writing any updates left in the journal by an earlier
+     * process
+     *
+     * @param accessor the accessor to write updates to
+     * @param journal the journal file, which does not need to exist
+     * @param flushDelayMillis the time between the first buffered update and writing it,
+     *                         in milliseconds
+     * @throws IllegalArgumentException if flushDelayMillis is negative
+     */
+    public LearnerDataWriter(@NonNull SQLAccessor accessor, @NonNull File journal,
+                             long flushDelayMillis) {
+        Objects.requireNonNull(accessor, "accessor must not be null");
+        Objects.requireNonNull(journal, "journal must not be null");
+        if (flushDelayMillis < 0) {
+            throw new IllegalArgumentException("flushDelayMillis must not be negative");
+        }
+        mAccessor = accessor;
+        mJournal = journal;
+        mFlushDelayMillis = flushDelayMillis;
+        mExecutor = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(@NonNull Runnable runnable) {
+                final Thread thread = new Thread(runnable, TAG);
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        synchronized (this) {
+            replayJournal();
+            if (hasPending()) {
+                scheduleFlush(0);
+            }
+        }
+    }
+
+    /**
+     * Buffers an update to the learner data of a step. The update replaces any earlier update to
+     * the same step. The learning weight is copied, so it may be changed after this method
+     * returns.
+     *
+     * @param recipeId the object ID of the recipe that contains the step
+     * @param weight the new learning weight of the step
+     * @throws SQLException if the update could not be written to the journal
+     */
+    public synchronized void update(long recipeId, @NonNull LearningWeight weight)
+            throws SQLException {
+        Objects.requireNonNull(weight, "weight must not be null");
+        try {
+            appendToJournal(recipeId, weight);
+        } catch (IOException e) {
+            throw new SQLException(e);
+        }
+        put(recipeId, weight);
+        if (!mFlushScheduled) {
+            scheduleFlush(mFlushDelayMillis);
+        }
+    }
+
+    /**
+     * Buffers an update to a speed factor. The update replaces any earlier update to the factor
+     * with the same token.
+     *
+     * @param factor the new speed factor
+     * @throws SQLException if the update could not be written to the journal
+     */
+    public synchronized void update(@NonNull SpeedFactor factor) throws SQLException {
+        Objects.requireNonNull(factor, "factor must not be null");
+        try {
+            appendToJournal(factor);
+        } catch (IOException e) {
+            throw new SQLException(e);
+        }
+        mPendingSpeeds.put(factor.getToken(), factor);
+        if (!mFlushScheduled) {
+            scheduleFlush(mFlushDelayMillis);
+        }
+    }
+
+    /**
+     * Drops the buffered updates to the learner data of a recipe and removes them from the
+     * journal. This must be called before the recipe is deleted, so that its updates are not
+     * written back to the database after it has been deleted.
+     *
+     * @param recipeId the object ID of the recipe
+     * @throws SQLException if the journal could not be rewritten
+     */
+    public void discard(long recipeId) throws SQLException {
+        // Wait for any flush that is writing, so that it does not write the recipe afterwards
+        synchronized (mFlushLock) {
+            synchronized (this) {
+                mPending.remove(recipeId);
+                // The journal may also hold records of the recipe that have already been
+                // written, which would be written again when it is replayed
+                if (mJournal.exists()) {
+                    try {
+                        rewriteJournal();
+                    } catch (IOException e) {
+                        throw new SQLException(e);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Schedules writing the buffered updates on the background thread as soon as possible
+     */
+    public synchronized void requestFlush() {
+        if (hasPending()) {
+            scheduleFlush(0);
+        }
+    }
+
+    /**
+     * Writes the buffered updates to the database in one transaction, on the calling thread.
+     * When this method returns, every update buffered before it was called has been written.
+     *
+     * @throws SQLException if the updates could not be written. The updates stay buffered.
+     */
+    public void flush() throws SQLException {
+        synchronized (mFlushLock) {
+            final Map<Long, Map<Integer, LearningWeight>> batch;
+            final Map<String, SpeedFactor> speedBatch;
+            synchronized (this) {
+                if (!hasPending()) {
+                    return;
+                }
+                batch = mPending;
+                speedBatch = mPendingSpeeds;
+                mPending = new HashMap<>();
+                mPendingSpeeds = new HashMap<>();
+            }
+            final Map<Long, List<LearningWeight>> rows = new HashMap<>(batch.size());
+            for (Map.Entry<Long, Map<Integer, LearningWeight>> entry : batch.entrySet()) {
+                rows.put(entry.getKey(), new ArrayList<>(entry.getValue().values()));
+            }
+            try {
+                if (!rows.isEmpty()) {
+                    mAccessor.updateLearnerData(rows);
+                }
+                if (!speedBatch.isEmpty()) {
+                    mAccessor.updateSpeedFactors(speedBatch.values());
+                }
+            } catch (SQLException | RuntimeException e) {
+                synchronized (this) {
+                    // Keep the updates, unless newer ones have replaced them
+                    final Map<Long, Map<Integer, LearningWeight>> newer = mPending;
+                    mPending = batch;
+                    for (Map.Entry<Long, Map<Integer, LearningWeight>> entry : newer.entrySet()) {
+                        for (LearningWeight weight : entry.getValue().values()) {
+                            put(entry.getKey(), weight);
+                        }
+                    }
+                    speedBatch.putAll(mPendingSpeeds);
+                    mPendingSpeeds = speedBatch;
+                }
+                throw e;
+            }
+            synchronized (this) {
+                // If updates arrived during the write, the journal has records that are still
+                // needed. Records that have been written are harmless to replay, so the journal
+                // is kept until a flush finishes with nothing new buffered.
+                if (!hasPending()) {
+                    deleteJournal();
+                }
+            }
+        }
+    }
+
+    /**
+     * @return the number of steps and speed factors with buffered updates
+     */
+    public synchronized int getPendingCount() {
+        int count = mPendingSpeeds.size();
+        for (Map<Integer, LearningWeight> weights : mPending.values()) {
+            count += weights.size();
+        }
+        return count;
+    }
+
+    /**
+     * Writes the buffered updates and stops the background thread. If the updates cannot be
+     * written, they stay in the journal.
+     */
+    @Override
+    public void close() throws IOException {
+        mExecutor.shutdown();
+        try {
+            flush();
+        } catch (SQLException e) {
+            Log.w(TAG, "Failed to write learner data; it will be written next time", e);
+        }
+        synchronized (this) {
+            if (mJournalStream != null) {
+                mJournalStream.close();
+                mJournalStream = null;
+            }
+        }
+    }
+
+    /**
+     * @return true if any updates are buffered. Must be called while holding this.
+     */
+    private boolean hasPending() {
+        return !mPending.isEmpty() || !mPendingSpeeds.isEmpty();
+    }
+
+    /**
+     * Schedules a flush on the background thread. Must be called while holding this.
+     */
+    private void scheduleFlush(long delayMillis) {
+        if (mExecutor.isShutdown()) {
+            return;
+        }
+        mFlushScheduled = true;
+        mExecutor.schedule(new Runnable() {
+            @Override
+            public void run() {
+                synchronized (LearnerDataWriter.this) {
+                    mFlushScheduled = false;
+                }
+                try {
+                    flush();
+                } catch (SQLException | RuntimeException e) {
+                    Log.w(TAG, "Failed to write learner data, retrying later", e);
+                    synchronized (LearnerDataWriter.this) {
+                        if (!mFlushScheduled) {
+                            scheduleFlush(mFlushDelayMillis);
+                        }
+                    }
+                }
+            }
+        }, delayMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Buffers a copy of a learning weight. Must be called while holding this.
+     */
+    private void put(long recipeId, @NonNull LearningWeight weight) {
+        Map<Integer, LearningWeight> weights = mPending.get(recipeId);
+        if (weights == null) {
+            weights = new LinkedHashMap<>();
+            mPending.put(recipeId, weights);
+        }
+        weights.put(weight.getIndex(), new LearningWeight(weight.getIndex(),
+                weight.getTimeWeight(), weight.getLearnRate(), weight.getVariance(),
+                weight.getSampleCount()));
+    }
+
+    /**
+     * Appends a learning weight record to the journal. Must be called while holding this.
+     */
+    private void appendToJournal(long recipeId, @NonNull LearningWeight weight)
+            throws IOException {
+        appendToJournal(createRecord(recipeId, weight));
+    }
+
+    /**
+     * Appends a speed factor record to the journal. Must be called while holding this.
+     */
+    private void appendToJournal(@NonNull SpeedFactor factor) throws IOException {
+        appendToJournal(createRecord(factor));
+    }
+
+    /**
+     * Writes a record to the journal in one write. Must be called while holding this.
+     */
+    private void appendToJournal(@NonNull byte[] record) throws IOException {
+        if (mJournalStream == null) {
+            mJournalStream = new FileOutputStream(mJournal, true);
+        }
+        // The record reaches the operating system before the update is buffered, so it is not
+        // lost if the process dies
+        mJournalStream.write(record);
+    }
+
+    /**
+     * Replaces the journal with one that contains only the buffered updates. Must be called
+     * while holding this.
+     */
+    private void rewriteJournal() throws IOException {
+        if (!hasPending()) {
+            deleteJournal();
+            return;
+        }
+        if (mJournalStream != null) {
+            mJournalStream.close();
+            mJournalStream = null;
+        }
+        // Write a new file and rename it, so that the old journal is kept if this fails
+        final File temporary = new File(mJournal.getPath() + ".tmp");
+        final FileOutputStream stream = new FileOutputStream(temporary);
+        try {
+            for (Map.Entry<Long, Map<Integer, LearningWeight>> entry : mPending.entrySet()) {
+                for (LearningWeight weight : entry.getValue().values()) {
+                    stream.write(createRecord(entry.getKey(), weight));
+                }
+            }
+            for (SpeedFactor factor : mPendingSpeeds.values()) {
+                stream.write(createRecord(factor));
+            }
+        } finally {
+            stream.close();
+        }
+        if (!temporary.renameTo(mJournal)) {
+            throw new IOException("Failed to replace learner data journal " + mJournal.getPath());
+        }
+    }
+
+    /**
+     * Creates a learning weight record
+     */
+    @NonNull
+    private static byte[] createRecord(long recipeId, @NonNull LearningWeight weight)
+            throws IOException {
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        final DataOutputStream record = new DataOutputStream(bytes);
+        record.writeByte(RECORD_LEARNING_WEIGHT);
+        record.writeLong(recipeId);
+        record.writeInt(weight.getIndex());
+        record.writeDouble(weight.getTimeWeight());
+        record.writeDouble(weight.getLearnRate());
+        record.writeDouble(weight.getVariance());
+        record.writeInt(weight.getSampleCount());
+        return appendChecksum(bytes);
+    }
+
+    /**
+     * Creates a speed factor record
+     */
+    @NonNull
+    private static byte[] createRecord(@NonNull SpeedFactor factor) throws IOException {
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        final DataOutputStream record = new DataOutputStream(bytes);
+        record.writeByte(RECORD_SPEED_FACTOR);
+        record.writeUTF(factor.getToken());
+        record.writeDouble(factor.getFactor());
+        record.writeInt(factor.getSampleCount());
+        return appendChecksum(bytes);
+    }
+
+    /**
+     * Appends the checksum of a record to it
+     * @return the complete record
+     */
+    @NonNull
+    private static byte[] appendChecksum(@NonNull ByteArrayOutputStream bytes)
+            throws IOException {
+        final CRC32 crc = new CRC32();
+        crc.update(bytes.toByteArray());
+        new DataOutputStream(bytes).writeInt((int) crc.getValue());
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Buffers the updates in the journal, stopping at the first incomplete, damaged, or unknown
+     * record. The journal is then truncated after the last usable record, so that records
+     * appended later can be read. Must be called while holding this.
+     */
+    private void replayJournal() {
+        if (!mJournal.exists()) {
+            return;
+        }
+        final long usableLength;
+        try {
+            final CountingInputStream counted = new CountingInputStream(
+                    new BufferedInputStream(new FileInputStream(mJournal)));
+            try {
+                final CheckedInputStream checked = new CheckedInputStream(counted, new CRC32());
+                final DataInputStream input = new DataInputStream(checked);
+                long length = 0;
+                while (replayRecord(checked, input)) {
+                    checked.getChecksum().reset();
+                    length = counted.getCount();
+                }
+                usableLength = length;
+            } finally {
+                counted.close();
+            }
+        } catch (IOException e) {
+            Log.e(TAG, "Failed to read learner data journal", e);
+            return;
+        }
+        if (usableLength < mJournal.length()) {
+            try {
+                final RandomAccessFile file = new RandomAccessFile(mJournal, "rw");
+                try {
+                    file.setLength(usableLength);
+                } finally {
+                    file.close();
+                }
+            } catch (IOException e) {
+                Log.e(TAG, "Failed to truncate learner data journal", e);
+            }
+        }
+    }
+
+    /**
+     * Reads one record from the journal and buffers its update
+     * @return true if a record was buffered, false if the end of the usable journal was reached
+     */
+    private boolean replayRecord(@NonNull CheckedInputStream checked,
+                                 @NonNull DataInputStream input) throws IOException {
+        try {
+            final int type = input.read();
+            if (type == -1) {
+                return false;
+            }
+            if (type == RECORD_LEARNING_WEIGHT) {
+                final long recipeId = input.readLong();
+                final int index = input.readInt();
+                final double timeWeight = input.readDouble();
+                final double learnRate = input.readDouble();
+                final double variance = input.readDouble();
+                final int sampleCount = input.readInt();
+                if (!checksumMatches(checked, input)) {
+                    return false;
+                }
+                put(recipeId, new LearningWeight(index, timeWeight, learnRate, variance,
+                        sampleCount));
+            } else if (type == RECORD_SPEED_FACTOR) {
+                final String token = input.readUTF();
+                final double factor = input.readDouble();
+                final int sampleCount = input.readInt();
+                if (!checksumMatches(checked, input)) {
+                    return false;
+                }
+                mPendingSpeeds.put(token, new SpeedFactor(token, factor, sampleCount));
+            } else {
+                Log.w(TAG, "Unknown learner data journal record, ignoring the rest");
+                return false;
+            }
+            return true;
+        } catch (EOFException e) {
+            // The process died while writing the last record
+            return false;
+        }
+    }
+
+    /**
+     * Reads the checksum at the end of a record and compares it to the checksum of the bytes
+     * read since the start of the record
+     */
+    private static boolean checksumMatches(@NonNull CheckedInputStream checked,
+                                           @NonNull DataInputStream input) throws IOException {
+        final int expected = (int) checked.getChecksum().getValue();
+        if (input.readInt() != expected) {
+            Log.w(TAG, "Damaged learner data journal record, ignoring the rest");
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Closes and deletes the journal. Must be called while holding this.
+     */
+    private void deleteJournal() {
+        try {
+            if (mJournalStream != null) {
+                mJournalStream.close();
+            }
+        } catch (IOException e) {
+            Log.w(TAG, "Failed to close learner data journal", e);
+        }
+        mJournalStream = null;
+        if (mJournal.exists() && !mJournal.delete()) {
+            Log.w(TAG, "Failed to delete learner data journal " + mJournal.getPath());
+        }
+    }
+
+    /**
+     * An input stream that counts the bytes read from it
+     */
+    private static final class CountingInputStream extends FilterInputStream {
+        private long mCount;
+
+        CountingInputStream(@NonNull InputStream in) {
+            super(in);
+        }
+
+        /**
+         * @return the number of bytes read or skipped
+         */
+        long getCount() {
+            return mCount;
+        }
+
+        @Override
+        public int read() throws IOException {
+            final int result = super.read();
+            if (result != -1) {
+                mCount++;
+            }
+            return result;
+        }
+
+        @Override
+        public int read(@NonNull byte[] buffer, int offset, int length) throws IOException {
+            final int result = super.read(buffer, offset, length);
+            if (result != -1) {
+                mCount += result;
+            }
+            return result;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            final long result = super.skip(n);
+            mCount += result;
+            return result;
+        }
+
+        @Override
+        public boolean markSupported() {
+            return false;
+        }
+    }
+}
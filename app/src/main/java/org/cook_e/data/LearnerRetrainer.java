@@ -0,0 +1,338 @@
+/*
+ * Copyright 2016 the Cook-E development team
+ *
+ * This file is part of Cook-E.
+ *
+ * Cook-E is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Cook-E is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Cook-E.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.cook_e.data;
+
+import android.support.annotation.NonNull;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+/**
+ * Rebuilds learner data from a {@link CookingLog}, so that what was learned can be recalculated
+ * after the learning model changes
+ *
+ * The log is replayed with the same model that {@link TimeLearner} uses while cooking, so
+ * retraining with an unchanged model gives the same learner data. Steps are learned from the
+ * time between their start and finish events. Steps are found by their
+ * {@link StepMatcher#getIdentity(Step) identity}, so the events of a step that has moved to
+ * another position in its recipe are learned for the step at its new position, as its learner
+ * data is when the recipe is edited. Events of steps whose description, written time, or
+ * simultaneity have changed since they were logged, or that have been deleted, are skipped.
+ *
+ * The cook speed is shared by all recipes, so it is replayed first, in log order. The weights of
+ * each recipe only depend on the samples of that recipe and the cook speed at the time of each
+ * sample, so they are then replayed for all recipes in parallel.
+ */
+public final class LearnerRetrainer {
+
+    /**
+     * Runs the replay of each recipe
+     */
+    @NonNull
+    private final ExecutorService mExecutor;
+
+    /**
+     * Creates a retrainer that uses the shared background thread pool
+     */
+    public LearnerRetrainer() {
+        this(BackgroundExecutor.get());
+    }
+
+    /**
+     * Creates a retrainer
+     * @param executor the executor that runs the replay of each recipe
+     */
+    public LearnerRetrainer(@NonNull ExecutorService executor) {
+        Objects.requireNonNull(executor, "executor must not be null");
+        mExecutor = executor;
+    }
+
+    /**
+     * Rebuilds learner data. This may take a while, so it should not be called on the
+     * main thread.
+     *
+     * @param events the events of a log, in the order they were logged
+     * @param recipes the current recipes, keyed by recipe ID
+     * @return the rebuilt learner data
+     * @throws InterruptedException if the thread is interrupted while waiting for the replay
+     */
+    @NonNull
+    public Result retrain(@NonNull List<CookingLog.Event> events,
+                          @NonNull Map<Long, Recipe> recipes) throws InterruptedException {
+        final List<Sample> samples = findSamples(events, recipes);
+
+        // Replay the cook speed in order, remembering the factor that each sample saw
+        final CookSpeed speed = new CookSpeed();
+        final Map<Long, List<Sample>> samplesByRecipe = new LinkedHashMap<>();
+        for (Sample sample : samples) {
+            sample.mSpeedFactor = speed.getFactor(sample.mStep);
+            TimeLearner.learnSpeed(speed, sample.mStep, sample.mActualMillis);
+            List<Sample> recipeSamples = samplesByRecipe.get(sample.mRecipeId);
+            if (recipeSamples == null) {
+                recipeSamples = new ArrayList<>();
+                samplesByRecipe.put(sample.mRecipeId, recipeSamples);
+            }
+            recipeSamples.add(sample);
+        }
+
+        final List<Callable<List<LearningWeight>>> tasks = new ArrayList<>(samplesByRecipe.size());
+        for (final Map.Entry<Long, List<Sample>> entry : samplesByRecipe.entrySet()) {
+            tasks.add(new Callable<List<LearningWeight>>() {
+                @Override
+                public List<LearningWeight> call() {
+                    return replay(entry.getKey(), entry.getValue());
+                }
+            });
+        }
+        final Map<Long, List<LearningWeight>> weights = new HashMap<>(tasks.size());
+        final List<Future<List<LearningWeight>>> results = mExecutor.invokeAll(tasks);
+        int i = 0;
+        for (Long recipeId : samplesByRecipe.keySet()) {
+            try {
+                weights.put(recipeId, results.get(i++).get());
+            } catch (ExecutionException e) {
+                final Throwable cause = e.getCause();
+                if (cause instanceof RuntimeException) {
+                    throw (RuntimeException) cause;
+                } else if (cause instanceof Error) {
+                    throw (Error) cause;
+                }
+                throw new IllegalStateException(cause);
+            }
+        }
+        return new Result(weights, speed.getFactors(), samples.size());
+    }
+
+    /**
+     * Pairs the start and finish events of steps that still exist
+     */
+    @NonNull
+    private static List<Sample> findSamples(@NonNull List<CookingLog.Event> events,
+                                            @NonNull Map<Long, Recipe> recipes) {
+        final List<Sample> samples = new ArrayList<>();
+        // The start event of each step in the current session, keyed by step
+        final Map<StepKey, CookingLog.Event> starts = new HashMap<>();
+        // The steps of each recipe that has had events, keyed by identity
+        final Map<Long, Map<Long, List<Step>>> stepsByRecipe = new HashMap<>();
+        for (CookingLog.Event event : events) {
+            switch (event.getType()) {
+                case CookingLog.SESSION_START:
+                    starts.clear();
+                    break;
+                case CookingLog.STEP_START:
+                    starts.put(new StepKey(event.getRecipeId(), event.getStepIndex()), event);
+                    break;
+                case CookingLog.STEP_FINISH:
+                    final CookingLog.Event start = starts.remove(
+                            new StepKey(event.getRecipeId(), event.getStepIndex()));
+                    if (start == null || start.getStepIdentity() != event.getStepIdentity()) {
+                        break;
+                    }
+                    final Step step = findStep(
+                            getStepsByIdentity(stepsByRecipe, recipes, event.getRecipeId()),
+                            event);
+                    final long actualMillis = event.getTimeMillis() - start.getTimeMillis();
+                    // Simultaneous steps are timed, so they are not learned while cooking
+                    if (step != null && !step.isSimultaneous() && actualMillis >= 0) {
+                        samples.add(new Sample(event.getRecipeId(), step, actualMillis));
+                    }
+                    break;
+                default:
+                    // Timer events are kept for models that use them
+                    break;
+            }
+        }
+        return samples;
+    }
+
+    /**
+     * Returns the steps of a recipe keyed by identity, indexing them the first time
+     * @param stepsByRecipe the steps that have already been indexed, keyed by recipe ID
+     * @param recipes the current recipes, keyed by recipe ID
+     * @param recipeId the ID of the recipe
+     * @return the steps, which is empty if the recipe does not exist
+     */
+    @NonNull
+    private static Map<Long, List<Step>> getStepsByIdentity(
+            @NonNull Map<Long, Map<Long, List<Step>>> stepsByRecipe,
+            @NonNull Map<Long, Recipe> recipes, long recipeId) {
+        Map<Long, List<Step>> steps = stepsByRecipe.get(recipeId);
+        if (steps == null) {
+            steps = new HashMap<>();
+            final Recipe recipe = recipes.get(recipeId);
+            if (recipe != null) {
+                for (Step step : recipe.getSteps()) {
+                    final long identity = StepMatcher.getIdentity(step);
+                    List<Step> matching = steps.get(identity);
+                    if (matching == null) {
+                        matching = new ArrayList<>(1);
+                        steps.put(identity, matching);
+                    }
+                    matching.add(step);
+                }
+            }
+            stepsByRecipe.put(recipeId, steps);
+        }
+        return steps;
+    }
+
+    /**
+     * Finds the step of an event in the current version of a recipe. If several steps have the
+     * identity of the event, the one closest to the position where the step was logged is used.
+     * @param stepsByIdentity the steps of the recipe, keyed by identity
+     * @return the step, or null if no step has the identity of the event
+     */
+    private static Step findStep(@NonNull Map<Long, List<Step>> stepsByIdentity,
+                                 @NonNull CookingLog.Event event) {
+        final List<Step> matching = stepsByIdentity.get(event.getStepIdentity());
+        if (matching == null) {
+            return null;
+        }
+        Step closest = null;
+        int closestDistance = Integer.MAX_VALUE;
+        for (Step step : matching) {
+            final int distance = Math.abs(step.getIndex() - event.getStepIndex());
+            if (distance < closestDistance) {
+                closest = step;
+                closestDistance = distance;
+            }
+        }
+        return closest;
+    }
+
+    /**
+     * Replays the samples of one recipe
+     * @return the learning weights of the learned steps, in order of first sample
+     */
+    @NonNull
+    private static List<LearningWeight> replay(long recipeId, @NonNull List<Sample> samples) {
+        final LearnerWeights weights = new LearnerWeights();
+        final Set<Integer> indices = new LinkedHashSet<>();
+        for (Sample sample : samples) {
+            final int index = sample.mStep.getIndex();
+            final double timeWeight = weights.isLearned(recipeId, index)
+                    ? weights.getTimeWeight(recipeId, index) : sample.mSpeedFactor;
+            TimeLearner.update(weights, recipeId, sample.mStep, timeWeight, sample.mActualMillis);
+            indices.add(index);
+        }
+        final List<LearningWeight> result = new ArrayList<>(indices.size());
+        for (int index : indices) {
+            result.add(weights.getLearningWeight(recipeId, index));
+        }
+        return result;
+    }
+
+    /**
+     * Rebuilt learner data
+     */
+    public static final class Result {
+        @NonNull
+        private final Map<Long, List<LearningWeight>> mWeights;
+        @NonNull
+        private final List<SpeedFactor> mSpeedFactors;
+        private final int mSampleCount;
+
+        Result(@NonNull Map<Long, List<LearningWeight>> weights,
+               @NonNull List<SpeedFactor> speedFactors, int sampleCount) {
+            mWeights = Collections.unmodifiableMap(weights);
+            mSpeedFactors = Collections.unmodifiableList(speedFactors);
+            mSampleCount = sampleCount;
+        }
+
+        /**
+         * @return the learning weights of each recipe that has any, keyed by recipe ID
+         */
+        @NonNull
+        public Map<Long, List<LearningWeight>> getWeights() {
+            return mWeights;
+        }
+
+        /**
+         * @return the speed factors
+         */
+        @NonNull
+        public List<SpeedFactor> getSpeedFactors() {
+            return mSpeedFactors;
+        }
+
+        /**
+         * @return the number of step times that were learned
+         */
+        public int getSampleCount() {
+            return mSampleCount;
+        }
+    }
+
+    /**
+     * A learned step time
+     */
+    private static final class Sample {
+        final long mRecipeId;
+        @NonNull
+        final Step mStep;
+        final long mActualMillis;
+        /**
+         * The cook speed factor of the step when it was learned
+         */
+        double mSpeedFactor;
+
+        Sample(long recipeId, @NonNull Step step, long actualMillis) {
+            mRecipeId = recipeId;
+            mStep = step;
+            mActualMillis = actualMillis;
+        }
+    }
+
+    /**
+     * Identifies a step by recipe ID and index
+     */
+    private static final class StepKey {
+        private final long mRecipeId;
+        private final int mIndex;
+
+        StepKey(long recipeId, int index) {
+            mRecipeId = recipeId;
+            mIndex = index;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (o == null || getClass() != o.getClass()) return false;
+            final StepKey key = (StepKey) o;
+            return mRecipeId == key.mRecipeId && mIndex == key.mIndex;
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * (int) (mRecipeId ^ (mRecipeId >>> 32)) + mIndex;
+        }
+    }
+}
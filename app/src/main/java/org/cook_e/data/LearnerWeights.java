@@ -0,0 +1,302 @@
+/*
+ * Copyright 2016 the Cook-E development team
+ *
+ * This file is part of Cook-E.
+ *
+ * Cook-E is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Cook-E is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Cook-E.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.cook_e.data;
+
+import android.support.annotation.NonNull;
+import android.support.v4.util.LongSparseArray;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * The learned time weight, learn rate, variance, and sample count of each step of some recipes,
+ * stored without per-step objects.
+ *
+ * The steps of each recipe occupy a block of consecutive elements in flat arrays. An
+ * open-addressing hash table with linear probing maps each recipe ID to the offset of its block.
+ * Reading a value does not allocate. Steps that have not been learned have a time weight and
+ * learn rate of 1 and no samples.
+ */
+final class LearnerWeights {
+    /**
+     * The time weight and learn rate of a step that has not been learned
+     */
+    static final double DEFAULT_TIME_WEIGHT = 1;
+    static final double DEFAULT_LEARN_RATE = 1;
+
+    /**
+     * The initial number of slots in the hash table. Must be a power of two.
+     */
+    private static final int INITIAL_CAPACITY = 16;
+
+    /**
+     * The recipe ID in each slot of the hash table
+     */
+    @NonNull
+    private long[] mKeys;
+    /**
+     * For each slot of the hash table, one more than the offset of the block of the recipe,
+     * or 0 if the slot is empty
+     */
+    @NonNull
+    private int[] mOffsets;
+    /**
+     * For each slot of the hash table, the number of steps in the block of the recipe
+     */
+    @NonNull
+    private int[] mLengths;
+    /**
+     * The number of recipes in the hash table
+     */
+    private int mRecipeCount;
+
+    /**
+     * The time weight of each step
+     */
+    @NonNull
+    private double[] mTimeWeights;
+    /**
+     * The learn rate of each step
+     */
+    @NonNull
+    private double[] mLearnRates;
+    /**
+     * The variance of the time weight of each step
+     */
+    @NonNull
+    private double[] mVariances;
+    /**
+     * The number of times each step has been learned
+     */
+    @NonNull
+    private int[] mSampleCounts;
+    /**
+     * The number of elements of the step arrays that are in use
+     */
+    private int mUsed;
+
+    /**
+     * Creates an empty store
+     */
+    LearnerWeights() {
+        mKeys = new long[INITIAL_CAPACITY];
+        mOffsets = new int[INITIAL_CAPACITY];
+        mLengths = new int[INITIAL_CAPACITY];
+        mTimeWeights = new double[INITIAL_CAPACITY];
+        mLearnRates = new double[INITIAL_CAPACITY];
+        mVariances = new double[INITIAL_CAPACITY];
+        mSampleCounts = new int[INITIAL_CAPACITY];
+    }
+
+    /**
+     * Creates a store containing loaded learner data
+     * @param weights the learning weights of each recipe, keyed by recipe ID
+     */
+    LearnerWeights(@NonNull LongSparseArray<List<LearningWeight>> weights) {
+        this();
+        for (int i = 0; i < weights.size(); i++) {
+            final long recipeId = weights.keyAt(i);
+            for (LearningWeight weight : weights.valueAt(i)) {
+                set(recipeId, weight.getIndex(), weight.getTimeWeight(), weight.getLearnRate(),
+                        weight.getVariance(), weight.getSampleCount());
+            }
+        }
+    }
+
+    /**
+     * @param recipeId the ID of the recipe that contains the step
+     * @param index the index of the step in the recipe
+     * @return the time weight of the step
+     */
+    double getTimeWeight(long recipeId, int index) {
+        final int element = findElement(recipeId, index);
+        return element == -1 ? DEFAULT_TIME_WEIGHT : mTimeWeights[element];
+    }
+
+    /**
+     * @param recipeId the ID of the recipe that contains the step
+     * @param index the index of the step in the recipe
+     * @return the learn rate of the step
+     */
+    double getLearnRate(long recipeId, int index) {
+        final int element = findElement(recipeId, index);
+        return element == -1 ? DEFAULT_LEARN_RATE : mLearnRates[element];
+    }
+
+    /**
+     * @param recipeId the ID of the recipe that contains the step
+     * @param index the index of the step in the recipe
+     * @return the variance of the time weight of the step
+     */
+    double getVariance(long recipeId, int index) {
+        final int element = findElement(recipeId, index);
+        return element == -1 ? 0 : mVariances[element];
+    }
+
+    /**
+     * @param recipeId the ID of the recipe that contains the step
+     * @param index the index of the step in the recipe
+     * @return the number of times the step has been learned
+     */
+    int getSampleCount(long recipeId, int index) {
+        final int element = findElement(recipeId, index);
+        return element == -1 ? 0 : mSampleCounts[element];
+    }
+
+    /**
+     * @param recipeId the ID of the recipe that contains the step
+     * @param index the index of the step in the recipe
+     * @return true if the step has been learned. Learner data stored before sample counts were
+     * recorded has no samples, but a learn rate that has decayed.
+     */
+    boolean isLearned(long recipeId, int index) {
+        final int element = findElement(recipeId, index);
+        return element != -1 && (mSampleCounts[element] != 0
+                || mLearnRates[element] != DEFAULT_LEARN_RATE);
+    }
+
+    /**
+     * Creates a learning weight with the learned values of a step
+     * @param recipeId the ID of the recipe that contains the step
+     * @param index the index of the step in the recipe
+     * @return a new learning weight
+     */
+    @NonNull
+    LearningWeight getLearningWeight(long recipeId, int index) {
+        return new LearningWeight(index, getTimeWeight(recipeId, index),
+                getLearnRate(recipeId, index), getVariance(recipeId, index),
+                getSampleCount(recipeId, index));
+    }
+
+    /**
+     * Sets the learned values of a step
+     * @param recipeId the ID of the recipe that contains the step
+     * @param index the index of the step in the recipe
+     * @param timeWeight the time weight
+     * @param learnRate the learn rate
+     * @param variance the variance of the time weight
+     * @param sampleCount the number of times the step has been learned
+     * @throws IndexOutOfBoundsException if index is negative
+     */
+    void set(long recipeId, int index, double timeWeight, double learnRate, double variance,
+             int sampleCount) {
+        if (index < 0) {
+            throw new IndexOutOfBoundsException("Step index " + index + " out of range");
+        }
+        int slot = findSlot(recipeId);
+        if (mOffsets[slot] == 0) {
+            if (2 * (mRecipeCount + 1) > mKeys.length) {
+                rehash(2 * mKeys.length);
+                slot = findSlot(recipeId);
+            }
+            mKeys[slot] = recipeId;
+            mOffsets[slot] = allocate(index + 1) + 1;
+            mLengths[slot] = index + 1;
+            mRecipeCount++;
+        } else if (index >= mLengths[slot]) {
+            // Move the recipe to a bigger block at the end. The old block is not reused.
+            final int oldOffset = mOffsets[slot] - 1;
+            final int newOffset = allocate(index + 1);
+            System.arraycopy(mTimeWeights, oldOffset, mTimeWeights, newOffset, mLengths[slot]);
+            System.arraycopy(mLearnRates, oldOffset, mLearnRates, newOffset, mLengths[slot]);
+            System.arraycopy(mVariances, oldOffset, mVariances, newOffset, mLengths[slot]);
+            System.arraycopy(mSampleCounts, oldOffset, mSampleCounts, newOffset, mLengths[slot]);
+            mOffsets[slot] = newOffset + 1;
+            mLengths[slot] = index + 1;
+        }
+        final int element = mOffsets[slot] - 1 + index;
+        mTimeWeights[element] = timeWeight;
+        mLearnRates[element] = learnRate;
+        mVariances[element] = variance;
+        mSampleCounts[element] = sampleCount;
+    }
+
+    /**
+     * @return the index in the step arrays of a step, or -1 if the step has no
+     * learned values
+     */
+    private int findElement(long recipeId, int index) {
+        final int slot = findSlot(recipeId);
+        if (mOffsets[slot] == 0 || index < 0 || index >= mLengths[slot]) {
+            return -1;
+        }
+        return mOffsets[slot] - 1 + index;
+    }
+
+    /**
+     * @return the slot that contains a recipe, or the empty slot where it would be inserted
+     */
+    private int findSlot(long recipeId) {
+        final int mask = mKeys.length - 1;
+        int slot = hash(recipeId) & mask;
+        while (mOffsets[slot] != 0 && mKeys[slot] != recipeId) {
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+
+    /**
+     * Reserves a block of elements in the step arrays, filled with default values
+     * @return the offset of the block
+     */
+    private int allocate(int length) {
+        final int offset = mUsed;
+        if (offset + length > mTimeWeights.length) {
+            final int capacity = Math.max(offset + length, 2 * mTimeWeights.length);
+            mTimeWeights = Arrays.copyOf(mTimeWeights, capacity);
+            mLearnRates = Arrays.copyOf(mLearnRates, capacity);
+            mVariances = Arrays.copyOf(mVariances, capacity);
+            mSampleCounts = Arrays.copyOf(mSampleCounts, capacity);
+        }
+        Arrays.fill(mTimeWeights, offset, offset + length, DEFAULT_TIME_WEIGHT);
+        Arrays.fill(mLearnRates, offset, offset + length, DEFAULT_LEARN_RATE);
+        Arrays.fill(mVariances, offset, offset + length, 0);
+        Arrays.fill(mSampleCounts, offset, offset + length, 0);
+        mUsed += length;
+        return offset;
+    }
+
+    private void rehash(int capacity) {
+        final long[] oldKeys = mKeys;
+        final int[] oldOffsets = mOffsets;
+        final int[] oldLengths = mLengths;
+        mKeys = new long[capacity];
+        mOffsets = new int[capacity];
+        mLengths = new int[capacity];
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldOffsets[i] != 0) {
+                final int slot = findSlot(oldKeys[i]);
+                mKeys[slot] = oldKeys[i];
+                mOffsets[slot] = oldOffsets[i];
+                mLengths[slot] = oldLengths[i];
+            }
+        }
+    }
+
+    /**
+     * Spreads the bits of a recipe ID, so that consecutive IDs do not cluster
+     */
+    private static int hash(long key) {
+        key ^= key >>> 33;
+        key *= 0xff51afd7ed558ccdL;
+        key ^= key >>> 33;
+        return (int) key;
+    }
+}
@@ -32,6 +32,12 @@ public class LearningWeight  {
     // learning rate of this step
     private double learnRate;
 
+    // exponentially weighted variance of the time weight samples of this step
+    private double variance;
+
+    // number of times this step has been learned
+    private int sampleCount;
+
     // index of this step in the recipe
     private int index;
 
@@ -52,8 +58,24 @@ public class LearningWeight  {
      * @param learn_rate the learn_rate of this step
      */
     public LearningWeight(int index, double weighted_time, double learn_rate) {
+        this(index, weighted_time, learn_rate, 0, 0);
+    }
+
+    /**
+     * Constructor of the Learning Weight.
+     *
+     * @param index the index of this step in the recipe
+     * @param weighted_time the weighted_time of this step
+     * @param learn_rate the learn_rate of this step
+     * @param variance the variance of the time weight of this step
+     * @param sample_count the number of times this step has been learned
+     */
+    public LearningWeight(int index, double weighted_time, double learn_rate, double variance,
+                          int sample_count) {
         timeWeight = weighted_time;
         learnRate = learn_rate;
+        this.variance = variance;
+        sampleCount = sample_count;
         this.index = index;
     }
 
@@ -100,4 +122,34 @@ public class LearningWeight  {
     public void setTimeWeight(double timeWeight) {
         this.timeWeight = timeWeight;
     }
+
+    /**
+     * @return the exponentially weighted variance of the time weight of this step
+     */
+    public double getVariance() {
+        return variance;
+    }
+
+    /**
+     * Set the new variance
+     * @param variance the new variance to be set
+     */
+    public void setVariance(double variance) {
+        this.variance = variance;
+    }
+
+    /**
+     * @return the number of times this step has been learned
+     */
+    public int getSampleCount() {
+        return sampleCount;
+    }
+
+    /**
+     * Set the new sample count
+     * @param sampleCount the new sample count to be set
+     */
+    public void setSampleCount(int sampleCount) {
+        this.sampleCount = sampleCount;
+    }
 }
@@ -0,0 +1,276 @@
+/*
+ * Copyright 2016 the Cook-E development team
+ *
+ * This file is part of Cook-E.
+ *
+ * Cook-E is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Cook-E is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Cook-E.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.cook_e.data;
+
+import android.support.annotation.NonNull;
+
+/**
+ * The state of a resource-constrained list scheduler working through a {@link MealPlan}.
+ *
+ * A step is ready when all of the steps it {@link MealPlan#getStepDependencies(int) depends on}
+ * have finished. Unless a recipe says otherwise, each step depends on the step before it, so
+ * the steps of a recipe are done one at a time in order. Each time a step is requested, the
+ * ready step with the highest {@link MealPlan#getPriority(int) priority} that can get all of its
+ * resources is started. By default, this is the step with the longest simultaneous-to-end time.
+ * Ties go to the step that appears first in the plan. The step holds its resources until it is
+ * finished.
+ *
+ * A ready step that needs a resource that is in full use is parked on that resource, and is
+ * only reconsidered when a step using the resource finishes. This keeps requesting a step
+ * O(log n) in the common case even when many steps are waiting.
+ *
+ * Both {@link Schedule} and {@link CookingTimeEstimator} use this class, so that the
+ * estimates match the order in which a schedule hands out steps.
+ */
+final class ListScheduler {
+    /**
+     * The state of a step whose dependencies have not all finished
+     */
+    private static final byte WAITING = 0;
+    /**
+     * The state of a step that is ready to start, or parked on a resource
+     */
+    private static final byte READY = 1;
+    /**
+     * The state of a step that has started and not finished
+     */
+    private static final byte RUNNING = 2;
+    /**
+     * The state of a step that has finished
+     */
+    private static final byte FINISHED = 3;
+
+    /**
+     * The plan being scheduled
+     */
+    @NonNull
+    private MealPlan mPlan;
+    /**
+     * The state of each step
+     */
+    @NonNull
+    private final byte[] mStates;
+    /**
+     * For each step, the number of its dependencies that have not finished
+     */
+    @NonNull
+    private final int[] mWaitingCounts;
+    /**
+     * The steps that are ready to start, keyed by their priorities
+     */
+    @NonNull
+    private final IndexedPriorityQueue mReadySteps;
+    /**
+     * For each resource, the number of running steps that use it
+     */
+    @NonNull
+    private final int[] mResourceUse;
+    /**
+     * For each resource, the first step parked on it, or -1. Parked steps form
+     * singly linked lists through mNextParked.
+     */
+    @NonNull
+    private final int[] mFirstParked;
+    /**
+     * For each parked step, the next step parked on the same resource, or -1
+     */
+    @NonNull
+    private final int[] mNextParked;
+    /**
+     * The number of steps that have not been started
+     */
+    private int mUnstartedStepCount;
+
+    /**
+     * Creates a scheduler with every step that has no dependencies ready to start
+     * @param plan the plan to schedule
+     */
+    public ListScheduler(@NonNull MealPlan plan) {
+        mPlan = plan;
+        final int stepCount = plan.getStepCount();
+        mStates = new byte[stepCount];
+        mWaitingCounts = new int[stepCount];
+        mNextParked = new int[stepCount];
+        mReadySteps = new IndexedPriorityQueue(stepCount);
+        for (int i = 0; i < stepCount; i++) {
+            mWaitingCounts[i] = plan.getStepDependencies(i).length;
+            mNextParked[i] = -1;
+            if (mWaitingCounts[i] == 0) {
+                mStates[i] = READY;
+                mReadySteps.insert(i, plan.getPriority(i));
+            }
+        }
+        final int resourceCount = plan.getResourceCount();
+        mResourceUse = new int[resourceCount];
+        mFirstParked = new int[resourceCount];
+        for (int i = 0; i < resourceCount; i++) {
+            mFirstParked[i] = -1;
+        }
+        mUnstartedStepCount = stepCount;
+    }
+
+    /**
+     * Starts the best step that can be started now
+     * @return the plan index of the started step, or -1 if no step can be started until
+     * another step finishes
+     */
+    public int startNextStep() {
+        while (!mReadySteps.isEmpty()) {
+            final int step = mReadySteps.poll();
+            final int fullResource = findFullResource(step);
+            if (fullResource != -1) {
+                // Wait for the resource without holding up other steps
+                mNextParked[step] = mFirstParked[fullResource];
+                mFirstParked[fullResource] = step;
+                continue;
+            }
+            for (int resource : mPlan.getStepResources(step)) {
+                mResourceUse[resource]++;
+            }
+            mStates[step] = RUNNING;
+            mUnstartedStepCount--;
+            return step;
+        }
+        return -1;
+    }
+
+    /**
+     * Finishes a running step, releasing its resources and making the steps that depend on it
+     * ready if they have no other unfinished dependencies
+     * @param step the plan index of the step
+     * @throws IllegalStateException if the step is not running
+     */
+    public void finishStep(int step) {
+        if (mStates[step] != RUNNING) {
+            throw new IllegalStateException("Step " + step + " is not running");
+        }
+        mStates[step] = FINISHED;
+        for (int resource : mPlan.getStepResources(step)) {
+            mResourceUse[resource]--;
+            unpark(resource);
+        }
+        for (int successor : mPlan.getStepSuccessors(step)) {
+            mWaitingCounts[successor]--;
+            if (mWaitingCounts[successor] == 0) {
+                mStates[successor] = READY;
+                mReadySteps.insert(successor, mPlan.getPriority(successor));
+            }
+        }
+    }
+
+    /**
+     * @return the plan being scheduled
+     */
+    @NonNull
+    public MealPlan getPlan() {
+        return mPlan;
+    }
+
+    /**
+     * Changes the priorities used to choose the steps that have not been started
+     * @param plan a plan with the same steps as the current plan, but different priorities
+     */
+    public void setPlan(@NonNull MealPlan plan) {
+        mPlan = plan;
+        for (int i = 0; i < plan.getStepCount(); i++) {
+            if (mReadySteps.contains(i)) {
+                mReadySteps.remove(i);
+                mReadySteps.insert(i, plan.getPriority(i));
+            }
+        }
+    }
+
+    /**
+     * @param step the plan index of a step
+     * @return true if the step has started and not finished
+     */
+    public boolean isRunning(int step) {
+        return mStates[step] == RUNNING;
+    }
+
+    /**
+     * @param step the plan index of a step
+     * @return true if the step has started, whether or not it has finished
+     */
+    public boolean isStarted(int step) {
+        return mStates[step] >= RUNNING;
+    }
+
+    /**
+     * @param recipe the plan index of a recipe
+     * @return the plan index of the first running step of the recipe, or -1 if it has none
+     */
+    public int getRunningStep(int recipe) {
+        for (int i = mPlan.getRecipeStart(recipe); i < mPlan.getRecipeEnd(recipe); i++) {
+            if (mStates[i] == RUNNING) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * @param recipe the plan index of a recipe
+     * @return the plan index of the first step of the recipe that has not been started,
+     * or the end of the recipe if all of its steps have been started
+     */
+    public int getNextStep(int recipe) {
+        final int end = mPlan.getRecipeEnd(recipe);
+        for (int i = mPlan.getRecipeStart(recipe); i < end; i++) {
+            if (mStates[i] < RUNNING) {
+                return i;
+            }
+        }
+        return end;
+    }
+
+    /**
+     * @return the number of steps that have not been started
+     */
+    public int getUnstartedStepCount() {
+        return mUnstartedStepCount;
+    }
+
+    /**
+     * @return the index of a resource that a step needs and is in full use, or -1
+     */
+    private int findFullResource(int step) {
+        for (int resource : mPlan.getStepResources(step)) {
+            if (mResourceUse[resource] >= mPlan.getResourceCapacity(resource)) {
+                return resource;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Makes every step parked on a resource ready again
+     */
+    private void unpark(int resource) {
+        int step = mFirstParked[resource];
+        mFirstParked[resource] = -1;
+        while (step != -1) {
+            final int next = mNextParked[step];
+            mNextParked[step] = -1;
+            mReadySteps.insert(step, mPlan.getPriority(step));
+            step = next;
+        }
+    }
+}
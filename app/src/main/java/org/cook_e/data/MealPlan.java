@@ -0,0 +1,674 @@
+/*
+ * Copyright 2016 the Cook-E development team
+ *
+ * This file is part of Cook-E.
+ *
+ * Cook-E is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Cook-E is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Cook-E.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.cook_e.data;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The steps of a Bunch and their estimated durations, compiled into flat arrays so that
+ * they can be scheduled and simulated without going back to the recipes or the time learner.
+ *
+ * Only recipes that have at least one step are included. Recipes are numbered in Bunch order.
+ * Steps are numbered across the whole plan, with the steps of each recipe stored contiguously
+ * in recipe order: the steps of recipe r have indices from {@link #getRecipeStart(int)}
+ * (inclusive) to {@link #getRecipeEnd(int)} (exclusive). A step can start once the steps it
+ * {@link Step#getDependencies() depends on} have finished. A dependency on a step that is not
+ * before it in its recipe is treated as a dependency on the step just before it.
+ *
+ * Objects of this class are immutable.
+ */
+public final class MealPlan {
+
+    /**
+     * An empty array of recipe or resource indices
+     */
+    private static final int[] NO_INDICES = new int[0];
+
+    /**
+     * The recipes, in Bunch order
+     */
+    @NonNull
+    private final Recipe[] mRecipes;
+
+    /**
+     * The index of the first step of each recipe, followed by the total number of steps
+     */
+    @NonNull
+    private final int[] mRecipeOffsets;
+
+    /**
+     * The steps
+     */
+    @NonNull
+    private final Step[] mSteps;
+
+    /**
+     * The index of the recipe that contains each step
+     */
+    @NonNull
+    private final int[] mStepRecipes;
+
+    /**
+     * The estimated duration of each step, in milliseconds
+     */
+    @NonNull
+    private final long[] mDurations;
+
+    /**
+     * The standard deviation of the duration of each step, as a fraction of the duration
+     */
+    @NonNull
+    private final double[] mDeviations;
+
+    /**
+     * Whether each step can be done simultaneously with other steps
+     */
+    @NonNull
+    private final boolean[] mSimultaneous;
+
+    /**
+     * For each step, the time in seconds from the first simultaneous step at or after
+     * that step to the end of its recipe
+     */
+    @NonNull
+    private final int[] mSimultaneousToEndTimes;
+
+    /**
+     * The names of the limited resources that steps in this plan use
+     */
+    @NonNull
+    private final String[] mResourceNames;
+
+    /**
+     * The capacity of each limited resource
+     */
+    @NonNull
+    private final int[] mResourceCapacities;
+
+    /**
+     * For each step, the indices of the limited resources that it uses
+     */
+    @NonNull
+    private final int[][] mStepResources;
+
+    /**
+     * For each step, the indices of the steps that must be finished before it can start
+     */
+    @NonNull
+    private final int[][] mStepDependencies;
+
+    /**
+     * For each step, the indices of the steps that depend on it
+     */
+    @NonNull
+    private final int[][] mStepSuccessors;
+
+    /**
+     * True if every step only depends on the step before it in its recipe
+     */
+    private final boolean mSequential;
+
+    /**
+     * For each step, the priority of the step when choosing between ready steps,
+     * or null to use the simultaneous-to-end times
+     */
+    @Nullable
+    private final long[] mPriorities;
+
+    /**
+     * Maps each recipe object in this plan to its index
+     */
+    @NonNull
+    private final Map<Recipe, int[]> mRecipesByIdentity;
+
+    /**
+     * Maps each distinct recipe value in this plan to the indices of the equal recipes,
+     * in increasing order
+     */
+    @NonNull
+    private final Map<Recipe, int[]> mRecipesByValue;
+
+    /**
+     * Creates a plan for a Bunch in the {@link Kitchen#DEFAULT default kitchen}, inferring the
+     * resources that steps use with a {@link KeywordResourceParser}
+     *
+     * @param bunch the bunch to plan
+     * @param timeLearner the time learner used to estimate step durations
+     * @throws NullPointerException if bunch or timeLearner is null
+     */
+    public MealPlan(@NonNull Bunch bunch, @NonNull TimeLearnerInterface timeLearner) {
+        this(bunch, timeLearner, new KeywordResourceParser(), Kitchen.DEFAULT);
+    }
+
+    /**
+     * Creates a plan for a Bunch
+     *
+     * @param bunch the bunch to plan
+     * @param timeLearner the time learner used to estimate step durations
+     * @param resourceParser the parser used to find the resources that each step uses
+     * @param kitchen the kitchen that limits how many steps can use each resource at once
+     * @throws NullPointerException if any parameter is null
+     */
+    public MealPlan(@NonNull Bunch bunch, @NonNull TimeLearnerInterface timeLearner,
+                    @NonNull ResourceParser resourceParser, @NonNull Kitchen kitchen) {
+        Objects.requireNonNull(bunch, "bunch must not be null");
+        Objects.requireNonNull(timeLearner, "timeLearner must not be null");
+        Objects.requireNonNull(resourceParser, "resourceParser must not be null");
+        Objects.requireNonNull(kitchen, "kitchen must not be null");
+
+        final List<Recipe> recipes = new ArrayList<>();
+        final List<Step> steps = new ArrayList<>();
+        final List<Integer> offsets = new ArrayList<>();
+        for (Recipe recipe : bunch.getRecipes()) {
+            final List<Step> recipeSteps = recipe.getSteps();
+            if (!recipeSteps.isEmpty()) {
+                recipes.add(recipe);
+                offsets.add(steps.size());
+                steps.addAll(recipeSteps);
+            }
+        }
+
+        final int recipeCount = recipes.size();
+        final int stepCount = steps.size();
+        mRecipes = recipes.toArray(new Recipe[recipeCount]);
+        mSteps = steps.toArray(new Step[stepCount]);
+        mRecipeOffsets = new int[recipeCount + 1];
+        mStepRecipes = new int[stepCount];
+        mDurations = new long[stepCount];
+        mDeviations = new double[stepCount];
+        mSimultaneous = new boolean[stepCount];
+        mStepResources = new int[stepCount][];
+        mStepDependencies = new int[stepCount][];
+        mPriorities = null;
+        mRecipesByIdentity = new IdentityHashMap<>(recipeCount);
+        mRecipesByValue = new HashMap<>(recipeCount);
+
+        for (int r = 0; r < recipeCount; r++) {
+            mRecipeOffsets[r] = offsets.get(r);
+        }
+        mRecipeOffsets[recipeCount] = stepCount;
+
+        // Number the limited resources in the order they are first used
+        final Map<String, Integer> resourceIndices = new HashMap<>();
+        final List<String> resourceNames = new ArrayList<>();
+        for (int i = 0; i < stepCount; i++) {
+            int[] stepResources = NO_INDICES;
+            for (String resource : resourceParser.getResources(mSteps[i])) {
+                if (!kitchen.isLimited(resource)) {
+                    continue;
+                }
+                Integer resourceIndex = resourceIndices.get(resource);
+                if (resourceIndex == null) {
+                    resourceIndex = resourceNames.size();
+                    resourceIndices.put(resource, resourceIndex);
+                    resourceNames.add(resource);
+                }
+                stepResources = Arrays.copyOf(stepResources, stepResources.length + 1);
+                stepResources[stepResources.length - 1] = resourceIndex;
+            }
+            mStepResources[i] = stepResources;
+        }
+        mResourceNames = resourceNames.toArray(new String[resourceNames.size()]);
+        mResourceCapacities = new int[mResourceNames.length];
+        for (int i = 0; i < mResourceNames.length; i++) {
+            mResourceCapacities[i] = kitchen.getCapacity(mResourceNames[i]);
+        }
+
+        for (int r = 0; r < recipeCount; r++) {
+            final Recipe recipe = mRecipes[r];
+            for (int i = mRecipeOffsets[r]; i < mRecipeOffsets[r + 1]; i++) {
+                final Step step = mSteps[i];
+                mStepRecipes[i] = r;
+                mDurations[i] = timeLearner.getEstimatedMillis(recipe, step);
+                mDeviations[i] = timeLearner.getRelativeDeviation(recipe, step);
+                mSimultaneous[i] = step.isSimultaneous();
+            }
+
+            mRecipesByIdentity.put(recipe, new int[] { r });
+            final int[] equalRecipes = mRecipesByValue.get(recipe);
+            if (equalRecipes == null) {
+                mRecipesByValue.put(recipe, new int[] { r });
+            } else {
+                final int[] moreEqualRecipes = Arrays.copyOf(equalRecipes, equalRecipes.length + 1);
+                moreEqualRecipes[equalRecipes.length] = r;
+                mRecipesByValue.put(recipe, moreEqualRecipes);
+            }
+        }
+
+        boolean sequential = true;
+        for (int r = 0; r < recipeCount; r++) {
+            final int start = mRecipeOffsets[r];
+            for (int i = start; i < mRecipeOffsets[r + 1]; i++) {
+                final int position = i - start;
+                final List<Integer> dependencies = mSteps[i].getDependencies();
+                if (dependencies == null) {
+                    mStepDependencies[i] = position == 0 ? NO_INDICES : new int[] { i - 1 };
+                    continue;
+                }
+                // A stored dependency that is not an earlier step cannot be resolved, so the step
+                // depends on the step before it instead, like a step without dependencies
+                int[] stepDependencies = new int[dependencies.size()];
+                int count = 0;
+                for (int dependency : dependencies) {
+                    if (dependency < 0 || dependency >= position) {
+                        if (position == 0) {
+                            continue;
+                        }
+                        dependency = position - 1;
+                    }
+                    stepDependencies[count++] = start + dependency;
+                }
+                Arrays.sort(stepDependencies, 0, count);
+                int unique = 0;
+                for (int j = 0; j < count; j++) {
+                    if (unique == 0 || stepDependencies[j] != stepDependencies[unique - 1]) {
+                        stepDependencies[unique++] = stepDependencies[j];
+                    }
+                }
+                if (unique != stepDependencies.length) {
+                    stepDependencies = Arrays.copyOf(stepDependencies, unique);
+                }
+                mStepDependencies[i] = stepDependencies;
+                if (position == 0 ? stepDependencies.length != 0
+                        : stepDependencies.length != 1 || stepDependencies[0] != i - 1) {
+                    sequential = false;
+                }
+            }
+        }
+        mSequential = sequential;
+        mStepSuccessors = invert(mStepDependencies);
+        mSimultaneousToEndTimes = getSimultaneousToEndTimes(mDurations, mSimultaneous,
+                mStepSuccessors);
+    }
+
+    /**
+     * Creates a copy of a plan with different step priorities
+     *
+     * @param other the plan to copy
+     * @param priorities the priorities, or null to use the simultaneous-to-end times
+     */
+    private MealPlan(@NonNull MealPlan other, @Nullable long[] priorities) {
+        mRecipes = other.mRecipes;
+        mRecipeOffsets = other.mRecipeOffsets;
+        mSteps = other.mSteps;
+        mStepRecipes = other.mStepRecipes;
+        mDurations = other.mDurations;
+        mDeviations = other.mDeviations;
+        mSimultaneous = other.mSimultaneous;
+        mSimultaneousToEndTimes = other.mSimultaneousToEndTimes;
+        mResourceNames = other.mResourceNames;
+        mResourceCapacities = other.mResourceCapacities;
+        mStepResources = other.mStepResources;
+        mStepDependencies = other.mStepDependencies;
+        mStepSuccessors = other.mStepSuccessors;
+        mSequential = other.mSequential;
+        mPriorities = priorities;
+        mRecipesByIdentity = other.mRecipesByIdentity;
+        mRecipesByValue = other.mRecipesByValue;
+    }
+
+    /**
+     * Creates a copy of a plan with the steps of each recipe in reverse order, and each
+     * dependency reversed. Resources are unchanged, and the priorities are the
+     * simultaneous-to-end times of the reversed steps.
+     *
+     * @param other the plan to reverse
+     */
+    private MealPlan(@NonNull MealPlan other) {
+        final int stepCount = other.mSteps.length;
+        mRecipes = other.mRecipes;
+        mRecipeOffsets = other.mRecipeOffsets;
+        mSteps = new Step[stepCount];
+        mStepRecipes = other.mStepRecipes;
+        mDurations = new long[stepCount];
+        mDeviations = new double[stepCount];
+        mSimultaneous = new boolean[stepCount];
+        mResourceNames = other.mResourceNames;
+        mResourceCapacities = other.mResourceCapacities;
+        mStepResources = new int[stepCount][];
+        mStepDependencies = new int[stepCount][];
+        mStepSuccessors = new int[stepCount][];
+        mSequential = other.mSequential;
+        mPriorities = null;
+        mRecipesByIdentity = other.mRecipesByIdentity;
+        mRecipesByValue = other.mRecipesByValue;
+
+        for (int r = 0; r < mRecipes.length; r++) {
+            final int start = mRecipeOffsets[r];
+            final int end = mRecipeOffsets[r + 1];
+            for (int i = start; i < end; i++) {
+                final int original = start + end - 1 - i;
+                mSteps[i] = other.mSteps[original];
+                mDurations[i] = other.mDurations[original];
+                mDeviations[i] = other.mDeviations[original];
+                mSimultaneous[i] = other.mSimultaneous[original];
+                mStepResources[i] = other.mStepResources[original];
+                // The steps that depended on the original step are now its dependencies
+                mStepDependencies[i] = mirror(other.mStepSuccessors[original], start, end);
+                mStepSuccessors[i] = mirror(other.mStepDependencies[original], start, end);
+            }
+        }
+        mSimultaneousToEndTimes = getSimultaneousToEndTimes(mDurations, mSimultaneous,
+                mStepSuccessors);
+    }
+
+    /**
+     * Maps step indices in a recipe to the indices of the same steps in reverse order
+     */
+    @NonNull
+    private static int[] mirror(@NonNull int[] steps, int start, int end) {
+        final int[] mirrored = new int[steps.length];
+        for (int i = 0; i < steps.length; i++) {
+            mirrored[i] = start + end - 1 - steps[i];
+        }
+        return mirrored;
+    }
+
+    /**
+     * Returns the successors of each step, given the dependencies of each step
+     */
+    @NonNull
+    private static int[][] invert(@NonNull int[][] dependencies) {
+        final int stepCount = dependencies.length;
+        final int[] successorCounts = new int[stepCount];
+        for (int[] stepDependencies : dependencies) {
+            for (int dependency : stepDependencies) {
+                successorCounts[dependency]++;
+            }
+        }
+        final int[][] successors = new int[stepCount][];
+        for (int i = 0; i < stepCount; i++) {
+            successors[i] = successorCounts[i] == 0 ? NO_INDICES : new int[successorCounts[i]];
+            successorCounts[i] = 0;
+        }
+        for (int i = 0; i < stepCount; i++) {
+            for (int dependency : dependencies[i]) {
+                successors[dependency][successorCounts[dependency]++] = i;
+            }
+        }
+        return successors;
+    }
+
+    /**
+     * Calculates the simultaneous-to-end time of each step: the time in seconds along the
+     * longest chain of dependent steps from the first simultaneous step at or after that step
+     * to the end of its recipe. For a recipe whose steps are done in order, this is the time
+     * from the first simultaneous step at or after the step to the last step.
+     */
+    @NonNull
+    private static int[] getSimultaneousToEndTimes(@NonNull long[] durations,
+                                                   @NonNull boolean[] simultaneous,
+                                                   @NonNull int[][] successors) {
+        final int stepCount = durations.length;
+        final int[] stepToEndTimes = new int[stepCount];
+        final int[] simultaneousToEndTimes = new int[stepCount];
+        // Every successor comes after its step, so work back from the last step
+        for (int i = stepCount - 1; i >= 0; i--) {
+            int stepToEndTime = 0;
+            int simultaneousToEndTime = 0;
+            for (int successor : successors[i]) {
+                stepToEndTime = Math.max(stepToEndTime, stepToEndTimes[successor]);
+                simultaneousToEndTime = Math.max(simultaneousToEndTime,
+                        simultaneousToEndTimes[successor]);
+            }
+            stepToEndTimes[i] = stepToEndTime + (int) (durations[i] / 1000);
+            simultaneousToEndTimes[i] = simultaneous[i] ? stepToEndTimes[i]
+                    : simultaneousToEndTime;
+        }
+        return simultaneousToEndTimes;
+    }
+
+    /**
+     * Returns a plan with the steps of each recipe in reverse order. Step i of a recipe in this
+     * plan is step {@code getRecipeStart(r) + getRecipeEnd(r) - 1 - i} in the returned plan.
+     * Scheduling the returned plan forwards is the same as scheduling this plan backwards
+     * from its end.
+     *
+     * @return the reversed plan
+     */
+    @NonNull
+    MealPlan reversed() {
+        return new MealPlan(this);
+    }
+
+    /**
+     * Returns a plan with the same steps as this plan, but with different priorities. A
+     * scheduler working through the returned plan chooses the ready step with the highest
+     * priority.
+     *
+     * @param priorities the priority of each step. This array is copied.
+     * @return a plan with the given priorities
+     * @throws IllegalArgumentException if the length of priorities is not the number of steps
+     */
+    @NonNull
+    MealPlan withPriorities(@NonNull long[] priorities) {
+        if (priorities.length != mSteps.length) {
+            throw new IllegalArgumentException("Expected " + mSteps.length + " priorities, got "
+                    + priorities.length);
+        }
+        return new MealPlan(this, priorities.clone());
+    }
+
+    /**
+     * @return the number of recipes in this plan
+     */
+    public int getRecipeCount() {
+        return mRecipes.length;
+    }
+
+    /**
+     * @return the total number of steps in this plan
+     */
+    public int getStepCount() {
+        return mSteps.length;
+    }
+
+    /**
+     * @param recipe the index of a recipe
+     * @return the recipe
+     */
+    @NonNull
+    public Recipe getRecipe(int recipe) {
+        return mRecipes[recipe];
+    }
+
+    /**
+     * @param recipe the index of a recipe
+     * @return the index of the first step of the recipe
+     */
+    public int getRecipeStart(int recipe) {
+        return mRecipeOffsets[recipe];
+    }
+
+    /**
+     * @param recipe the index of a recipe
+     * @return one more than the index of the last step of the recipe
+     */
+    public int getRecipeEnd(int recipe) {
+        return mRecipeOffsets[recipe + 1];
+    }
+
+    /**
+     * Returns the indices of the recipes in this plan that match a recipe. If the same recipe
+     * object is in this plan, only its index is returned. Otherwise, the indices of all equal
+     * recipes are returned in increasing order.
+     *
+     * The returned array must not be modified.
+     *
+     * @param recipe the recipe to find
+     * @return the indices of the matching recipes, which may be empty
+     */
+    @NonNull
+    int[] findRecipe(@NonNull Recipe recipe) {
+        int[] indices = mRecipesByIdentity.get(recipe);
+        if (indices == null) {
+            indices = mRecipesByValue.get(recipe);
+        }
+        return indices != null ? indices : NO_INDICES;
+    }
+
+    /**
+     * @param step the index of a step
+     * @return the step
+     */
+    @NonNull
+    public Step getStep(int step) {
+        return mSteps[step];
+    }
+
+    /**
+     * @param step the index of a step
+     * @return the index of the recipe that contains the step
+     */
+    public int getStepRecipe(int step) {
+        return mStepRecipes[step];
+    }
+
+    /**
+     * @param step the index of a step
+     * @return the estimated duration of the step, in milliseconds
+     */
+    public long getDuration(int step) {
+        return mDurations[step];
+    }
+
+    /**
+     * @param step the index of a step
+     * @return the standard deviation of the duration of the step, as a fraction of the
+     * estimated duration
+     */
+    public double getRelativeDeviation(int step) {
+        return mDeviations[step];
+    }
+
+    /**
+     * @param step the index of a step
+     * @return true if the step can be done simultaneously with other steps
+     */
+    public boolean isSimultaneous(int step) {
+        return mSimultaneous[step];
+    }
+
+    /**
+     * Returns the time in seconds from the first simultaneous step at or after a step to the end
+     * of its recipe, following the longest chain of dependent steps. This is zero if no
+     * simultaneous step depends on the step, directly or indirectly, and the step is not
+     * simultaneous.
+     *
+     * @param step the index of a step
+     * @return the simultaneous-to-end time
+     */
+    public int getSimultaneousToEndTime(int step) {
+        return mSimultaneousToEndTimes[step];
+    }
+
+    /**
+     * Returns the priority of a step when choosing between ready steps. Unless this plan was
+     * created with other priorities, this is the simultaneous-to-end time of the step.
+     *
+     * @param step the index of a step
+     * @return the priority
+     */
+    public long getPriority(int step) {
+        return mPriorities != null ? mPriorities[step] : mSimultaneousToEndTimes[step];
+    }
+
+    /**
+     * @return the number of limited resources that steps in this plan use
+     */
+    public int getResourceCount() {
+        return mResourceNames.length;
+    }
+
+    /**
+     * @param resource the index of a resource
+     * @return the name of the resource
+     */
+    @NonNull
+    public String getResourceName(int resource) {
+        return mResourceNames[resource];
+    }
+
+    /**
+     * @param resource the index of a resource
+     * @return the number of steps that can use the resource at the same time
+     */
+    public int getResourceCapacity(int resource) {
+        return mResourceCapacities[resource];
+    }
+
+    /**
+     * Returns the indices of the steps that must be finished before a step can start.
+     * Unless its step has other dependencies, each step depends on the step before it in
+     * its recipe.
+     *
+     * The returned array must not be modified.
+     *
+     * @param step the index of a step
+     * @return the indices of the dependencies, which are all less than step
+     */
+    @NonNull
+    int[] getStepDependencies(int step) {
+        return mStepDependencies[step];
+    }
+
+    /**
+     * Returns the indices of the steps that depend on a step.
+     *
+     * The returned array must not be modified.
+     *
+     * @param step the index of a step
+     * @return the indices of the steps that depend on the step, which are all greater than step
+     */
+    @NonNull
+    int[] getStepSuccessors(int step) {
+        return mStepSuccessors[step];
+    }
+
+    /**
+     * @return true if every step in this plan only depends on the step before it in its recipe,
+     * so that the steps of each recipe must be done one at a time in order
+     */
+    public boolean isSequential() {
+        return mSequential;
+    }
+
+    /**
+     * Returns the indices of the limited resources that a step uses. Unlimited resources
+     * are not included.
+     *
+     * The returned array must not be modified.
+     *
+     * @param step the index of a step
+     * @return the resource indices, which may be empty
+     */
+    @NonNull
+    int[] getStepResources(int step) {
+        return mStepResources[step];
+    }
+}
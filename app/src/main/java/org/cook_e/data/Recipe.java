@@ -226,12 +226,78 @@ public final class Recipe extends DatabaseObject implements Parcelable {
      * All steps after it will be moved one step forward.
      * Doesn't modify recipe if index is less than 0 or greater than max index.
      *
+     * The {@link Step#getDependencies() dependencies} of the later steps are renumbered to
+     * match. A step that depended on the removed step now depends on the steps that the removed
+     * step depended on.
+     *
      * @param i the index of step to remove, index starts from 0.
      * @return The removed step if succeeded, null if failed.
      */
     public Step removeStep(int i) {
-        if (i >= 0 && i < mSteps.size()) return mSteps.remove(i);
-        else return null;
+        if (i < 0 || i >= mSteps.size()) {
+            return null;
+        }
+        final Step removed = mSteps.remove(i);
+        final List<Integer> removedDependencies = getDependencyPositions(removed, i);
+        for (int position = i; position < mSteps.size(); position++) {
+            final Step step = mSteps.get(position);
+            final List<Integer> dependencies = new ArrayList<>();
+            for (int dependency : getDependencyPositions(step, position + 1)) {
+                if (dependency < i) {
+                    addDependency(dependencies, dependency);
+                } else if (dependency == i) {
+                    for (int removedDependency : removedDependencies) {
+                        addDependency(dependencies, removedDependency);
+                    }
+                } else {
+                    addDependency(dependencies, dependency - 1);
+                }
+            }
+            final List<Integer> oldDependencies = step.getDependencies();
+            if (oldDependencies == null
+                    ? !dependencies.equals(getDependencyPositions(step, position))
+                    : !dependencies.equals(oldDependencies)) {
+                mSteps.set(position, new Step(step.getIngredients(), step.getDescription(),
+                        step.getTime(), step.isSimultaneous(), step.getIndex(),
+                        step.getResources(), dependencies));
+            }
+        }
+        return removed;
+    }
+
+    /**
+     * Returns the positions of the steps that a step depends on, including the implicit
+     * dependency on the step before it. Like {@link MealPlan}, a dependency that is not an
+     * earlier step is treated as a dependency on the step before.
+     *
+     * @param step the step
+     * @param position the position of the step in its recipe
+     * @return the positions of its dependencies
+     */
+    @NonNull
+    private static List<Integer> getDependencyPositions(@NonNull Step step, int position) {
+        final List<Integer> dependencies = step.getDependencies();
+        final List<Integer> positions = new ArrayList<>();
+        if (dependencies == null) {
+            if (position != 0) {
+                positions.add(position - 1);
+            }
+            return positions;
+        }
+        for (int dependency : dependencies) {
+            if (dependency >= 0 && dependency < position) {
+                addDependency(positions, dependency);
+            } else if (position != 0) {
+                addDependency(positions, position - 1);
+            }
+        }
+        return positions;
+    }
+
+    private static void addDependency(@NonNull List<Integer> dependencies, int dependency) {
+        if (!dependencies.contains(dependency)) {
+            dependencies.add(dependency);
+        }
     }
 
     /**
@@ -0,0 +1,39 @@
+/*
+ * Copyright 2016 the Cook-E development team
+ *
+ * This file is part of Cook-E.
+ *
+ * Cook-E is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Cook-E is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Cook-E.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.cook_e.data;
+
+import android.support.annotation.NonNull;
+
+import java.util.Set;
+
+/**
+ * Decides which pieces of equipment, like an oven or a burner, a step uses.
+ *
+ * A scheduler will not start a step until every resource that it uses is available.
+ */
+public interface ResourceParser {
+    /**
+     * Returns the names of the resources that a step uses
+     * @param step the step
+     * @return the resource names, which may be empty
+     */
+    @NonNull
+    Set<String> getResources(@NonNull Step step);
+}
@@ -19,10 +19,13 @@
 
 package org.cook_e.data;
 
+import android.support.v4.util.LongSparseArray;
+
 import java.io.Closeable;
 import java.sql.SQLException;
 import java.util.Collection;
 import java.util.List;
+import java.util.Map;
 
 /**
  * An interface for classes that can access a database to store recipes and bunches
@@ -145,6 +148,15 @@ public interface SQLAccessor extends Closeable {
      * @throws SQLException
      */
     void updateLearnerData(Recipe r, LearningWeight weight) throws SQLException;
+
+    /**
+     * Update the learner data of several recipes in one transaction
+     * @param weights the learning weights to store, keyed by recipe ID
+     * @throws SQLException
+     */
+    void updateLearnerData(Map<Long, ? extends Collection<LearningWeight>> weights)
+            throws SQLException;
+
     /**
      * Load learner data for a specific recipe.
      * @param r the recipe of concern
@@ -153,9 +165,41 @@ public interface SQLAccessor extends Closeable {
      */
     List<LearningWeight> loadLearnerData(Recipe r) throws SQLException;
 
+    /**
+     * Load learner data for several recipes at once
+     * @param recipeIds the IDs of the recipes. Duplicate IDs are allowed.
+     * @return the learner data of each recipe that has any, keyed by recipe ID. The learning
+     * weights of each recipe are sorted by step index.
+     * @throws SQLException
+     */
+    LongSparseArray<List<LearningWeight>> loadLearnerData(long[] recipeIds) throws SQLException;
+
     /**
      * Delete the whole learner data
      * @throws SQLException
      */
     void deleteLearnerData() throws SQLException;
+
+    /**
+     * Load the speed factors that are learned across all recipes
+     * @return every stored speed factor
+     * @throws SQLException
+     */
+    List<SpeedFactor> loadSpeedFactors() throws SQLException;
+
+    /**
+     * Store speed factors in one transaction, replacing any stored factors with the same tokens
+     * @param factors the factors to store
+     * @throws SQLException
+     */
+    void updateSpeedFactors(Collection<SpeedFactor> factors) throws SQLException;
+
+    /**
+     * Replace the whole learner data and all speed factors in one transaction
+     * @param weights the learning weights to store, keyed by recipe ID
+     * @param factors the speed factors to store
+     * @throws SQLException
+     */
+    void replaceLearnerData(Map<Long, ? extends Collection<LearningWeight>> weights,
+                            Collection<SpeedFactor> factors) throws SQLException;
 }
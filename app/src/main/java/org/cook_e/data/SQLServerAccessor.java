@@ -20,6 +20,7 @@
 package org.cook_e.data;
 
 import android.os.StrictMode;
+import android.support.v4.util.LongSparseArray;
 import android.util.Log;
 
 import org.joda.time.field.UnsupportedDurationField;
@@ -36,6 +37,7 @@ import java.util.ArrayList;
 import java.util.Collection;
 import java.util.List;
 import java.util.Locale;
+import java.util.Map;
 import java.util.Properties;
 
 /**
@@ -363,16 +365,44 @@ public class SQLServerAccessor implements SQLAccessor {
         throw new UnsupportedOperationException("Not implemented");
     }
 
+    @Override
+    public void updateLearnerData(Map<Long, ? extends Collection<LearningWeight>> weights)
+            throws SQLException {
+        throw new UnsupportedOperationException("Not implemented");
+    }
+
     @Override
     public List<LearningWeight> loadLearnerData(Recipe r) throws SQLException {
         throw new UnsupportedOperationException("Not implemented");
     }
 
+    @Override
+    public LongSparseArray<List<LearningWeight>> loadLearnerData(long[] recipeIds)
+            throws SQLException {
+        throw new UnsupportedOperationException("Not implemented");
+    }
+
     @Override
     public void deleteLearnerData() throws SQLException {
         throw new UnsupportedOperationException("Not implemented");
     }
 
+    @Override
+    public List<SpeedFactor> loadSpeedFactors() throws SQLException {
+        throw new UnsupportedOperationException("Not implemented");
+    }
+
+    @Override
+    public void updateSpeedFactors(Collection<SpeedFactor> factors) throws SQLException {
+        throw new UnsupportedOperationException("Not implemented");
+    }
+
+    @Override
+    public void replaceLearnerData(Map<Long, ? extends Collection<LearningWeight>> weights,
+                                   Collection<SpeedFactor> factors) throws SQLException {
+        throw new UnsupportedOperationException("Not implemented");
+    }
+
     @Override
     public void clearAllTables() throws SQLException {
         throw new UnsupportedOperationException("Not implemented");
@@ -24,17 +24,24 @@ import android.content.Context;
 import android.database.Cursor;
 import android.database.sqlite.SQLiteDatabase;
 import android.database.sqlite.SQLiteOpenHelper;
+import android.database.sqlite.SQLiteQueryBuilder;
+import android.support.v4.util.LongSparseArray;
 
 import java.io.IOException;
 import java.sql.SQLException;
 import java.text.ParseException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
-import java.util.Collections;
 import java.util.List;
+import java.util.Map;
 
 /**
  * This class implements methods allowing for storage and access to an android local sqlite database
+ *
+ * The database is opened on first use and stays open until {@link #close()} is called, so that
+ * its schema and page cache are kept between calls. It uses write-ahead logging, so queries on
+ * other threads read from their own connections and do not wait for writes.
  */
 public class SQLiteAccessor implements SQLAccessor {
     /**
@@ -42,7 +49,8 @@ public class SQLiteAccessor implements SQLAccessor {
      */
     private StorageParser mParser;
     /**
-     * Helper that has methods for accessing the android local sqlite database
+     * Helper that has methods for accessing the android local sqlite database. It keeps the
+     * database open, so databases that it returns must not be closed.
      */
     private RecipeOpenHelper mHelper;
     /**
@@ -64,7 +72,13 @@ public class SQLiteAccessor implements SQLAccessor {
     private static final String BUNCH_RECIPES_TABLE_NAME = "BunchRecipes";
     private static final String[] BUNCH_RECIPE_COLUMNS = {"bunch_id", "recipe_id"};
     private static final String LEARNER_TABLE_NAME = "LearnerData";
-    private static final String[] LEARNER_COLUMNS = {"recipe_id", "step_index", "weighted_time", "learn_rate"};
+    private static final String[] LEARNER_COLUMNS = {"recipe_id", "step_index", "weighted_time", "learn_rate", "variance", "sample_count"};
+    private static final String SPEED_TABLE_NAME = "SpeedFactors";
+    private static final String[] SPEED_COLUMNS = {"token", "factor", "sample_count"};
+    /**
+     * The largest number of arguments to put in one query. SQLite allows at most 999.
+     */
+    private static final int MAX_QUERY_ARGUMENTS = 500;
     /**
      * Schema of the Recipes table: (id, name, author, description)
      */
@@ -97,8 +111,18 @@ public class SQLiteAccessor implements SQLAccessor {
                     LEARNER_COLUMNS[1] + " INT NOT NULL DEFAULT 0, " +
                     LEARNER_COLUMNS[2] + " REAL NOT NULL DEFAULT 0.0, " +
                     LEARNER_COLUMNS[3] + " REAL NOT NULL DEFAULT 0.0," +
+                    LEARNER_COLUMNS[4] + " REAL NOT NULL DEFAULT 0.0," +
+                    LEARNER_COLUMNS[5] + " INT NOT NULL DEFAULT 0," +
                     " PRIMARY KEY (" + LEARNER_COLUMNS[0] + ", " + LEARNER_COLUMNS[1] +
                    "));";
+    /**
+     * Schema of the Speed Factors table: (token, factor, sample_count)
+     */
+    private static final String SPEED_TABLE_CREATE =
+            "CREATE TABLE " + SPEED_TABLE_NAME + " (" +
+                    SPEED_COLUMNS[0] + " TEXT PRIMARY KEY, " +
+                    SPEED_COLUMNS[1] + " REAL NOT NULL DEFAULT 1.0, " +
+                    SPEED_COLUMNS[2] + " INT NOT NULL DEFAULT 0);";
 
     /**
      * Constructor
@@ -121,15 +145,11 @@ public class SQLiteAccessor implements SQLAccessor {
     public void storeRecipe(Recipe r) throws SQLException {
         try {
             SQLiteDatabase db = mHelper.getWritableDatabase();
-            try {
-                if (!r.hasObjectId()) {
-                    r.setObjectId(mRecipeCounter++);
-                }
-                ContentValues values = createContentValues(r);
-                db.insertWithOnConflict(RECIPE_TABLE_NAME, null, values, SQLiteDatabase.CONFLICT_REPLACE);
-            } finally {
-                db.close();
+            if (!r.hasObjectId()) {
+                r.setObjectId(mRecipeCounter++);
             }
+            ContentValues values = createContentValues(r);
+            db.insertWithOnConflict(RECIPE_TABLE_NAME, null, values, SQLiteDatabase.CONFLICT_REPLACE);
         } catch (Exception e) {
             throw new SQLException(e);
         }
@@ -158,7 +178,6 @@ public class SQLiteAccessor implements SQLAccessor {
                 db.setTransactionSuccessful();
             } finally {
                 db.endTransaction();
-                db.close();
             }
         } catch (Exception e) {
             throw new SQLException(e);
@@ -168,26 +187,107 @@ public class SQLiteAccessor implements SQLAccessor {
     /**
      * Edit a recipe stored on the sqlite database
      *
+     * The learner data of steps that are unchanged, or whose written time is the only change,
+     * follows the steps to their new positions. The learner data of other steps is deleted.
+     *
      * @param r Recipe object to update
      */
     @Override
     public void editRecipe(Recipe r) throws SQLException {
         try {
             SQLiteDatabase db = mHelper.getWritableDatabase();
+            db.beginTransaction();
             try {
+                List<Step> oldSteps;
+                try {
+                    oldSteps = loadSteps(r.getObjectId(), db);
+                } catch (ParseException e) {
+                    // The stored steps are damaged, so their learner data cannot be matched
+                    oldSteps = null;
+                }
                 ContentValues values = createContentValues(r);
                 String[] whereArgs = {String.valueOf(r.getObjectId())};
                 db.update(RECIPE_TABLE_NAME, values, "id = ?", whereArgs);
 
-                db.delete(LEARNER_TABLE_NAME, "recipe_id=?", whereArgs);
+                if (oldSteps == null) {
+                    db.delete(LEARNER_TABLE_NAME, "recipe_id=?", whereArgs);
+                } else {
+                    remapLearnerData(db, r.getObjectId(), oldSteps, r.getSteps());
+                }
+                db.setTransactionSuccessful();
             } finally {
-                db.close();
+                db.endTransaction();
             }
         } catch (Exception e) {
             throw new SQLException(e);
         }
     }
 
+    /**
+     * Moves the learner data of a recipe from its old steps to the matching new steps, as
+     * matched by {@link StepMatcher}. Learner data of steps with no match is deleted. If a step
+     * has a new written time, its time weight is scaled so that its estimated time stays the same.
+     * Must be called in a transaction.
+     *
+     * Learner data is stored by position in the recipe, which is how steps are numbered when
+     * they are loaded. The indices of the new steps are not used, because the recipe editor
+     * does not keep them up to date.
+     *
+     * @param db the database
+     * @param recipeId the ID of the recipe
+     * @param oldSteps the steps of the recipe before the edit
+     * @param newSteps the steps of the recipe after the edit
+     */
+    private void remapLearnerData(SQLiteDatabase db, long recipeId, List<Step> oldSteps,
+                                  List<Step> newSteps) {
+        final String[] whereArgs = {String.valueOf(recipeId)};
+        final List<LearningWeight> weights = new ArrayList<>();
+        Cursor c = db.query(LEARNER_TABLE_NAME, LEARNER_COLUMNS, "recipe_id = ?", whereArgs,
+                null, null, null);
+        try {
+            while (c.moveToNext()) {
+                weights.add(learningWeightFromResult(c));
+            }
+        } finally {
+            c.close();
+        }
+        if (weights.isEmpty()) {
+            return;
+        }
+
+        final int[] matches = StepMatcher.match(oldSteps, newSteps);
+        final List<LearningWeight> remapped = new ArrayList<>(weights.size());
+        boolean changed = false;
+        for (LearningWeight weight : weights) {
+            final int position = weight.getIndex();
+            if (position < 0 || position >= oldSteps.size() || matches[position] == -1) {
+                changed = true;
+                continue;
+            }
+            final int newPosition = matches[position];
+            final Step oldStep = oldSteps.get(position);
+            final Step newStep = newSteps.get(newPosition);
+            final long oldMillis = oldStep.getTime().getMillis();
+            final long newMillis = newStep.getTime().getMillis();
+            final double scale = oldMillis > 0 && newMillis > 0
+                    ? oldMillis / (double) newMillis : 1;
+            if (newPosition != position || scale != 1) {
+                changed = true;
+            }
+            remapped.add(new LearningWeight(newPosition, weight.getTimeWeight() * scale,
+                    weight.getLearnRate(), weight.getVariance() * scale * scale,
+                    weight.getSampleCount()));
+        }
+        if (!changed) {
+            return;
+        }
+        db.delete(LEARNER_TABLE_NAME, "recipe_id = ?", whereArgs);
+        for (LearningWeight weight : remapped) {
+            db.insertWithOnConflict(LEARNER_TABLE_NAME, null,
+                    createContentValues(recipeId, weight), SQLiteDatabase.CONFLICT_REPLACE);
+        }
+    }
+
     /**
      * Edit a bunch stored on the sqlite database
      *
@@ -206,14 +306,11 @@ public class SQLiteAccessor implements SQLAccessor {
                 for (Recipe r: b.getRecipes()) {
                     ContentValues cv = createContentValues(b,r);
                     db.insert(BUNCH_RECIPES_TABLE_NAME, null, cv);
-                    String[] whereArgs = {String.valueOf(r.getObjectId())};
-                    db.delete(LEARNER_TABLE_NAME, "recipe_id=?", whereArgs);
                 }
 
                 db.setTransactionSuccessful();
             } finally {
                 db.endTransaction();
-                db.close();
             }
         } catch (Exception e) {
             throw new SQLException(e);
@@ -234,22 +331,18 @@ public class SQLiteAccessor implements SQLAccessor {
     public Recipe loadRecipe(String title, String author) throws SQLException {
         try {
             SQLiteDatabase db = mHelper.getReadableDatabase();
+            String[] whereArgs = {title, author};
+            Cursor c = db.query(RECIPE_TABLE_NAME, RECIPE_COLUMNS, "name = ? AND author = ?",
+                    whereArgs,
+                    null, null, "name");
             try {
-                String[] whereArgs = {title, author};
-                Cursor c = db.query(RECIPE_TABLE_NAME, RECIPE_COLUMNS, "name = ? AND author = ?",
-                        whereArgs,
-                        null, null, "name");
-                try {
-                    if (c.moveToFirst()) {
-                        return recipeFromResult(c);
-                    } else {
-                        return null;
-                    }
-                } finally {
-                    c.close();
+                if (c.moveToFirst()) {
+                    return recipeFromResult(c);
+                } else {
+                    return null;
                 }
             } finally {
-                db.close();
+                c.close();
             }
         } catch (Exception e) {
             throw new SQLException(e);
@@ -284,24 +377,20 @@ public class SQLiteAccessor implements SQLAccessor {
         List<Recipe> recipes = new ArrayList<>();
         try {
             SQLiteDatabase db = mHelper.getReadableDatabase();
+            Cursor c = null;
+            if (limit == -1) {
+                c = db.query(RECIPE_TABLE_NAME, RECIPE_COLUMNS, null, null, null, null,
+                        "name");
+            } else {
+                c  = db.query(RECIPE_TABLE_NAME, RECIPE_COLUMNS, null, null, null, null,
+                        "name", String.valueOf(limit));
+            }
             try {
-                Cursor c = null;
-                if (limit == -1) {
-                    c = db.query(RECIPE_TABLE_NAME, RECIPE_COLUMNS, null, null, null, null,
-                            "name");
-                } else {
-                    c  = db.query(RECIPE_TABLE_NAME, RECIPE_COLUMNS, null, null, null, null,
-                            "name", String.valueOf(limit));
-                }
-                try {
-                    while (c.moveToNext()) {
-                        recipes.add(recipeFromResult(c));
-                    }
-                } finally {
-                    c.close();
+                while (c.moveToNext()) {
+                    recipes.add(recipeFromResult(c));
                 }
             } finally {
-                db.close();
+                c.close();
             }
         } catch (Exception e) {
             throw new SQLException(e);
@@ -323,14 +412,9 @@ public class SQLiteAccessor implements SQLAccessor {
     @Override
     public void checkInvariants() throws SQLException {
         final SQLiteDatabase db = mHelper.getReadableDatabase();
-        try {
-            checkRecipeIds(db);
-            checkBunchIds(db);
-            checkRecipeBunchTable(db);
-        }
-        finally {
-            db.close();
-        }
+        checkRecipeIds(db);
+        checkBunchIds(db);
+        checkRecipeBunchTable(db);
     }
 
     /**
@@ -441,56 +525,12 @@ public class SQLiteAccessor implements SQLAccessor {
      */
     @Override
     public List<Bunch> loadAllBunches(int limit) throws SQLException {
-        List<Bunch> bunches = new ArrayList<>();
         try {
             SQLiteDatabase db = mHelper.getReadableDatabase();
-            try {
-                Cursor c = null;
-                if (limit == -1) {
-                    c = db.query(BUNCH_TABLE_NAME, BUNCH_COLUMNS, null, null, null, null,
-                            "name");
-                } else {
-                    c = db.query(BUNCH_TABLE_NAME, BUNCH_COLUMNS, null, null, null, null,
-                            "name", String.valueOf(limit));
-                }
-                if (c.getCount() > 0) {
-                    c.moveToFirst();
-                    do {
-                        List<Recipe> recipes = new ArrayList<>();
-                        long bunch_id = c.getLong(0);
-                        String name = c.getString(1);
-                        String[] whereArgs = {String.valueOf(bunch_id)};
-                        Cursor recipe_bunch_cursor = db.query(BUNCH_RECIPES_TABLE_NAME,
-                                BUNCH_RECIPE_COLUMNS, "bunch_id = ?", whereArgs,
-                                null, null, null);
-                        try {
-                            if (recipe_bunch_cursor.getCount() > 0) {
-                                recipe_bunch_cursor.moveToFirst();
-                                do {
-                                    long recipe_id = recipe_bunch_cursor.getLong(
-                                            recipe_bunch_cursor.getColumnIndexOrThrow(
-                                                    BUNCH_RECIPE_COLUMNS[1]));
-                                    Recipe r = loadRecipe(recipe_id, db);
-                                    recipes.add(r);
-                                } while (recipe_bunch_cursor.moveToNext());
-                            }
-                            Bunch b = new Bunch(name, recipes);
-                            b.setObjectId(bunch_id);
-                            bunches.add(b);
-                        } finally {
-                            recipe_bunch_cursor.close();
-                        }
-                    } while (c.moveToNext());
-                    c.close();
-                }
-            } finally {
-                db.close();
-            }
+            return loadBunches(db, null, null, limit);
         } catch (Exception e) {
             throw new SQLException(e);
         }
-        return bunches;
-
     }
 
     /**
@@ -501,53 +541,91 @@ public class SQLiteAccessor implements SQLAccessor {
      */
     @Override
     public Bunch loadBunch(String name) throws SQLException {
-        Bunch b = null;
         try {
             SQLiteDatabase db = mHelper.getReadableDatabase();
-            try {
-                String[] whereArgs = {name};
-                Cursor c = db.query(BUNCH_TABLE_NAME, BUNCH_COLUMNS, "name = ?", whereArgs,
-                        null, null, "name");
-                try {
-                    List<Recipe> recipes = new ArrayList<>();
-                    if (c.getCount() > 0) {
-                        c.moveToFirst();
-                        long bunch_id = c.getLong(0);
-                        final String bunchName = c.getString(1);
-                        // Create the bunch
-                        b = new Bunch(bunchName, Collections.<Recipe>emptyList());
-
-                        String[] bunchRecipesWhereArgs = {String.valueOf(bunch_id)};
-                        Cursor recipe_bunch_cursor = db.query(BUNCH_RECIPES_TABLE_NAME,
-                                BUNCH_RECIPE_COLUMNS,
-                                "bunch_id = ?", bunchRecipesWhereArgs,
-                                null, null, null);
-                        try {
-                            if (recipe_bunch_cursor.getCount() > 0) {
-                                recipe_bunch_cursor.moveToFirst();
-                                do {
-                                    long recipe_id = recipe_bunch_cursor.getLong(1);
-                                    Recipe r = loadRecipe(recipe_id, db);
-                                    recipes.add(r);
-                                } while (recipe_bunch_cursor.moveToNext());
-                                b = new Bunch(name, recipes);
-                                b.setObjectId(bunch_id);
-                            }
-                        } finally {
-                            recipe_bunch_cursor.close();
-                        }
-                        b.setRecipes(recipes);
+            final List<Bunch> bunches = loadBunches(db, "name = ?", new String[]{name}, 1);
+            return bunches.isEmpty() ? null : bunches.get(0);
+        } catch (Exception e) {
+            throw new SQLException(e);
+        }
+    }
+
+    /**
+     * Loads bunches and their recipes with one query that joins the Bunches, Bunch Recipes,
+     * and Recipes tables. Each row of the result is one recipe of one bunch, or a bunch with
+     * no recipes. A recipe that is in several bunches is parsed only once.
+     *
+     * @param db the database to read from
+     * @param selection a filter on the Bunches table, or null to load all bunches
+     * @param selectionArgs the arguments of the selection, or null
+     * @param limit the maximum number of bunches to load, or -1 for no limit
+     * @return the bunches, sorted by name
+     */
+    private List<Bunch> loadBunches(SQLiteDatabase db, String selection, String[] selectionArgs,
+                                    int limit) throws SQLException, ParseException {
+        final String bunchQuery = SQLiteQueryBuilder.buildQueryString(false, BUNCH_TABLE_NAME,
+                BUNCH_COLUMNS, selection, null, null, "name, id",
+                limit == -1 ? null : String.valueOf(limit));
+        // The recipe columns keep their own names so that recipeFromResult() can read them
+        final String query = "SELECT b.id AS bunch_id, b.name AS bunch_name, br.recipe_id," +
+                " r.id AS id, r.name AS name, r.author AS author," +
+                " r.description AS description, r.image_path AS image_path" +
+                " FROM (" + bunchQuery + ") AS b" +
+                " LEFT JOIN " + BUNCH_RECIPES_TABLE_NAME + " AS br ON br.bunch_id = b.id" +
+                " LEFT JOIN " + RECIPE_TABLE_NAME + " AS r ON r.id = br.recipe_id" +
+                " ORDER BY b.name, b.id, br.recipe_id";
+
+        final List<Bunch> bunches = new ArrayList<>();
+        // Bunch copies its recipes, so one parsed recipe can be given to several bunches
+        final LongSparseArray<Recipe> recipeCache = new LongSparseArray<>();
+        final Cursor c = db.rawQuery(query, selectionArgs);
+        try {
+            final int bunchIdColumn = c.getColumnIndexOrThrow("bunch_id");
+            final int bunchNameColumn = c.getColumnIndexOrThrow("bunch_name");
+            final int bunchRecipeIdColumn = c.getColumnIndexOrThrow(BUNCH_RECIPE_COLUMNS[1]);
+            final int recipeIdColumn = c.getColumnIndexOrThrow(RECIPE_COLUMNS[0]);
+
+            List<Recipe> recipes = null;
+            String bunchName = null;
+            long bunchId = -1;
+            while (c.moveToNext()) {
+                final long rowBunchId = c.getLong(bunchIdColumn);
+                if (recipes == null || rowBunchId != bunchId) {
+                    if (recipes != null) {
+                        bunches.add(createBunch(bunchId, bunchName, recipes));
                     }
-                } finally {
-                    c.close();
+                    bunchId = rowBunchId;
+                    bunchName = c.getString(bunchNameColumn);
+                    recipes = new ArrayList<>();
                 }
-            } finally {
-                db.close();
+                if (c.isNull(bunchRecipeIdColumn)) {
+                    // Bunch with no recipes
+                    continue;
+                }
+                final long recipeId = c.getLong(bunchRecipeIdColumn);
+                if (c.isNull(recipeIdColumn)) {
+                    throw new SQLException("No recipe with ID " + recipeId + " in recipes table");
+                }
+                Recipe recipe = recipeCache.get(recipeId);
+                if (recipe == null) {
+                    recipe = recipeFromResult(c);
+                    recipeCache.put(recipeId, recipe);
+                }
+                recipes.add(recipe);
             }
-        } catch (Exception e) {
-            throw new SQLException(e);
+            if (recipes != null) {
+                bunches.add(createBunch(bunchId, bunchName, recipes));
+            }
+        } finally {
+            c.close();
         }
-        return b;
+        return bunches;
+    }
+
+    private static Bunch createBunch(long id, String name, List<Recipe> recipes) {
+        final Bunch bunch = new Bunch(name, recipes);
+        bunch.setObjectId(id);
+        return bunch;
     }
 
     /**
@@ -572,7 +650,6 @@ public class SQLiteAccessor implements SQLAccessor {
 
             } finally {
                 db.endTransaction();
-                db.close();
             }
         } catch (Exception e) {
             throw new SQLException(e);
@@ -596,7 +673,6 @@ public class SQLiteAccessor implements SQLAccessor {
                 db.setTransactionSuccessful();
             } finally {
                 db.endTransaction();
-                db.close();
             }
         } catch (Exception e) {
             throw new SQLException(e);
@@ -615,7 +691,6 @@ public class SQLiteAccessor implements SQLAccessor {
                 db.setTransactionSuccessful();
             } finally {
                 db.endTransaction();
-                db.close();
             }
         } catch (Exception e) {
             throw new SQLException(e);
@@ -632,8 +707,23 @@ public class SQLiteAccessor implements SQLAccessor {
 
         } catch (Exception e) {
             throw new SQLException(e);
-        } finally {
-            db.close();
+        }
+    }
+
+    @Override
+    public void updateLearnerData(Map<Long, ? extends Collection<LearningWeight>> weights)
+            throws SQLException {
+        try {
+            SQLiteDatabase db = mHelper.getWritableDatabase();
+            db.beginTransaction();
+            try {
+                insertLearnerData(db, weights);
+                db.setTransactionSuccessful();
+            } finally {
+                db.endTransaction();
+            }
+        } catch (Exception e) {
+            throw new SQLException(e);
         }
     }
 
@@ -641,24 +731,15 @@ public class SQLiteAccessor implements SQLAccessor {
     public List<LearningWeight> loadLearnerData(Recipe r) throws SQLException {
         List<LearningWeight> results = new ArrayList<>();
         try {
-            SQLiteDatabase db = mHelper.getWritableDatabase();
+            SQLiteDatabase db = mHelper.getReadableDatabase();
+            String[] whereArgs = {String.valueOf(r.getObjectId())};
+            Cursor c = db.query(LEARNER_TABLE_NAME, LEARNER_COLUMNS, "recipe_id = ?", whereArgs, null, null, null, null);
             try {
-                String[] whereArgs = {String.valueOf(r.getObjectId())};
-                Cursor c = db.query(LEARNER_TABLE_NAME, LEARNER_COLUMNS, "recipe_id = ?", whereArgs, null, null, null, null);
-                if (c.getCount() > 0) {
-                    c.moveToFirst();
-                    do {
-                        int index = c.getInt(1);
-                        double weighted_time = c.getDouble(2);
-                        double learn_rate = c.getDouble(3);
-
-                        LearningWeight weight = new LearningWeight(index, weighted_time, learn_rate);
-                        results.add(weight);
-                    } while (c.moveToNext());
-                    c.close();
+                while (c.moveToNext()) {
+                    results.add(learningWeightFromResult(c));
                 }
             } finally {
-                db.close();
+                c.close();
             }
         } catch (Exception e) {
             throw new SQLException(e);
@@ -666,14 +747,166 @@ public class SQLiteAccessor implements SQLAccessor {
 
         return results;
     }
+    @Override
+    public LongSparseArray<List<LearningWeight>> loadLearnerData(long[] recipeIds)
+            throws SQLException {
+        // Sorting lets duplicates be skipped and keeps the keys in order for the results
+        final long[] ids = recipeIds.clone();
+        Arrays.sort(ids);
+        final List<String> args = new ArrayList<>(ids.length);
+        for (int i = 0; i < ids.length; i++) {
+            if (i == 0 || ids[i] != ids[i - 1]) {
+                args.add(String.valueOf(ids[i]));
+            }
+        }
+        final LongSparseArray<List<LearningWeight>> results = new LongSparseArray<>(args.size());
+        try {
+            SQLiteDatabase db = mHelper.getReadableDatabase();
+            // Stay under the SQLite limit on the number of parameters in one query
+            for (int start = 0; start < args.size(); start += MAX_QUERY_ARGUMENTS) {
+                final List<String> chunk = args.subList(start,
+                        Math.min(args.size(), start + MAX_QUERY_ARGUMENTS));
+                final StringBuilder selection = new StringBuilder("recipe_id IN (");
+                for (int i = 0; i < chunk.size(); i++) {
+                    selection.append(i == 0 ? "?" : ",?");
+                }
+                selection.append(')');
+                Cursor c = db.query(LEARNER_TABLE_NAME, LEARNER_COLUMNS, selection.toString(),
+                        chunk.toArray(new String[chunk.size()]), null, null,
+                        "recipe_id, step_index");
+                try {
+                    long currentId = 0;
+                    List<LearningWeight> current = null;
+                    while (c.moveToNext()) {
+                        final long recipeId = c.getLong(0);
+                        if (current == null || recipeId != currentId) {
+                            currentId = recipeId;
+                            current = new ArrayList<>();
+                            results.put(recipeId, current);
+                        }
+                        current.add(learningWeightFromResult(c));
+                    }
+                } finally {
+                    c.close();
+                }
+            }
+        } catch (Exception e) {
+            throw new SQLException(e);
+        }
+        return results;
+    }
+
     public void deleteLearnerData() throws SQLException {
         SQLiteDatabase db = mHelper.getWritableDatabase();
+        db.beginTransaction();
         try {
             db.delete(LEARNER_TABLE_NAME, null, null);
+            db.delete(SPEED_TABLE_NAME, null, null);
+            db.setTransactionSuccessful();
         } finally {
-            db.close();
+            db.endTransaction();
+        }
+    }
+
+    @Override
+    public List<SpeedFactor> loadSpeedFactors() throws SQLException {
+        final List<SpeedFactor> results = new ArrayList<>();
+        try {
+            SQLiteDatabase db = mHelper.getReadableDatabase();
+            Cursor c = db.query(SPEED_TABLE_NAME, SPEED_COLUMNS, null, null, null, null, null);
+            try {
+                while (c.moveToNext()) {
+                    results.add(new SpeedFactor(c.getString(0), c.getDouble(1), c.getInt(2)));
+                }
+            } finally {
+                c.close();
+            }
+        } catch (Exception e) {
+            throw new SQLException(e);
+        }
+        return results;
+    }
+
+    @Override
+    public void updateSpeedFactors(Collection<SpeedFactor> factors) throws SQLException {
+        try {
+            SQLiteDatabase db = mHelper.getWritableDatabase();
+            db.beginTransaction();
+            try {
+                insertSpeedFactors(db, factors);
+                db.setTransactionSuccessful();
+            } finally {
+                db.endTransaction();
+            }
+        } catch (Exception e) {
+            throw new SQLException(e);
         }
     }
+
+    @Override
+    public void replaceLearnerData(Map<Long, ? extends Collection<LearningWeight>> weights,
+                                   Collection<SpeedFactor> factors) throws SQLException {
+        try {
+            SQLiteDatabase db = mHelper.getWritableDatabase();
+            db.beginTransaction();
+            try {
+                db.delete(LEARNER_TABLE_NAME, null, null);
+                db.delete(SPEED_TABLE_NAME, null, null);
+                insertLearnerData(db, weights);
+                insertSpeedFactors(db, factors);
+                db.setTransactionSuccessful();
+            } finally {
+                db.endTransaction();
+            }
+        } catch (Exception e) {
+            throw new SQLException(e);
+        }
+    }
+
+    /**
+     * Inserts learning weights, replacing any stored weights for the same steps. Must be called
+     * in a transaction.
+     * @param db the database to insert into
+     * @param weights the learning weights to store, keyed by recipe ID
+     */
+    private void insertLearnerData(SQLiteDatabase db,
+                                   Map<Long, ? extends Collection<LearningWeight>> weights) {
+        for (Map.Entry<Long, ? extends Collection<LearningWeight>> entry : weights.entrySet()) {
+            for (LearningWeight weight : entry.getValue()) {
+                ContentValues cv = createContentValues(entry.getKey(), weight);
+                db.insertWithOnConflict(LEARNER_TABLE_NAME, null, cv,
+                        SQLiteDatabase.CONFLICT_REPLACE);
+            }
+        }
+    }
+
+    /**
+     * Inserts speed factors, replacing any stored factors with the same tokens. Must be called
+     * in a transaction.
+     * @param db the database to insert into
+     * @param factors the factors to store
+     */
+    private void insertSpeedFactors(SQLiteDatabase db, Collection<SpeedFactor> factors) {
+        for (SpeedFactor factor : factors) {
+            db.insertWithOnConflict(SPEED_TABLE_NAME, null, createContentValues(factor),
+                    SQLiteDatabase.CONFLICT_REPLACE);
+        }
+    }
+
+    /**
+     * Helper that creates a ContentValues object for the Speed Factors table
+     *
+     * @param factor SpeedFactor object to take values from
+     * @return ContentValues containing the mapping from column name to value for Speed Factors Table
+     */
+    private ContentValues createContentValues(SpeedFactor factor) {
+        ContentValues values = new ContentValues();
+        values.put(SPEED_COLUMNS[0], factor.getToken());
+        values.put(SPEED_COLUMNS[1], factor.getFactor());
+        values.put(SPEED_COLUMNS[2], factor.getSampleCount());
+        return values;
+    }
+
     /**
      * Helper that creates a ContentValues object for the Recipes table
      *
@@ -739,28 +972,45 @@ public class SQLiteAccessor implements SQLAccessor {
         return values;
     }
     private ContentValues createContentValues(Recipe r, LearningWeight weight) {
+        return createContentValues(r.getObjectId(), weight);
+    }
+    private ContentValues createContentValues(long recipeId, LearningWeight weight) {
         ContentValues values = new ContentValues();
-        values.put(LEARNER_COLUMNS[0], r.getObjectId());
+        values.put(LEARNER_COLUMNS[0], recipeId);
         values.put(LEARNER_COLUMNS[1], weight.getIndex());
         values.put(LEARNER_COLUMNS[2], weight.getTimeWeight());
         values.put(LEARNER_COLUMNS[3], weight.getLearnRate());
+        values.put(LEARNER_COLUMNS[4], weight.getVariance());
+        values.put(LEARNER_COLUMNS[5], weight.getSampleCount());
         return values;
     }
 
-    private Recipe loadRecipe(long recipe_id, SQLiteDatabase db) throws ParseException, SQLException{
-        String[] recipeWhereArgs = {String.valueOf(recipe_id)};
-        Cursor recipe_cursor = db.query(RECIPE_TABLE_NAME, RECIPE_COLUMNS, "id = ?", recipeWhereArgs,
-                null, null, null);
+    /**
+     * Creates a learning weight from a result of a query for {@link #LEARNER_COLUMNS}
+     * @param result a result pointing to a valid row
+     * @return a LearningWeight
+     */
+    private static LearningWeight learningWeightFromResult(Cursor result) {
+        return new LearningWeight(result.getInt(1), result.getDouble(2), result.getDouble(3),
+                result.getDouble(4), result.getInt(5));
+    }
+
+    /**
+     * Loads the stored steps of a recipe
+     * @return the steps, or null if there is no recipe with the ID
+     */
+    private List<Step> loadSteps(long recipeId, SQLiteDatabase db) throws ParseException {
+        String[] whereArgs = {String.valueOf(recipeId)};
+        Cursor c = db.query(RECIPE_TABLE_NAME, new String[]{RECIPE_COLUMNS[3]}, "id = ?",
+                whereArgs, null, null, null);
         try {
-            if (recipe_cursor.moveToFirst()) {
-                return recipeFromResult(recipe_cursor);
+            if (c.moveToFirst()) {
+                return mParser.parseRecipeSteps(c.getString(0));
             } else {
-                throw new SQLException(
-                        "No recipe with ID " + recipe_id +
-                                " in recipes table");
+                return null;
             }
         } finally {
-            recipe_cursor.close();
+            c.close();
         }
     }
 
@@ -773,7 +1023,7 @@ public class SQLiteAccessor implements SQLAccessor {
      * Private helper class that has methods that allows for access to the underlying android sqlite database
      */
     private class RecipeOpenHelper extends SQLiteOpenHelper {
-        private static final int DATABASE_VERSION = 2;
+        private static final int DATABASE_VERSION = 4;
 
         public RecipeOpenHelper(Context c) {
             super(c, DATABASE_NAME, null, DATABASE_VERSION);
@@ -785,11 +1035,30 @@ public class SQLiteAccessor implements SQLAccessor {
             db.execSQL(BUNCH_TABLE_CREATE);
             db.execSQL(BUNCH_RECIPE_TABLE_CREATE);
             db.execSQL(LEARNER_TABLE_CREATE);
+            db.execSQL(SPEED_TABLE_CREATE);
+        }
+
+        @Override
+        public void onOpen(SQLiteDatabase db) {
+            super.onOpen(db);
+            if (!db.isReadOnly()) {
+                db.enableWriteAheadLogging();
+            }
         }
 
         @Override
         public void onUpgrade(SQLiteDatabase db, int oldVersion, int newVersion) {
-            //do nothing for now
+            if (oldVersion < 3) {
+                // Version 3 added the variance and sample count of each learned step
+                db.execSQL("ALTER TABLE " + LEARNER_TABLE_NAME + " ADD COLUMN " +
+                        LEARNER_COLUMNS[4] + " REAL NOT NULL DEFAULT 0.0");
+                db.execSQL("ALTER TABLE " + LEARNER_TABLE_NAME + " ADD COLUMN " +
+                        LEARNER_COLUMNS[5] + " INT NOT NULL DEFAULT 0");
+            }
+            if (oldVersion < 4) {
+                // Version 4 added speed factors learned across all recipes
+                db.execSQL(SPEED_TABLE_CREATE);
+            }
         }
     }
 
@@ -850,11 +1119,11 @@ public class SQLiteAccessor implements SQLAccessor {
                 db.delete(BUNCH_TABLE_NAME, null, null);
                 db.delete(BUNCH_RECIPES_TABLE_NAME, null, null);
                 db.delete(LEARNER_TABLE_NAME, null, null);
+                db.delete(SPEED_TABLE_NAME, null, null);
                 db.setTransactionSuccessful();
             }
             finally {
                 db.endTransaction();
-                db.close();
             }
         } catch (Exception e) {
             throw new SQLException(e);
@@ -864,18 +1133,14 @@ public class SQLiteAccessor implements SQLAccessor {
     @Override
     public boolean containsRecipe(long id) throws SQLException {
         final SQLiteDatabase db = mHelper.getReadableDatabase();
+        // Query for up to 1 row with the matching ID
+        final Cursor result = db.query(true, RECIPE_TABLE_NAME,
+                new String[]{ RECIPE_COLUMNS[0] }, "id = ?", new String[]{ Long.toString(id) },
+                null, null, null, "1");
         try {
-            // Query for up to 1 row with the matching ID
-            final Cursor result = db.query(true, RECIPE_TABLE_NAME,
-                    new String[]{ RECIPE_COLUMNS[0] }, "id = ?", new String[]{ Long.toString(id) },
-                    null, null, null, "1");
-            try {
-                return result.getCount() != 0;
-            } finally {
-                result.close();
-            }
+            return result.getCount() != 0;
         } finally {
-            db.close();
+            result.close();
         }
     }
 }
@@ -20,74 +20,98 @@
 package org.cook_e.data;
 
 import android.support.annotation.NonNull;
-import android.util.Log;
-import java.util.ArrayList;
-import java.util.List;
+import android.support.annotation.Nullable;
+
+import org.joda.time.ReadableDuration;
+
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
 
 /**
  * A class that produces and manages a schedule for a Bunch.
+ *
+ * Steps are scheduled one at a time, when they are requested. Steps handed out to cook 0 are
+ * remembered by their plan indices so that {@link #getPrevStep()} can go back through them,
+ * and every step is handed out at most once, so the memory used does not grow with the number
+ * of steps requested.
  */
-public class Schedule {
-    private final List<ScheduledStep> mScheduledStepList;
-    private final List<UnscheduledRecipeSteps> mUnscheduledRecipeStepsList;
+public class Schedule implements Iterable<Step> {
+    // The plan indices of the steps handed out to cook 0, in order. Only the first
+    // mHistorySize elements are used.
+    private final int[] mHistory;
+    private int mHistorySize;
+    // The plan index of a step that has been scheduled for cook 0 by Iterator.hasNext()
+    // but not handed out yet, or -1
+    private int mPendingStep = -1;
+    // The steps and estimated durations this schedule is built from
+    private final MealPlan mPlan;
+    // Chooses steps, keeping track of which recipes are busy and which resources are in use
+    private final ListScheduler mScheduler;
+    // For each cook, the plan index of the non-simultaneous step the cook is doing,
+    // or -1 if the cook is not doing a non-simultaneous step
+    private final int[] mCookRunningSteps;
+    // For each cook, the plan index of the step the cook was last given, or -1
+    private final int[] mCookSteps;
     private final int mTotalStepCount;
     private int mCurrScheduledStepIndex = -1;
-    private TimeLearnerInterface timeLearner;
 
-    public final int mOriginalEstimatedTime;
-    public final int mOptimizedEstimatedTime;
+    // The estimated cooking times in minutes, or -1 if they have not been calculated yet
+    private int mOriginalEstimatedTime = -1;
+    private int mOptimizedEstimatedTime = -1;
+    // The planned timeline, or null if it has not been calculated yet
+    private Timeline mTimeline;
 
 
     /**
-     * Creates a schedule based on the given Bunch.
+     * Creates a schedule for one cook based on the given Bunch. Estimated cooking times are
+     * not calculated until they are first requested.
      *
      * @param b the Bunch to schedule steps from
      */
     public Schedule(@NonNull Bunch b, @NonNull TimeLearnerInterface timeLearner) {
-        this(b, timeLearner, true);
+        this(b, timeLearner, 1);
     }
 
     /**
-     * Creates a schedule based on the given Bunch. If the given boolean is true,
-     * then estimated times are calculated, otherwise they aren't. This private
-     * constructor with the additional boolean is necessary to avoid infinite
-     * recursive calls due to calculating estimed times.
+     * Creates a schedule based on the given Bunch that divides steps between several cooks.
+     * Each cook is identified by an index from 0 to cookCount - 1. Estimated cooking times are
+     * not calculated until they are first requested.
      *
      * @param b the Bunch to schedule steps from
-     * @param calculateEstimatedTimes whether or not estimated times should be calculated
+     * @param cookCount the number of cooks
+     * @throws IllegalArgumentException if cookCount is less than 1
      */
-    private Schedule(@NonNull Bunch b, @NonNull TimeLearnerInterface timeLearner, boolean calculateEstimatedTimes) {
-        if (b == null) {
-            throw new NullPointerException("Schedule given null bunch.");
-        }
-        if (timeLearner == null) {
-            throw new NullPointerException("Schedule given null timeLearner.");
-        }
+    public Schedule(@NonNull Bunch b, @NonNull TimeLearnerInterface timeLearner, int cookCount) {
+        this(createPlan(b, timeLearner), cookCount);
+    }
 
-        if (calculateEstimatedTimes) {
-            this.mOriginalEstimatedTime = CookingTimeEstimator.getOriginalTime(b);
-            this.mOptimizedEstimatedTime = CookingTimeEstimator.getOptimizedTime(
-                    new Schedule(b, timeLearner, false), timeLearner);
-        } else {
-            this.mOriginalEstimatedTime = -1;
-            this.mOptimizedEstimatedTime = -1;
+    /**
+     * Creates a schedule from a plan that divides steps between several cooks. No two steps
+     * that use the same resource are scheduled at once beyond the capacity that the plan allows.
+     *
+     * @param plan the plan to schedule steps from
+     * @param cookCount the number of cooks
+     * @throws IllegalArgumentException if cookCount is less than 1
+     */
+    public Schedule(@NonNull MealPlan plan, int cookCount) {
+        if (plan == null) {
+            throw new NullPointerException("Schedule given null plan.");
         }
-
-        this.timeLearner = timeLearner;
-        this.mScheduledStepList = new ArrayList<>();
-
-        int totalStepCount = 0;
-        List<Recipe> recipes = b.getRecipes();
-        for(Recipe recipe : recipes) {
-            totalStepCount += recipe.getSteps().size();
+        if (cookCount < 1) {
+            throw new IllegalArgumentException("Schedule needs at least one cook.");
         }
-        this.mTotalStepCount = totalStepCount;
 
-        // populate UnscheduledRecipeStepsList
-        this.mUnscheduledRecipeStepsList = new ArrayList<>();
-        for (Recipe r: recipes) {
-            if(r.getSteps().isEmpty()) continue;
-            this.mUnscheduledRecipeStepsList.add(new UnscheduledRecipeSteps(r));
+        this.mHistory = new int[plan.getStepCount()];
+        this.mPlan = plan;
+        this.mTotalStepCount = plan.getStepCount();
+        this.mScheduler = new ListScheduler(plan);
+
+        this.mCookRunningSteps = new int[cookCount];
+        this.mCookSteps = new int[cookCount];
+        for (int cook = 0; cook < cookCount; cook++) {
+            this.mCookRunningSteps[cook] = -1;
+            this.mCookSteps[cook] = -1;
         }
     }
 
@@ -99,8 +123,8 @@ public class Schedule {
      */
     public Recipe getCurrentStepRecipe() {
         Recipe currRecipe = null;
-        if (mCurrScheduledStepIndex >= 0 && mCurrScheduledStepIndex < mScheduledStepList.size())
-            currRecipe = this.mScheduledStepList.get(this.mCurrScheduledStepIndex).motherRecipe;
+        if (mCurrScheduledStepIndex >= 0 && mCurrScheduledStepIndex < mHistorySize)
+            currRecipe = getRecipe(mHistory[mCurrScheduledStepIndex]);
         return currRecipe;
     }
 
@@ -115,24 +139,111 @@ public class Schedule {
      * or no other steps can be scheduled, then null is returned.
      */
     public Step getNextStep() {
-        Step nextStep = null;
-        if (this.mCurrScheduledStepIndex < this.mScheduledStepList.size() - 1) {
-            // handles the case where the next step has already
-            // been scheduled
-            this.mCurrScheduledStepIndex++;
-            nextStep = this.mScheduledStepList.get(this.mCurrScheduledStepIndex).step;
-        } else if (this.mCurrScheduledStepIndex == this.mScheduledStepList.size() -1 &&
-                this.mUnscheduledRecipeStepsList.size() > 0) {
-            // handles the case where the next step hasn't been
-            // scheduled yet
-            ScheduledStep nextScheduledStep = getNextScheduledStep(this.mUnscheduledRecipeStepsList);
-            if (nextScheduledStep != null) {
-                this.mCurrScheduledStepIndex++;
-                this.mScheduledStepList.add(nextScheduledStep);
-                nextStep = nextScheduledStep.step;
-            }
+        if (!hasNextStep()) {
+            return null;
+        }
+        if (this.mCurrScheduledStepIndex == this.mHistorySize - 1) {
+            // Hand out the step that has just been scheduled
+            this.mHistory[this.mHistorySize++] = this.mPendingStep;
+            this.mPendingStep = -1;
         }
-        return nextStep;
+        this.mCurrScheduledStepIndex++;
+        return mPlan.getStep(this.mHistory[this.mCurrScheduledStepIndex]);
+    }
+
+    /**
+     * Returns an iterator over the steps for cook 0, starting after the current step. The
+     * iterator shares its position with {@link #getNextStep()} and {@link #getPrevStep()}:
+     * calling {@link Iterator#next()} is the same as calling {@link #getNextStep()}.
+     *
+     * Steps are scheduled lazily. When the current step is the last one visited,
+     * {@link Iterator#hasNext()} schedules the next step, which marks the current step as
+     * completed in the same way as {@link #getNextStep()}. Because the next step may not be
+     * ready until a simultaneous step finishes, {@link Iterator#hasNext()} can return false
+     * and later return true again.
+     *
+     * The iterator does not support {@link Iterator#remove()}.
+     *
+     * @return an iterator over the upcoming steps
+     */
+    @NonNull
+    @Override
+    public Iterator<Step> iterator() {
+        return new Iterator<Step>() {
+            @Override
+            public boolean hasNext() {
+                return hasNextStep();
+            }
+
+            @Override
+            public Step next() {
+                final Step step = getNextStep();
+                if (step == null) {
+                    throw new NoSuchElementException("No step is ready");
+                }
+                return step;
+            }
+
+            @Override
+            public void remove() {
+                throw new UnsupportedOperationException("Steps cannot be removed");
+            }
+        };
+    }
+
+    /**
+     * Returns the next step for a cook. Calling this function implies that the step the cook
+     * was last given has been completed if it is a non-simultaneous task. If it is a
+     * simultaneous task, then it is the callers job to call finishSimultaneousStepFromRecipe
+     * when it has been completed.
+     *
+     * A step is never given out before the steps it depends on have finished, but two cooks may
+     * be given independent steps of the same recipe. Steps returned by this function are not
+     * part of the history navigated by {@link #getNextStep()} and {@link #getPrevStep()},
+     * which schedule steps for cook 0.
+     *
+     * @param cook the index of the cook
+     * @return the next step for the cook, or null if no step is ready for the cook to do now
+     * @throws IndexOutOfBoundsException if cook is not a valid cook index
+     */
+    public Step getNextStep(int cook) {
+        checkCook(cook);
+        final int nextStep = getNextScheduledStep(cook);
+        mCookSteps[cook] = nextStep;
+        return nextStep != -1 ? mPlan.getStep(nextStep) : null;
+    }
+
+    /**
+     * Returns the step that a cook was last given by {@link #getNextStep(int)}, or null
+     * if the cook has not been given a step or no step was ready the last time.
+     *
+     * @param cook the index of the cook
+     * @return the current step of the cook
+     * @throws IndexOutOfBoundsException if cook is not a valid cook index
+     */
+    public Step getCurrStep(int cook) {
+        checkCook(cook);
+        return mCookSteps[cook] != -1 ? mPlan.getStep(mCookSteps[cook]) : null;
+    }
+
+    /**
+     * Returns the recipe that contains the step that a cook was last given by
+     * {@link #getNextStep(int)}, or null if the cook has no current step.
+     *
+     * @param cook the index of the cook
+     * @return the recipe the current step of the cook belongs to
+     * @throws IndexOutOfBoundsException if cook is not a valid cook index
+     */
+    public Recipe getCurrentStepRecipe(int cook) {
+        checkCook(cook);
+        return mCookSteps[cook] != -1 ? getRecipe(mCookSteps[cook]) : null;
+    }
+
+    /**
+     * @return the number of cooks that steps are divided between
+     */
+    public int getCookCount() {
+        return mCookRunningSteps.length;
     }
 
     /**
@@ -143,8 +254,8 @@ public class Schedule {
      */
     public Step getCurrStep() {
         Step currStep = null;
-        if (mCurrScheduledStepIndex >= 0 && mCurrScheduledStepIndex < mScheduledStepList.size())
-            currStep = mScheduledStepList.get(mCurrScheduledStepIndex).step;
+        if (mCurrScheduledStepIndex >= 0 && mCurrScheduledStepIndex < mHistorySize)
+            currStep = mPlan.getStep(mHistory[mCurrScheduledStepIndex]);
         return currStep;
     }
 
@@ -158,7 +269,7 @@ public class Schedule {
         Step prevStep = null;
         if (this.mCurrScheduledStepIndex > 0) {
             this.mCurrScheduledStepIndex--;
-            prevStep = this.mScheduledStepList.get(this.mCurrScheduledStepIndex).step;
+            prevStep = mPlan.getStep(this.mHistory[this.mCurrScheduledStepIndex]);
         }
         return prevStep;
     }
@@ -170,16 +281,88 @@ public class Schedule {
      * how hard it would be for the caller to know if the particular recipe has
      * has any unscheduled steps left.
      *
+     * If the Bunch contains several equal recipes, the first one with a simultaneous step
+     * in progress is used.
+     *
      * @param recipe the recipe the finished simultaneous step is associated with
      */
     public void finishSimultaneousStepFromRecipe(Recipe recipe) {
-        UnscheduledRecipeSteps matchingRecipeSteps = null;
-        for (UnscheduledRecipeSteps currUnscheduledRecipeSteps : mUnscheduledRecipeStepsList) {
-            if (currUnscheduledRecipeSteps.motherRecipe.equals(recipe)) {
-                currUnscheduledRecipeSteps.setReady();
-                return;
+        finishSimultaneousStep(recipe, null);
+    }
+
+    /**
+     * Indicates that a simultaneous step from a recipe has been completed. Use this instead of
+     * {@link #finishSimultaneousStepFromRecipe(Recipe)} when a recipe can have several
+     * simultaneous steps running at once. If no matching running step is found, then the function
+     * silently does nothing.
+     *
+     * @param recipe the recipe that contains the step
+     * @param step the finished step, or null to finish the first running simultaneous step
+     *             of the recipe
+     */
+    public void finishSimultaneousStep(Recipe recipe, @Nullable Step step) {
+        for (int r : mPlan.findRecipe(recipe)) {
+            for (int i = mPlan.getRecipeStart(r); i < mPlan.getRecipeEnd(r); i++) {
+                if (mScheduler.isRunning(i) && mPlan.isSimultaneous(i)
+                        && (step == null || step.equals(mPlan.getStep(i)))) {
+                    mScheduler.finishStep(i);
+                    return;
+                }
+            }
+        }
+    }
+
+    /**
+     * Reorders the steps that have not been handed out yet, based on how cooking has actually
+     * gone so far. Steps that have already been handed out, and the history navigated by
+     * {@link #getPrevStep()}, are not changed.
+     *
+     * Each running step is assumed to end after its estimated duration minus its observed
+     * elapsed time, or right away if it has taken longer than estimated. Running steps that
+     * have no observed time are assumed to have just started.
+     *
+     * Only plans whose recipes are done one step at a time in order can be reordered. Other
+     * plans are left unchanged.
+     *
+     * @param elapsedTimes the observed elapsed time of each running step, including each cook's
+     *                     current step and each running timer, keyed by recipe
+     * @param budgetMillis the maximum time to search for a better ordering, in milliseconds
+     * @throws IllegalArgumentException if budgetMillis is negative
+     */
+    public void reschedule(@NonNull Map<Recipe, ? extends ReadableDuration> elapsedTimes,
+                           long budgetMillis) {
+        if (budgetMillis < 0) {
+            throw new IllegalArgumentException("budgetMillis must not be negative");
+        }
+        if (!mPlan.isSequential()) {
+            return;
+        }
+        final int recipeCount = mPlan.getRecipeCount();
+        final long[] elapsedMillis = new long[recipeCount];
+        for (Map.Entry<Recipe, ? extends ReadableDuration> entry : elapsedTimes.entrySet()) {
+            for (int r : mPlan.findRecipe(entry.getKey())) {
+                if (mScheduler.getRunningStep(r) != -1) {
+                    elapsedMillis[r] = entry.getValue().getMillis();
+                    break;
+                }
             }
         }
+
+        final int[] nextSteps = new int[recipeCount];
+        final long[] remainingTimes = new long[recipeCount];
+        for (int r = 0; r < recipeCount; r++) {
+            nextSteps[r] = mScheduler.getNextStep(r);
+            final int runningStep = mScheduler.getRunningStep(r);
+            remainingTimes[r] = runningStep == -1 ? -1
+                    : Math.max(0, mPlan.getDuration(runningStep) - elapsedMillis[r]);
+        }
+        // The estimates are for the original ordering, so the plan itself is not replaced
+        final MealPlan currentPlan = mScheduler.getPlan();
+        final MealPlan plan = ScheduleOptimizer.reoptimize(currentPlan, getCookCount(), nextSteps,
+                remainingTimes, budgetMillis);
+        if (plan != currentPlan) {
+            mScheduler.setPlan(plan);
+        }
     }
 
     /**
@@ -218,163 +401,149 @@ public class Schedule {
      * @return the largest index that has been visited
      */
     public int getMaxVisitedStepIndex() {
-        return mScheduledStepList.size() - 1;
+        return mHistorySize - 1;
     }
 
     /**
-     * Removes and returns the step to schedule for shortest cooking time.
-     * If no step is ready, then null is returned.
-
-     * @param unscheduledRecipeStepsList the unscheduled recipe steps to pick a next step from
-     * @return the next step to schedule for shortest cooking time
+     * Returns the estimated time in minutes it would take to cook the recipes one after
+     * another, without interleaving any steps. The estimate is calculated on the first call.
+     *
+     * @return the estimated unoptimized cooking time, in minutes
      */
-    private ScheduledStep getNextScheduledStep(List<UnscheduledRecipeSteps> unscheduledRecipeStepsList) {
-
-        // Finds the recipe with the longest time from the first simultaneous step
-        // to the last step that is ready.
-        int chosenIndex = -1;
-        int maxSimultaneousToEndTime = -1;
-        for (int i = 0; i < unscheduledRecipeStepsList.size(); i++) {
-            UnscheduledRecipeSteps currSteps = unscheduledRecipeStepsList.get(i);
-            if (currSteps.isReady()) {
-                // if the recipe is ready, then check if it is the new best choice
-                // and update accordingly
-                int currSimultaneousToEndTime = currSteps.getSimultaneousToEndTime();
-                if (currSimultaneousToEndTime > maxSimultaneousToEndTime) {
-                    chosenIndex = i;
-                    maxSimultaneousToEndTime = currSimultaneousToEndTime;
-                }
-            }
+    public int getOriginalEstimatedTime() {
+        if (mOriginalEstimatedTime == -1) {
+            mOriginalEstimatedTime = CookingTimeEstimator.getOriginalTime(mPlan);
         }
+        return mOriginalEstimatedTime;
+    }
 
-        ScheduledStep nextScheduledStep = null;
-        if (chosenIndex != -1) {
-            // Handles case where one or more recipes were ready by removing and
-            // returning the chosen step.
-            Step nextStep = unscheduledRecipeStepsList.get(chosenIndex).removeNextStep();
-            Recipe motherRecipe = unscheduledRecipeStepsList.get(chosenIndex).motherRecipe;
-            nextScheduledStep = new ScheduledStep(nextStep, motherRecipe);
-
-            Log.d("Schedule", "chosenIndex = " + chosenIndex + ", unscheduled steps = " + unscheduledRecipeStepsList);
-            if (unscheduledRecipeStepsList.get(chosenIndex).isEmpty()) {
-                Log.d("Schedule", "chosenIndex = " + chosenIndex + ", unscheduled steps = " + unscheduledRecipeStepsList);
-                unscheduledRecipeStepsList.remove(chosenIndex);
-            }
+    /**
+     * Returns the estimated time in minutes it would take the cooks of this schedule to cook
+     * the recipes by following it. The estimate is calculated on the first call, and does not
+     * depend on how far the schedule has been followed.
+     *
+     * @return the estimated optimized cooking time, in minutes
+     */
+    public int getOptimizedEstimatedTime() {
+        if (mOptimizedEstimatedTime == -1) {
+            mOptimizedEstimatedTime = CookingTimeEstimator.getOptimizedTime(mPlan, getCookCount());
         }
-        return nextScheduledStep;
+        return mOptimizedEstimatedTime;
     }
 
     /**
-     * A private helper class used in the process of generating
-     * the schedule.
+     * Returns the estimated time in minutes it would take a number of cooks to cook the recipes
+     * of this schedule, interleaving steps in the same way as this schedule would. This can be
+     * used to find out how much time extra helpers would save.
+     *
+     * @param cookCount the number of cooks
+     * @return the estimated optimized cooking time, in minutes
+     * @throws IllegalArgumentException if cookCount is less than 1
      */
-    private class UnscheduledRecipeSteps {
-        // The list of unscheduled finalSteps.
-        private final List<Step> steps;
-        // The time in seconds from the first simultaneous step to the end of the last step.
-        private int simultaneousToEndTime;
-        // Whether or not the recipe is ready or not. A recipes isn't
-        // ready if a simultaneous step is in progress.
-        private boolean isReady;
-
-        public final Recipe motherRecipe;
-
-
-        /**
-         * Creates an UnscheduledRecipeSteps object based on the given Recipe.
-         *
-         * @param r the Recipe to get steps from
-         */
-        public UnscheduledRecipeSteps(Recipe r) {
-            this.steps = r.getSteps();
-            this.isReady = true;
-            this.motherRecipe = r;
-
-            // initializes simultaneousToEndTime
-            this.simultaneousToEndTime = 0;
-            boolean simultaneousSeen = false;
-            for (Step currStep : this.steps) {
-                if (simultaneousSeen) {
-                    this.simultaneousToEndTime += timeLearner.getEstimatedTime(this.motherRecipe, currStep).getStandardSeconds();
-                } else if (currStep.isSimultaneous()) {
-                    simultaneousSeen = true;
-                    this.simultaneousToEndTime = (int)timeLearner.getEstimatedTime(this.motherRecipe, currStep).getStandardSeconds();
-                }
-            }
+    public int getOptimizedEstimatedTime(int cookCount) {
+        if (cookCount == getCookCount()) {
+            return getOptimizedEstimatedTime();
         }
+        return CookingTimeEstimator.getOptimizedTime(mPlan, cookCount);
+    }
 
-        /**
-         * Returns the time in seconds from the first simultaneous step to the end of the last step.
-         *
-         * @return time in seconds from the first simultaneous step to the end of the last step.
-         */
-        public int getSimultaneousToEndTime() {
-            return simultaneousToEndTime;
+    /**
+     * Returns the planned start and end time of every step, for the cooks of this schedule.
+     * The timeline is calculated on the first call, and does not depend on how far the
+     * schedule has been followed or on rescheduling.
+     *
+     * @return the timeline
+     */
+    @NonNull
+    public Timeline getTimeline() {
+        if (mTimeline == null) {
+            mTimeline = new Timeline(mPlan, getCookCount());
         }
+        return mTimeline;
+    }
 
-        /**
-         * Removes and returns the next step from the unscheduled steps. If there are no
-         * steps left, then null is returned.
-         *
-         * @return the next step if there are any ready ones left, otherwise null
-         */
-        public Step removeNextStep() {
-            if (this.isEmpty() || !this.isReady()) {
-                return null;
-            }
-
-            Step nextStep = this.steps.remove(0);
-            if (nextStep.isSimultaneous()) {
-                this.isReady = false;
-                this.simultaneousToEndTime -= timeLearner.getEstimatedTime(this.motherRecipe, nextStep).getStandardSeconds();
-                for (Step currStep : this.steps) {
-                    if (currStep.isSimultaneous()) {
-                        break;
-                    }
-                    this.simultaneousToEndTime -= timeLearner.getEstimatedTime(this.motherRecipe, currStep).getStandardSeconds();
-                }
-            }
-            return nextStep;
-        }
+    /**
+     * Returns the plan that this schedule was built from
+     *
+     * @return the plan
+     */
+    @NonNull
+    MealPlan getPlan() {
+        return mPlan;
+    }
 
-        /**
-         * Returns true if the previously removed step has been completed
-         * and the next steps are ready.
-         *
-         * @return true if the next steps are ready to be done
-         */
-        public boolean isReady() {
-            return this.isReady;
+    /**
+     * Checks whether {@link #getNextStep()} would return a step, scheduling the next step for
+     * cook 0 if the current step is the last one visited. A scheduled step is kept in
+     * mPendingStep until it is handed out.
+     *
+     * @return true if there is a next step for cook 0
+     */
+    private boolean hasNextStep() {
+        if (mCurrScheduledStepIndex < mHistorySize - 1 || mPendingStep != -1) {
+            return true;
         }
-
-        /**
-         * Sets the next steps as ready to be completed.
-         */
-        public void setReady() {
-            this.isReady = true;
+        if (mScheduler.getUnstartedStepCount() == 0) {
+            return false;
         }
+        mPendingStep = getNextScheduledStep(0);
+        return mPendingStep != -1;
+    }
 
-        /**
-         * Returns if there are any unscheduled steps left.
-         *
-         * @return true if there are unscheduled steps left, false otherwise
-         */
-        public boolean isEmpty() {
-            return this.steps.isEmpty();
-        }
+    /**
+     * Returns the recipe that contains a step
+     *
+     * @param step the plan index of the step
+     * @return the recipe
+     */
+    @NonNull
+    private Recipe getRecipe(int step) {
+        return mPlan.getRecipe(mPlan.getStepRecipe(step));
     }
 
     /**
-     * A private helper class used to keep steps associated with
-     * their recipes.
+     * Marks the non-simultaneous step that a cook was doing as completed, then starts and
+     * returns the step for the cook to do next for shortest cooking time.
+     * If no step is ready, then -1 is returned.
+     *
+     * The ready step with the longest time from the next simultaneous step
+     * to the end of its recipe is chosen, skipping steps that need equipment that
+     * is in use. Ties go to the step that appears first in the Bunch.
+     *
+     * @param cook the index of the cook
+     * @return the plan index of the next step to schedule for shortest cooking time
      */
-    private class ScheduledStep {
-        public final Step step;
-        public final Recipe motherRecipe;
+    private int getNextScheduledStep(int cook) {
+        final int finishedStep = mCookRunningSteps[cook];
+        if (finishedStep != -1) {
+            mCookRunningSteps[cook] = -1;
+            mScheduler.finishStep(finishedStep);
+        }
+        final int chosenStep = mScheduler.startNextStep();
+        if (chosenStep == -1) {
+            return -1;
+        }
+        if (!mPlan.isSimultaneous(chosenStep)) {
+            // The step is running until the cook asks for another step
+            mCookRunningSteps[cook] = chosenStep;
+        }
+        return chosenStep;
+    }
+
+    @NonNull
+    private static MealPlan createPlan(Bunch b, TimeLearnerInterface timeLearner) {
+        if (b == null) {
+            throw new NullPointerException("Schedule given null bunch.");
+        }
+        if (timeLearner == null) {
+            throw new NullPointerException("Schedule given null timeLearner.");
+        }
+        return new MealPlan(b, timeLearner);
+    }
 
-        public ScheduledStep(@NonNull Step s, @NonNull Recipe r) {
-            this.step = s;
-            this.motherRecipe = r;
+    private void checkCook(int cook) {
+        if (cook < 0 || cook >= mCookRunningSteps.length) {
+            throw new IndexOutOfBoundsException("Cook index " + cook + " out of range");
         }
     }
 }
@@ -0,0 +1,309 @@
+/*
+ * Copyright 2016 the Cook-E development team
+ *
+ * This file is part of Cook-E.
+ *
+ * Cook-E is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Cook-E is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Cook-E.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.cook_e.data;
+
+import android.support.annotation.NonNull;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A process-wide cache of optimized plans, so that a meal that has already been scheduled can be
+ * opened again without searching for a step ordering again.
+ *
+ * Plans are keyed by a fingerprint of the recipes and steps of a Bunch and the number of cooks.
+ * Each plan keeps a copy of the recipes it was made for, and a plan is only used for a bunch whose
+ * recipes are equal to them. Changing a recipe or its learner data through
+ * {@link StorageAccessor} invalidates the plans that contain the recipe. Changing speed factors
+ * invalidates the plans that estimated some step with the {@link CookSpeed}. When the cache is
+ * full, the least recently used plan is evicted.
+ *
+ * This class is thread-safe.
+ */
+public final class ScheduleCache {
+
+    /**
+     * The number of plans kept by the process-wide cache
+     */
+    private static final int DEFAULT_CAPACITY = 16;
+
+    /**
+     * The process-wide cache
+     */
+    private static final ScheduleCache INSTANCE = new ScheduleCache(DEFAULT_CAPACITY);
+
+    /**
+     * The cached plans, in order from least to most recently used
+     */
+    @NonNull
+    private final LinkedHashMap<Key, Entry> mPlans;
+
+    /**
+     * The number of times that plans have been invalidated
+     */
+    private long mInvalidationCount;
+
+    /**
+     * Creates an empty cache
+     * @param capacity the maximum number of plans to keep
+     * @throws IllegalArgumentException if capacity is less than 1
+     */
+    public ScheduleCache(final int capacity) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("capacity must be at least 1");
+        }
+        mPlans = new LinkedHashMap<Key, Entry>(capacity, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Key, Entry> eldest) {
+                return size() > capacity;
+            }
+        };
+    }
+
+    /**
+     * @return the process-wide cache
+     */
+    @NonNull
+    public static ScheduleCache getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * Returns the optimized plan for a bunch, searching for one if it is not cached
+     * @param bunch the bunch to plan
+     * @param timeLearner the time learner used to estimate step durations if the plan is not
+     *                    cached
+     * @param cookCount the number of cooks
+     * @param budgetMillis the maximum time to search for a step ordering if the plan is not
+     *                     cached, in milliseconds
+     * @return the plan
+     */
+    @NonNull
+    public MealPlan getPlan(@NonNull Bunch bunch, @NonNull TimeLearnerInterface timeLearner,
+                            int cookCount, long budgetMillis) {
+        final Key key = new Key(getFingerprint(bunch), cookCount);
+        final long invalidationCount;
+        synchronized (this) {
+            invalidationCount = mInvalidationCount;
+            final Entry cached = mPlans.get(key);
+            if (cached != null && cached.isFor(bunch)) {
+                return cached.mPlan;
+            }
+        }
+        // Search without holding the lock, so that other meals can be looked up meanwhile
+        final MealPlan plan = CookingTimeEstimator.getBestPlan(new MealPlan(bunch, timeLearner),
+                cookCount, budgetMillis);
+        final Entry entry = new Entry(bunch, plan, usesCookSpeed(bunch, timeLearner));
+        synchronized (this) {
+            // Do not cache a plan estimated from learner data that may have changed since
+            if (invalidationCount == mInvalidationCount) {
+                mPlans.put(key, entry);
+            }
+        }
+        return plan;
+    }
+
+    /**
+     * Removes every cached plan. This must be called when all learner data changes.
+     */
+    public synchronized void invalidate() {
+        mInvalidationCount++;
+        mPlans.clear();
+    }
+
+    /**
+     * Removes the cached plans that contain a recipe. This must be called when the recipe or
+     * its learner data changes.
+     * @param recipeId the ID of the recipe
+     */
+    public synchronized void invalidateRecipe(long recipeId) {
+        mInvalidationCount++;
+        final Iterator<Entry> iterator = mPlans.values().iterator();
+        while (iterator.hasNext()) {
+            if (iterator.next().containsRecipe(recipeId)) {
+                iterator.remove();
+            }
+        }
+    }
+
+    /**
+     * Removes the cached plans that estimated some step with the {@link CookSpeed}. This must be
+     * called when speed factors change.
+     */
+    public synchronized void invalidateCookSpeed() {
+        mInvalidationCount++;
+        final Iterator<Entry> iterator = mPlans.values().iterator();
+        while (iterator.hasNext()) {
+            if (iterator.next().mUsesCookSpeed) {
+                iterator.remove();
+            }
+        }
+    }
+
+    /**
+     * @return the number of cached plans
+     */
+    public synchronized int size() {
+        return mPlans.size();
+    }
+
+    /**
+     * Calculates a fingerprint of the recipes of a bunch and the scheduling-related
+     * content of their steps. Equal bunches have equal fingerprints.
+     *
+     * @param bunch the bunch
+     * @return the fingerprint
+     */
+    public static long getFingerprint(@NonNull Bunch bunch) {
+        long hash = FnvHash.OFFSET_BASIS;
+        final List<Recipe> recipes = bunch.getRecipes();
+        hash = FnvHash.hashLong(hash, recipes.size());
+        for (Recipe recipe : recipes) {
+            hash = FnvHash.hashLong(hash, recipe.getObjectId());
+            hash = FnvHash.hashString(hash, recipe.getTitle());
+            hash = FnvHash.hashString(hash, recipe.getAuthor());
+            final List<Step> steps = recipe.getSteps();
+            hash = FnvHash.hashLong(hash, steps.size());
+            for (Step step : steps) {
+                hash = FnvHash.hashString(hash, step.getDescription());
+                hash = FnvHash.hashLong(hash, step.getTime().getMillis());
+                hash = FnvHash.hashLong(hash, step.isSimultaneous() ? 1 : 0);
+                hash = FnvHash.hashLong(hash, step.getIndex());
+                final List<String> resources = step.getResources();
+                hash = FnvHash.hashLong(hash, resources.size());
+                for (String resource : resources) {
+                    hash = FnvHash.hashString(hash, resource);
+                }
+                final List<Integer> dependencies = step.getDependencies();
+                if (dependencies == null) {
+                    hash = FnvHash.hashLong(hash, -1);
+                } else {
+                    hash = FnvHash.hashLong(hash, dependencies.size());
+                    for (int dependency : dependencies) {
+                        hash = FnvHash.hashLong(hash, dependency);
+                    }
+                }
+            }
+        }
+        return hash;
+    }
+
+    /**
+     * @return true if the time learner estimates some step of a bunch with the cook speed
+     */
+    private static boolean usesCookSpeed(@NonNull Bunch bunch,
+                                         @NonNull TimeLearnerInterface timeLearner) {
+        for (Recipe recipe : bunch.getRecipes()) {
+            for (Step step : recipe.getSteps()) {
+                if (timeLearner.usesCookSpeed(recipe, step)) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * A cache key
+     */
+    private static final class Key {
+        private final long mFingerprint;
+        private final int mCookCount;
+
+        Key(long fingerprint, int cookCount) {
+            mFingerprint = fingerprint;
+            mCookCount = cookCount;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (o == null || getClass() != o.getClass()) return false;
+            final Key key = (Key) o;
+            return mFingerprint == key.mFingerprint && mCookCount == key.mCookCount;
+        }
+
+        @Override
+        public int hashCode() {
+            int result = (int) (mFingerprint ^ (mFingerprint >>> 32));
+            result = 31 * result + mCookCount;
+            return result;
+        }
+    }
+
+    /**
+     * A cached plan and the recipes that it was made for
+     */
+    private static final class Entry {
+        /**
+         * Copies of the recipes, so that later changes to the bunch do not affect them
+         */
+        @NonNull
+        private final List<Recipe> mRecipes;
+        /**
+         * The ID of each recipe, which Recipe.equals() does not compare
+         */
+        @NonNull
+        private final long[] mRecipeIds;
+        @NonNull
+        private final MealPlan mPlan;
+        private final boolean mUsesCookSpeed;
+
+        Entry(@NonNull Bunch bunch, @NonNull MealPlan plan, boolean usesCookSpeed) {
+            final List<Recipe> recipes = bunch.getRecipes();
+            mRecipes = new ArrayList<>(recipes.size());
+            mRecipeIds = new long[recipes.size()];
+            for (int i = 0; i < mRecipeIds.length; i++) {
+                mRecipes.add(new Recipe(recipes.get(i)));
+                mRecipeIds[i] = recipes.get(i).getObjectId();
+            }
+            mPlan = plan;
+            mUsesCookSpeed = usesCookSpeed;
+        }
+
+        /**
+         * @return true if this plan was made for the recipes of a bunch
+         */
+        boolean isFor(@NonNull Bunch bunch) {
+            final List<Recipe> recipes = bunch.getRecipes();
+            if (recipes.size() != mRecipeIds.length) {
+                return false;
+            }
+            for (int i = 0; i < mRecipeIds.length; i++) {
+                if (recipes.get(i).getObjectId() != mRecipeIds[i]) {
+                    return false;
+                }
+            }
+            return mRecipes.equals(recipes);
+        }
+
+        boolean containsRecipe(long recipeId) {
+            for (long id : mRecipeIds) {
+                if (id == recipeId) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+}
@@ -0,0 +1,485 @@
+/*
+ * Copyright 2016 the Cook-E development team
+ *
+ * This file is part of Cook-E.
+ *
+ * Cook-E is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Cook-E is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Cook-E.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.cook_e.data;
+
+import android.support.annotation.NonNull;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Searches for orderings of steps that finish a meal sooner than the greedy
+ * longest-simultaneous-to-end-first rule that {@link Schedule} uses by default.
+ *
+ * The search is a depth-first branch-and-bound over the choices a {@link Schedule} makes:
+ * whenever a cook is free, which ready step to start. A branch is abandoned when a lower bound
+ * on its finishing time is no better than the best ordering found so far. The bound is the
+ * largest of the remaining critical path of each recipe, the remaining work of the cooks, and
+ * the remaining use of each piece of equipment.
+ *
+ * The search starts from the greedy ordering and stops when its time budget runs out, so the
+ * result is never worse than the greedy ordering.
+ *
+ * The search assumes that the steps of each recipe are done one at a time in order. Plans with
+ * other {@link Step#getDependencies() step dependencies} are not searched and keep the greedy
+ * ordering.
+ */
+public final class ScheduleOptimizer {
+
+    /**
+     * A time budget short enough to search before showing a schedule
+     */
+    public static final long DEFAULT_BUDGET_MILLIS = 50;
+
+    /**
+     * The number of search nodes visited between checks of the time budget
+     */
+    private static final int NODES_PER_TIME_CHECK = 256;
+
+    private ScheduleOptimizer() {}
+
+    /**
+     * Searches for the ordering of the steps of a plan that finishes soonest. The best
+     * ordering found is returned as a plan with step priorities that make a {@link Schedule}
+     * and {@link CookingTimeEstimator} follow it.
+     *
+     * @param plan the plan to optimize
+     * @param cookCount the number of cooks
+     * @param budgetMillis the maximum time to search, in milliseconds
+     * @return a plan that finishes no later than the given plan
+     * @throws IllegalArgumentException if cookCount is less than 1 or budgetMillis is negative
+     */
+    @NonNull
+    public static MealPlan optimize(@NonNull MealPlan plan, int cookCount, long budgetMillis) {
+        Objects.requireNonNull(plan, "plan must not be null");
+        if (cookCount < 1) {
+            throw new IllegalArgumentException("cookCount must be at least 1");
+        }
+        if (budgetMillis < 0) {
+            throw new IllegalArgumentException("budgetMillis must not be negative");
+        }
+        if (!plan.isSequential()) {
+            // The search assumes that the steps of each recipe are done one at a time in order
+            return plan;
+        }
+        final long greedyTime = CookingTimeEstimator.getOptimizedDuration(plan, cookCount)
+                .getMillis();
+        final Search search = new Search(new State(plan, cookCount), cookCount, greedyTime,
+                budgetMillis);
+        search.run();
+        if (search.mBestOrder == null) {
+            return plan;
+        }
+        final MealPlan optimized = plan.withPriorities(search.getPriorities());
+        // Only use the ordering if following it is really faster
+        final long optimizedTime = CookingTimeEstimator.getOptimizedDuration(optimized, cookCount)
+                .getMillis();
+        return optimizedTime < greedyTime ? optimized : plan;
+    }
+
+    /**
+     * Searches for the best ordering of the steps of a plan that have not been started yet,
+     * partway through cooking it. Only the order of the unstarted steps is changed.
+     *
+     * @param plan the plan being cooked
+     * @param cookCount the number of cooks
+     * @param nextSteps for each recipe, the plan index of its next step that has not been started
+     * @param remainingTimes for each recipe, the time in milliseconds until its running step
+     *                       ends, or -1 if it has no running step
+     * @param budgetMillis the maximum time to search, in milliseconds
+     * @return a plan with priorities that give the best ordering found of the unstarted steps,
+     * or the given plan if the search ran out of time before finding any ordering
+     */
+    @NonNull
+    static MealPlan reoptimize(@NonNull MealPlan plan, int cookCount, @NonNull int[] nextSteps,
+                               @NonNull long[] remainingTimes, long budgetMillis) {
+        if (!plan.isSequential()) {
+            return plan;
+        }
+        // The first ordering tried is the current one, so there is no need to simulate it first
+        final Search search = new Search(new State(plan, cookCount, nextSteps, remainingTimes),
+                cookCount, Long.MAX_VALUE, budgetMillis);
+        search.run();
+        if (search.mBestOrder == null) {
+            return plan;
+        }
+        return plan.withPriorities(search.getPriorities());
+    }
+
+    /**
+     * The state of one branch-and-bound search
+     */
+    private static final class Search {
+        private final MealPlan mPlan;
+        private final State mStart;
+        private final int mCookCount;
+        private final long mDeadline;
+        /**
+         * For each step, the total duration of it and the later steps of its recipe
+         */
+        private final long[] mTimeToEnd;
+        /**
+         * The order in which steps have been started in the current branch
+         */
+        private final int[] mOrder;
+        /**
+         * The finishing time of the best ordering found
+         */
+        private long mBestTime;
+        /**
+         * The best ordering found, or null if none is better than the initial best time
+         */
+        private int[] mBestOrder;
+        private int mNodeCount;
+        private boolean mTimedOut;
+
+        /**
+         * Creates a search
+         * @param start the state to search from
+         * @param cookCount the number of cooks
+         * @param bestTime only orderings that finish before this time are accepted
+         * @param budgetMillis the maximum time to search, in milliseconds
+         */
+        Search(State start, int cookCount, long bestTime, long budgetMillis) {
+            final MealPlan plan = start.mPlan;
+            mPlan = plan;
+            mStart = start;
+            mCookCount = cookCount;
+            mDeadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(budgetMillis);
+            mBestTime = bestTime;
+            mOrder = new int[start.mUnstartedCount];
+            mTimeToEnd = new long[plan.getStepCount()];
+            for (int r = 0; r < plan.getRecipeCount(); r++) {
+                long timeToEnd = 0;
+                for (int i = plan.getRecipeEnd(r) - 1; i >= plan.getRecipeStart(r); i--) {
+                    timeToEnd += plan.getDuration(i);
+                    mTimeToEnd[i] = timeToEnd;
+                }
+            }
+        }
+
+        void run() {
+            search(mStart, -1, -1);
+        }
+
+        /**
+         * @return priorities that make a scheduler start steps in the best order found, with
+         * earlier steps having higher priorities
+         */
+        long[] getPriorities() {
+            final long[] priorities = new long[mPlan.getStepCount()];
+            for (int i = 0; i < mBestOrder.length; i++) {
+                priorities[mBestOrder[i]] = mBestOrder.length - i;
+            }
+            return priorities;
+        }
+
+        /**
+         * Explores every ordering that continues from a state.
+         *
+         * Starting the same steps at the same time in a different order has the same result, so
+         * steps started at the same time are only tried in increasing recipe order. Simultaneous
+         * and non-simultaneous steps are ordered separately, because only non-simultaneous steps
+         * take up a cook.
+         *
+         * @param state the state, which may be modified
+         * @param lastRecipe the recipe of the non-simultaneous step started most recently at the
+         *                   current time, or -1
+         * @param lastSimultaneousRecipe the recipe of the simultaneous step started most recently
+         *                               at the current time, or -1
+         */
+        private void search(State state, int lastRecipe, int lastSimultaneousRecipe) {
+            if (mNodeCount++ % NODES_PER_TIME_CHECK == 0 && System.nanoTime() >= mDeadline) {
+                mTimedOut = true;
+            }
+            if (mTimedOut) {
+                return;
+            }
+
+            // Move forward in time until a step can be started
+            int[] candidates = null;
+            while (candidates == null) {
+                state.release();
+                if (state.mUnstartedCount == 0) {
+                    if (state.mEndTime < mBestTime) {
+                        mBestTime = state.mEndTime;
+                        mBestOrder = mOrder.clone();
+                    }
+                    return;
+                }
+                if (lowerBound(state) >= mBestTime) {
+                    return;
+                }
+                candidates = state.findStartableRecipes();
+                if (candidates.length == 0) {
+                    candidates = null;
+                    state.advance();
+                    lastRecipe = -1;
+                    lastSimultaneousRecipe = -1;
+                }
+            }
+
+            for (int recipe : candidates) {
+                final boolean simultaneous = mPlan.isSimultaneous(state.mNextSteps[recipe]);
+                if (recipe <= (simultaneous ? lastSimultaneousRecipe : lastRecipe)) {
+                    continue;
+                }
+                final State child = new State(state);
+                mOrder[child.mStartedCount] = child.mNextSteps[recipe];
+                child.start(recipe);
+                if (simultaneous) {
+                    search(child, lastRecipe, recipe);
+                } else {
+                    search(child, recipe, lastSimultaneousRecipe);
+                }
+                if (mTimedOut) {
+                    return;
+                }
+            }
+        }
+
+        /**
+         * @return a time that every ordering continuing from a state finishes no earlier than
+         */
+        private long lowerBound(State state) {
+            long bound = state.mEndTime;
+            long cookWork = 0;
+            final long[] resourceWork = new long[mPlan.getResourceCount()];
+            for (int r = 0; r < mPlan.getRecipeCount(); r++) {
+                long recipeStart = state.mNow;
+                if (state.mRunningEnds[r] != -1) {
+                    // Count the rest of the running step
+                    final int runningStep = state.mNextSteps[r] - 1;
+                    final long remaining = state.mRunningEnds[r] - state.mNow;
+                    recipeStart = state.mRunningEnds[r];
+                    if (!mPlan.isSimultaneous(runningStep)) {
+                        cookWork += remaining;
+                    }
+                    for (int resource : mPlan.getStepResources(runningStep)) {
+                        resourceWork[resource] += remaining;
+                    }
+                }
+                final int nextStep = state.mNextSteps[r];
+                if (nextStep != mPlan.getRecipeEnd(r)) {
+                    bound = Math.max(bound, recipeStart + mTimeToEnd[nextStep]);
+                }
+            }
+            bound = Math.max(bound, state.mNow + ceilDiv(cookWork + state.mCookWorkLeft, mCookCount));
+            for (int i = 0; i < resourceWork.length; i++) {
+                bound = Math.max(bound, state.mNow + ceilDiv(resourceWork[i]
+                        + state.mResourceWorkLeft[i], mPlan.getResourceCapacity(i)));
+            }
+            return bound;
+        }
+
+        private static long ceilDiv(long a, long b) {
+            return (a + b - 1) / b;
+        }
+    }
+
+    /**
+     * A point in time partway through cooking a plan
+     */
+    private static final class State {
+        private final MealPlan mPlan;
+        private long mNow;
+        /**
+         * The latest end time of any started step
+         */
+        private long mEndTime;
+        private int mFreeCooks;
+        /**
+         * The number of steps started since the search began
+         */
+        private int mStartedCount;
+        private int mUnstartedCount;
+        /**
+         * For each recipe, the plan index of its next step that has not been started
+         */
+        private final int[] mNextSteps;
+        /**
+         * For each recipe, the end time of its running step, or -1 if it has none
+         */
+        private final long[] mRunningEnds;
+        /**
+         * For each resource, the number of running steps that use it
+         */
+        private final int[] mResourceUse;
+        /**
+         * The total duration of the non-simultaneous steps that have not been started
+         */
+        private long mCookWorkLeft;
+        /**
+         * For each resource, the total duration of the steps that use it and have not
+         * been started
+         */
+        private final long[] mResourceWorkLeft;
+
+        /**
+         * Creates a state at the start of cooking a plan
+         */
+        State(MealPlan plan, int cookCount) {
+            this(plan, cookCount, getRecipeStarts(plan), getNoRunningSteps(plan));
+        }
+
+        /**
+         * Creates a state partway through cooking a plan, at time zero
+         * @param nextSteps for each recipe, the plan index of its next unstarted step
+         * @param remainingTimes for each recipe, the time until its running step ends, or -1
+         */
+        State(MealPlan plan, int cookCount, int[] nextSteps, long[] remainingTimes) {
+            mPlan = plan;
+            mFreeCooks = cookCount;
+            mNextSteps = nextSteps.clone();
+            mRunningEnds = remainingTimes.clone();
+            mResourceUse = new int[plan.getResourceCount()];
+            mResourceWorkLeft = new long[plan.getResourceCount()];
+            for (int r = 0; r < plan.getRecipeCount(); r++) {
+                if (mRunningEnds[r] != -1) {
+                    final int runningStep = mNextSteps[r] - 1;
+                    mEndTime = Math.max(mEndTime, mRunningEnds[r]);
+                    if (!plan.isSimultaneous(runningStep)) {
+                        mFreeCooks--;
+                    }
+                    for (int resource : plan.getStepResources(runningStep)) {
+                        mResourceUse[resource]++;
+                    }
+                }
+                for (int i = mNextSteps[r]; i < plan.getRecipeEnd(r); i++) {
+                    mUnstartedCount++;
+                    if (!plan.isSimultaneous(i)) {
+                        mCookWorkLeft += plan.getDuration(i);
+                    }
+                    for (int resource : plan.getStepResources(i)) {
+                        mResourceWorkLeft[resource] += plan.getDuration(i);
+                    }
+                }
+            }
+        }
+
+        State(State other) {
+            mPlan = other.mPlan;
+            mNow = other.mNow;
+            mEndTime = other.mEndTime;
+            mFreeCooks = other.mFreeCooks;
+            mStartedCount = other.mStartedCount;
+            mUnstartedCount = other.mUnstartedCount;
+            mNextSteps = other.mNextSteps.clone();
+            mRunningEnds = other.mRunningEnds.clone();
+            mResourceUse = other.mResourceUse.clone();
+            mCookWorkLeft = other.mCookWorkLeft;
+            mResourceWorkLeft = other.mResourceWorkLeft.clone();
+        }
+
+        /**
+         * @return the recipes whose next steps can be started now, in the order that a
+         * {@link Schedule} would prefer them
+         */
+        int[] findStartableRecipes() {
+            if (mFreeCooks == 0) {
+                return new int[0];
+            }
+            final int recipeCount = mPlan.getRecipeCount();
+            final IndexedPriorityQueue startable = new IndexedPriorityQueue(recipeCount);
+            for (int r = 0; r < recipeCount; r++) {
+                if (mRunningEnds[r] == -1 && mNextSteps[r] != mPlan.getRecipeEnd(r)
+                        && resourcesAvailable(mNextSteps[r])) {
+                    startable.insert(r, mPlan.getPriority(mNextSteps[r]));
+                }
+            }
+            final int[] recipes = new int[startable.size()];
+            for (int i = 0; i < recipes.length; i++) {
+                recipes[i] = startable.poll();
+            }
+            return recipes;
+        }
+
+        void start(int recipe) {
+            final int step = mNextSteps[recipe]++;
+            final long duration = mPlan.getDuration(step);
+            mStartedCount++;
+            mUnstartedCount--;
+            mRunningEnds[recipe] = mNow + duration;
+            mEndTime = Math.max(mEndTime, mNow + duration);
+            if (!mPlan.isSimultaneous(step)) {
+                mFreeCooks--;
+                mCookWorkLeft -= duration;
+            }
+            for (int resource : mPlan.getStepResources(step)) {
+                mResourceUse[resource]++;
+                mResourceWorkLeft[resource] -= duration;
+            }
+        }
+
+        /**
+         * Finishes every running step that ends at or before the current time
+         */
+        void release() {
+            for (int r = 0; r < mRunningEnds.length; r++) {
+                if (mRunningEnds[r] != -1 && mRunningEnds[r] <= mNow) {
+                    final int step = mNextSteps[r] - 1;
+                    mRunningEnds[r] = -1;
+                    if (!mPlan.isSimultaneous(step)) {
+                        mFreeCooks++;
+                    }
+                    for (int resource : mPlan.getStepResources(step)) {
+                        mResourceUse[resource]--;
+                    }
+                }
+            }
+        }
+
+        /**
+         * Moves the current time to the end of the running step that ends first
+         */
+        void advance() {
+            long next = Long.MAX_VALUE;
+            for (long end : mRunningEnds) {
+                if (end != -1 && end < next) {
+                    next = end;
+                }
+            }
+            mNow = next;
+        }
+
+        private static int[] getRecipeStarts(MealPlan plan) {
+            final int[] starts = new int[plan.getRecipeCount()];
+            for (int r = 0; r < starts.length; r++) {
+                starts[r] = plan.getRecipeStart(r);
+            }
+            return starts;
+        }
+
+        private static long[] getNoRunningSteps(MealPlan plan) {
+            final long[] remainingTimes = new long[plan.getRecipeCount()];
+            Arrays.fill(remainingTimes, -1);
+            return remainingTimes;
+        }
+
+        private boolean resourcesAvailable(int step) {
+            for (int resource : mPlan.getStepResources(step)) {
+                if (mResourceUse[resource] >= mPlan.getResourceCapacity(resource)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+}
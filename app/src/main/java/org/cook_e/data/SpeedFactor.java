@@ -0,0 +1,84 @@
+/*
+ * Copyright 2016 the Cook-E development team
+ *
+ * This file is part of Cook-E.
+ *
+ * Cook-E is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Cook-E is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Cook-E.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.cook_e.data;
+
+import android.support.annotation.NonNull;
+
+/**
+ * How much longer than written a cook takes for some kind of step, learned over all recipes
+ *
+ * Instances of this class are immutable.
+ */
+public final class SpeedFactor {
+
+    /**
+     * The token that the factor applies to, or {@link CookSpeed#GLOBAL_TOKEN} for every step
+     */
+    @NonNull
+    private final String mToken;
+    /**
+     * The learned ratio of actual time to written time
+     */
+    private final double mFactor;
+    /**
+     * The number of steps the factor has been learned from
+     */
+    private final int mSampleCount;
+
+    /**
+     * Creates a speed factor
+     * @param token the token that the factor applies to
+     * @param factor the ratio of actual time to written time
+     * @param sampleCount the number of steps the factor has been learned from
+     */
+    public SpeedFactor(@NonNull String token, double factor, int sampleCount) {
+        Objects.requireNonNull(token, "token must not be null");
+        mToken = token;
+        mFactor = factor;
+        mSampleCount = sampleCount;
+    }
+
+    /**
+     * @return the token that the factor applies to
+     */
+    @NonNull
+    public String getToken() {
+        return mToken;
+    }
+
+    /**
+     * @return the ratio of actual time to written time
+     */
+    public double getFactor() {
+        return mFactor;
+    }
+
+    /**
+     * @return the number of steps the factor has been learned from
+     */
+    public int getSampleCount() {
+        return mSampleCount;
+    }
+
+    @Override
+    public String toString() {
+        return "SpeedFactor{" + mToken + ": " + mFactor + " from " + mSampleCount + "}";
+    }
+}
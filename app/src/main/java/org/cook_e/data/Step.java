@@ -22,6 +22,7 @@ package org.cook_e.data;
 import android.os.Parcel;
 import android.os.Parcelable;
 import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
 
 import org.joda.time.Duration;
 import org.joda.time.ReadableDuration;
@@ -69,6 +70,25 @@ public final class Step implements Parcelable {
      * index of this step in the recipe
      */
     private final int mIndex;
+    /**
+     * The pieces of equipment, like an oven, that this step has been explicitly tagged as using
+     */
+    @NonNull
+    private final List<String> mResources;
+    /**
+     * The positions in the recipe of the earlier steps that must be finished before this step
+     * can start, or null if this step only depends on the step just before it
+     */
+    @Nullable
+    private final List<Integer> mDependencies;
+    /**
+     * The cooking verb of the description, found by {@link CookSpeed#getVerb(String)} the first
+     * time it is needed. An empty string means the description has no verb, and null means it
+     * has not been looked for yet. Because String is immutable, this can be set by any thread
+     * without locking.
+     */
+    @Nullable
+    private String mVerb;
     /**
      * The set of all string patterns in the description
      * that indicates this step can be done simultaneously
@@ -88,14 +108,54 @@ public final class Step implements Parcelable {
      */
     public Step(@NonNull List<String> ingredients, @NonNull String description,
                 @NonNull ReadableDuration duration, boolean isSimultaneous, int index) {
+        this(ingredients, description, duration, isSimultaneous, index,
+                Collections.<String>emptyList());
+    }
+
+    /**
+     * Creates a Step that is explicitly tagged with the equipment it uses
+     * @param ingredients the ingredients required for this step
+     * @param description a human-readable description of this step
+     * @param duration an estimate of the time required to complete this step
+     * @param isSimultaneous if this step can be done simultaneously
+     * @param resources the names of the pieces of equipment that this step uses, like
+     *                  {@link Kitchen#OVEN}
+     * @throws NullPointerException if any parameter is null
+     */
+    public Step(@NonNull List<String> ingredients, @NonNull String description,
+                @NonNull ReadableDuration duration, boolean isSimultaneous, int index,
+                @NonNull List<String> resources) {
+        this(ingredients, description, duration, isSimultaneous, index, resources, null);
+    }
+
+    /**
+     * Creates a Step that is explicitly tagged with the equipment it uses and the steps it
+     * depends on
+     * @param ingredients the ingredients required for this step
+     * @param description a human-readable description of this step
+     * @param duration an estimate of the time required to complete this step
+     * @param isSimultaneous if this step can be done simultaneously
+     * @param resources the names of the pieces of equipment that this step uses, like
+     *                  {@link Kitchen#OVEN}
+     * @param dependencies the positions in the recipe of the earlier steps that must be finished
+     *                     before this step can start, or null if this step only depends on
+     *                     the step just before it
+     * @throws NullPointerException if any parameter other than dependencies is null
+     */
+    public Step(@NonNull List<String> ingredients, @NonNull String description,
+                @NonNull ReadableDuration duration, boolean isSimultaneous, int index,
+                @NonNull List<String> resources, @Nullable List<Integer> dependencies) {
         Objects.requireNonNull(ingredients, "ingredients must not be null");
         Objects.requireNonNull(description, "description must not be null");
         Objects.requireNonNull(duration, "duration must not be null");
+        Objects.requireNonNull(resources, "resources must not be null");
         mDescription = description;
         mTime = duration.toDuration();
         mIngredients = new ArrayList<>(ingredients);
         this.mSimultaneous = isSimultaneous;
         mIndex = index;
+        mResources = new ArrayList<>(resources);
+        mDependencies = dependencies != null ? new ArrayList<>(dependencies) : null;
     }
 
     /**
@@ -177,6 +237,44 @@ public final class Step implements Parcelable {
      */
     public boolean isSimultaneous() { return mSimultaneous; }
 
+    /**
+     * Returns the pieces of equipment that this step has been explicitly tagged as using.
+     * This is empty if the step has not been tagged. A {@link ResourceParser} decides which
+     * equipment an untagged step uses.
+     * @return the names of the tagged resources
+     */
+    @NonNull
+    public List<String> getResources() {
+        return new ArrayList<>(mResources);
+    }
+
+    /**
+     * Returns the positions in the recipe of the earlier steps that must be finished before
+     * this step can start. If this step has not been given any dependencies, it depends on
+     * the step just before it and null is returned.
+     * @return the dependencies, or null
+     */
+    @Nullable
+    public List<Integer> getDependencies() {
+        return mDependencies != null ? new ArrayList<>(mDependencies) : null;
+    }
+
+    /**
+     * Returns the cooking verb of the description of this step. The description is only
+     * searched the first time, so later calls do not allocate.
+     * @return the verb, or null if the description has none
+     */
+    @Nullable
+    String getVerb() {
+        String verb = mVerb;
+        if (verb == null) {
+            final String found = CookSpeed.getVerb(mDescription);
+            verb = found != null ? found : "";
+            mVerb = verb;
+        }
+        return verb.isEmpty() ? null : verb;
+    }
+
     @Override
     public boolean equals(Object o) {
         if (this == o) return true;
@@ -188,6 +286,9 @@ public final class Step implements Parcelable {
         if (mIndex != step.mIndex) return false;
         if (!mDescription.equals(step.mDescription)) return false;
         if (!mTime.equals(step.mTime)) return false;
+        if (!mResources.equals(step.mResources)) return false;
+        if (mDependencies != null ? !mDependencies.equals(step.mDependencies)
+                : step.mDependencies != null) return false;
         return mIngredients.equals(step.mIngredients);
 
     }
@@ -199,6 +300,8 @@ public final class Step implements Parcelable {
         result = 31 * result + mIngredients.hashCode();
         result = 31 * result + (mSimultaneous ? 1 : 0);
         result = 31 * result + mIndex;
+        result = 31 * result + mResources.hashCode();
+        result = 31 * result + (mDependencies != null ? mDependencies.hashCode() : 0);
         return result;
     }
 
@@ -210,6 +313,8 @@ public final class Step implements Parcelable {
                 ", mIngredients=" + mIngredients +
                 ", mSimultaneous=" + mSimultaneous +
                 ", mIndex=" + mIndex +
+                ", mResources=" + mResources +
+                ", mDependencies=" + mDependencies +
                 '}';
     }
 
@@ -225,8 +330,19 @@ public final class Step implements Parcelable {
             final List<String> ingredients = new ArrayList<>();
             source.readStringList(ingredients);
             final int index = source.readInt();
+            final List<String> resources = new ArrayList<>();
+            source.readStringList(resources);
+            final int dependencyCount = source.readInt();
+            List<Integer> dependencies = null;
+            if (dependencyCount != -1) {
+                dependencies = new ArrayList<>(dependencyCount);
+                for (int i = 0; i < dependencyCount; i++) {
+                    dependencies.add(source.readInt());
+                }
+            }
 
-            return new Step(ingredients, description, duration, simultaneous, index);
+            return new Step(ingredients, description, duration, simultaneous, index, resources,
+                    dependencies);
         }
 
         @Override
@@ -248,5 +364,14 @@ public final class Step implements Parcelable {
         dest.writeSerializable(mSimultaneous);
         dest.writeStringList(mIngredients);
         dest.writeInt(mIndex);
+        dest.writeStringList(mResources);
+        if (mDependencies == null) {
+            dest.writeInt(-1);
+        } else {
+            dest.writeInt(mDependencies.size());
+            for (int dependency : mDependencies) {
+                dest.writeInt(dependency);
+            }
+        }
     }
 }
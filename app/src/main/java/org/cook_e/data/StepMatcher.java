@@ -0,0 +1,116 @@
+/*
+ * Copyright 2016 the Cook-E development team
+ *
+ * This file is part of Cook-E.
+ *
+ * Cook-E is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Cook-E is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Cook-E.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.cook_e.data;
+
+import android.support.annotation.NonNull;
+
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Matches the steps of a recipe before an edit to its steps after the edit, so that what was
+ * learned about a step can follow it to its new position.
+ *
+ * Each step has a content identity, a hash of its description, written time, and whether it is
+ * simultaneous, that does not depend on its position. Old steps are first matched to new steps
+ * with the same identity. Steps that are still unmatched are then matched to new steps with the
+ * same description, whose written time has changed. When several steps have the same identity,
+ * they are matched in order. Old steps that match nothing have been removed or rewritten.
+ */
+final class StepMatcher {
+
+    private StepMatcher() {}
+
+    /**
+     * Returns the identity of a step, which does not depend on its position in its recipe
+     * @param step the step
+     * @return the identity
+     */
+    static long getIdentity(@NonNull Step step) {
+        long hash = getDescriptionIdentity(step);
+        hash = FnvHash.hashLong(hash, step.getTime().getMillis());
+        return FnvHash.hashLong(hash, step.isSimultaneous() ? 1 : 0);
+    }
+
+    /**
+     * Matches old steps to new steps
+     * @param oldSteps the steps before the edit
+     * @param newSteps the steps after the edit
+     * @return for each old step, in the order of oldSteps, the position in newSteps of the step
+     * that it matches, or -1 if it matches no step
+     */
+    @NonNull
+    static int[] match(@NonNull List<Step> oldSteps, @NonNull List<Step> newSteps) {
+        final int[] matches = new int[oldSteps.size()];
+        Arrays.fill(matches, -1);
+        final boolean[] taken = new boolean[newSteps.size()];
+
+        final Map<Long, ArrayDeque<Integer>> byIdentity = new HashMap<>();
+        for (int i = 0; i < newSteps.size(); i++) {
+            add(byIdentity, getIdentity(newSteps.get(i)), i);
+        }
+        for (int i = 0; i < oldSteps.size(); i++) {
+            final ArrayDeque<Integer> candidates = byIdentity.get(getIdentity(oldSteps.get(i)));
+            if (candidates != null && !candidates.isEmpty()) {
+                matches[i] = candidates.removeFirst();
+                taken[matches[i]] = true;
+            }
+        }
+
+        // Match the remaining steps by description only
+        final Map<Long, ArrayDeque<Integer>> byDescription = new HashMap<>();
+        for (int i = 0; i < newSteps.size(); i++) {
+            if (!taken[i]) {
+                add(byDescription, getDescriptionIdentity(newSteps.get(i)), i);
+            }
+        }
+        for (int i = 0; i < oldSteps.size(); i++) {
+            if (matches[i] == -1) {
+                final ArrayDeque<Integer> candidates =
+                        byDescription.get(getDescriptionIdentity(oldSteps.get(i)));
+                if (candidates != null && !candidates.isEmpty()) {
+                    matches[i] = candidates.removeFirst();
+                }
+            }
+        }
+        return matches;
+    }
+
+    /**
+     * Returns a hash of the description of a step, ignoring case and surrounding whitespace
+     */
+    private static long getDescriptionIdentity(@NonNull Step step) {
+        return FnvHash.hashString(FnvHash.OFFSET_BASIS,
+                step.getDescription().trim().toLowerCase(Locale.US));
+    }
+
+    private static void add(@NonNull Map<Long, ArrayDeque<Integer>> map, long key, int value) {
+        ArrayDeque<Integer> values = map.get(key);
+        if (values == null) {
+            values = new ArrayDeque<>();
+            map.put(key, values);
+        }
+        values.addLast(value);
+    }
+}
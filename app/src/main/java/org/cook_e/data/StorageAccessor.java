@@ -20,10 +20,13 @@
 package org.cook_e.data;
 
 import android.content.Context;
+import android.support.annotation.NonNull;
+import android.support.v4.util.LongSparseArray;
 import android.util.Pair;
 
 
 import java.io.Closeable;
+import java.io.File;
 import java.io.IOException;
 import java.sql.SQLException;
 import java.util.ArrayList;
@@ -53,6 +56,18 @@ public class StorageAccessor implements Closeable {
      * The remote database accessor
      */
     private SQLAccessor mExternal;
+    /**
+     * Buffers learner data updates and writes them to the local database in the background
+     */
+    private LearnerDataWriter mLearnerWriter;
+    /**
+     * The speed factors learned across all recipes, or null if they have not been loaded
+     */
+    private CookSpeed mCookSpeed;
+    /**
+     * The log of cooking sessions
+     */
+    private CookingLog mCookingLog;
 
     /**
      * Map used to cache recipes
@@ -71,6 +86,15 @@ public class StorageAccessor implements Closeable {
      * constant size limit for the buffers
      */
     private static final int BUFFER_LIMIT = 10;
+    /**
+     * The name of the file that records learner data updates that have not been written to
+     * the local database
+     */
+    private static final String LEARNER_JOURNAL_NAME = "learner_journal";
+    /**
+     * The name of the file that the cooking log is stored in
+     */
+    private static final String COOKING_LOG_NAME = "cooking_log";
     /**
      * Constructor
      * @param c Context of the activity that wants to store/retrieve data
@@ -79,6 +103,9 @@ public class StorageAccessor implements Closeable {
         final StorageParser parser = new StorageParser();
         mLocal = new SQLiteAccessor(c, parser);
         mExternal = new SQLServerAccessor(parser);
+        mLearnerWriter = new LearnerDataWriter(mLocal,
+                new File(c.getFilesDir(), LEARNER_JOURNAL_NAME));
+        mCookingLog = new CookingLog(new File(c.getFilesDir(), COOKING_LOG_NAME));
         mRecipeBuffer = new HashMap<>();
         mBunchBuffer = new HashMap<>();
     }
@@ -180,7 +207,12 @@ public class StorageAccessor implements Closeable {
         if (!r.hasObjectId()) {
             throw new IllegalArgumentException("Recipe has not been stored");
         }
+        // Editing a recipe moves or deletes its learner data, which must include updates that
+        // are still buffered
+        mLearnerWriter.flush();
         mLocal.editRecipe(r);
+        LearnerCache.getInstance().invalidate(r.getObjectId());
+        ScheduleCache.getInstance().invalidateRecipe(r.getObjectId());
     }
 
     /**
@@ -208,6 +240,7 @@ public class StorageAccessor implements Closeable {
         if (!b.hasObjectId()) {
             throw new IllegalArgumentException("Bunch has not been stored");
         }
+        // Cached plans are only used for bunches with the same recipes, so they stay valid
         mLocal.editBunch(b);
     }
 
@@ -237,7 +270,12 @@ public class StorageAccessor implements Closeable {
         if (!r.hasObjectId()) {
             throw new IllegalArgumentException("Recipe has not been stored");
         }
+        // Buffered updates must not write the learner data of the recipe back after it is
+        // deleted, because a new recipe may be given the same ID
+        mLearnerWriter.discard(r.getObjectId());
         mLocal.deleteRecipe(r);
+        LearnerCache.getInstance().invalidate(r.getObjectId());
+        ScheduleCache.getInstance().invalidateRecipe(r.getObjectId());
     }
 
     /**
@@ -269,7 +307,10 @@ public class StorageAccessor implements Closeable {
      * @throws SQLException
      */
     public void storeLearnerData(Recipe r, Collection<LearningWeight> weights) throws SQLException {
+        mLearnerWriter.flush();
         mLocal.storeLearnerData(r, weights);
+        LearnerCache.getInstance().invalidate(r.getObjectId());
+        ScheduleCache.getInstance().invalidateRecipe(r.getObjectId());
     }
 
     /**
@@ -279,17 +320,39 @@ public class StorageAccessor implements Closeable {
      * @throws SQLException
      */
     public List<LearningWeight> loadLearnerData(Recipe r) throws SQLException {
+        mLearnerWriter.flush();
         return mLocal.loadLearnerData(r);
     }
 
     /**
      * Update learner data for a recipe
+     *
+     * The update is recorded in a journal and written to the local database later, in the
+     * background. Learner data loaded through this class always includes it.
+     *
      * @param r Recipe to update learner data for
      * @param weight LearningWeight that is the updated data
      * @throws SQLException if an error occurs
      */
     public void updateLearnerData(Recipe r, LearningWeight weight) throws SQLException {
-        mLocal.updateLearnerData(r, weight);
+        mLearnerWriter.update(r.getObjectId(), weight);
+        LearnerCache.getInstance().update(r.getObjectId(), weight);
+        ScheduleCache.getInstance().invalidateRecipe(r.getObjectId());
+    }
+
+    /**
+     * Writes buffered learner data updates to the local database now, on the calling thread
+     * @throws SQLException if an error occurs
+     */
+    public void flushLearnerData() throws SQLException {
+        mLearnerWriter.flush();
+    }
+
+    /**
+     * Starts writing buffered learner data updates to the local database in the background
+     */
+    public void requestLearnerDataFlush() {
+        mLearnerWriter.requestFlush();
     }
 
     /**
@@ -297,21 +360,107 @@ public class StorageAccessor implements Closeable {
      * @throws SQLException if an error occurs
      */
     public void deleteLearnerData() throws SQLException {
+        mLearnerWriter.flush();
         mLocal.deleteLearnerData();
+        LearnerCache.getInstance().clear();
+        synchronized (this) {
+            if (mCookSpeed != null) {
+                mCookSpeed.clear();
+            }
+        }
+        ScheduleCache.getInstance().invalidate();
+    }
+
+    /**
+     * Returns the speed factors learned across all recipes, loading them from the local database
+     * the first time. Every call returns the same object.
+     * @return the cook speed
+     * @throws SQLException if an error occurs
+     */
+    public synchronized CookSpeed getCookSpeed() throws SQLException {
+        if (mCookSpeed == null) {
+            mLearnerWriter.flush();
+            mCookSpeed = new CookSpeed(mLocal.loadSpeedFactors());
+        }
+        return mCookSpeed;
+    }
+
+    /**
+     * @return the log that cooking sessions are recorded in
+     */
+    public CookingLog getCookingLog() {
+        return mCookingLog;
+    }
+
+    /**
+     * Replaces all learner data and speed factors with data rebuilt from the cooking log.
+     * This may take a while, so it must not be called on the main thread.
+     * @return the rebuilt learner data
+     * @throws SQLException if an error occurs
+     * @throws IOException if the cooking log could not be read
+     * @throws InterruptedException if the thread is interrupted
+     */
+    public LearnerRetrainer.Result retrainLearnerData()
+            throws SQLException, IOException, InterruptedException {
+        final Map<Long, Recipe> recipes = new HashMap<>();
+        for (Recipe r : mLocal.loadAllRecipes(-1)) {
+            recipes.put(r.getObjectId(), r);
+        }
+        final LearnerRetrainer.Result result = new LearnerRetrainer()
+                .retrain(mCookingLog.read(), recipes);
+
+        mLearnerWriter.flush();
+        mLocal.replaceLearnerData(result.getWeights(), result.getSpeedFactors());
+        LearnerCache.getInstance().clear();
+        synchronized (this) {
+            if (mCookSpeed != null) {
+                mCookSpeed.replace(result.getSpeedFactors());
+            }
+        }
+        ScheduleCache.getInstance().invalidate();
+        return result;
+    }
+
+    /**
+     * Update speed factors. Like learner data updates, the factors are written to the local
+     * database later, in the background.
+     * @param factors the factors that changed
+     * @throws SQLException if an error occurs
+     */
+    public void updateSpeedFactors(Collection<SpeedFactor> factors) throws SQLException {
+        if (factors.isEmpty()) {
+            return;
+        }
+        for (SpeedFactor factor : factors) {
+            mLearnerWriter.update(factor);
+        }
+        ScheduleCache.getInstance().invalidateCookSpeed();
     }
 
     /**
-     * Loads learner data for a bunch
+     * Loads learner data for all the recipes of a bunch. Recipes in the {@link LearnerCache}
+     * are not read from the database, and the others are read in one query.
      * @param b Bunch to load learner data for
-     * @return Map of recipe ids to LearningWeights
+     * @return the LearningWeights of each recipe, keyed by recipe ID
      * @throws SQLException
      */
-    public Map<Long, List<LearningWeight>> loadLearnerData(Bunch b) throws SQLException {
-        Map<Long, List<LearningWeight>> result = new HashMap<>();
-        for (Recipe r : b.getRecipes()) {
-            result.put(r.getObjectId(), loadLearnerData(r));
+    public LongSparseArray<List<LearningWeight>> loadLearnerData(Bunch b) throws SQLException {
+        final List<Recipe> recipes = b.getRecipes();
+        final long[] recipeIds = new long[recipes.size()];
+        for (int i = 0; i < recipeIds.length; i++) {
+            recipeIds[i] = recipes.get(i).getObjectId();
         }
-        return result;
+        // Cached recipes already include buffered updates, so buffered updates only need to be
+        // written when some recipe is read from the database
+        return LearnerCache.getInstance().get(recipeIds, new LearnerCache.Source() {
+            @NonNull
+            @Override
+            public LongSparseArray<List<LearningWeight>> load(@NonNull long[] recipeIds)
+                    throws SQLException {
+                mLearnerWriter.flush();
+                return mLocal.loadLearnerData(recipeIds);
+            }
+        });
     }
 
     /**
@@ -323,6 +472,8 @@ public class StorageAccessor implements Closeable {
     }
     @Override
     public void close() throws IOException {
+        mLearnerWriter.close();
+        mCookingLog.close();
         mLocal.close();
         mExternal.close();
     }
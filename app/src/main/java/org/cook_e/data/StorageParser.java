@@ -56,7 +56,35 @@ public class StorageParser {
                 for (int j = 0; j < ingredientsJson.length(); j++) {
                     ingredients.add(ingredientsJson.getString(j));
                 }
-                steps.add(new Step(ingredients, description, duration, simultaneous, i));
+                // Steps saved before resources were added have no resources
+                final JSONArray resourcesJson = stepJson.optJSONArray("resources");
+                final List<String> resources = new ArrayList<>();
+                if (resourcesJson != null) {
+                    for (int j = 0; j < resourcesJson.length(); j++) {
+                        resources.add(resourcesJson.getString(j));
+                    }
+                }
+                // Steps without dependencies depend on the step before them. A dependency that is
+                // not an earlier step is replaced with a dependency on the step before.
+                final JSONArray dependenciesJson = stepJson.optJSONArray("dependencies");
+                List<Integer> dependencies = null;
+                if (dependenciesJson != null) {
+                    dependencies = new ArrayList<>(dependenciesJson.length());
+                    for (int j = 0; j < dependenciesJson.length(); j++) {
+                        int dependency = dependenciesJson.getInt(j);
+                        if (dependency < 0 || dependency >= i) {
+                            if (i == 0) {
+                                continue;
+                            }
+                            dependency = i - 1;
+                        }
+                        if (!dependencies.contains(dependency)) {
+                            dependencies.add(dependency);
+                        }
+                    }
+                }
+                steps.add(new Step(ingredients, description, duration, simultaneous, i, resources,
+                        dependencies));
             }
 
             return steps;
@@ -87,6 +115,15 @@ public class StorageParser {
 
                 stepJson.put("simultaneous", step.isSimultaneous());
 
+                final List<String> resources = step.getResources();
+                if (!resources.isEmpty()) {
+                    stepJson.put("resources", new JSONArray(resources));
+                }
+                final List<Integer> dependencies = step.getDependencies();
+                if (dependencies != null) {
+                    stepJson.put("dependencies", new JSONArray(dependencies));
+                }
+
                 json.put(stepJson);
             }
 
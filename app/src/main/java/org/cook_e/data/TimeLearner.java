@@ -22,15 +22,22 @@ package org.cook_e.data;
 import android.support.annotation.NonNull;
 
 import java.sql.SQLException;
-import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
-import java.util.Map;
 
 import org.joda.time.Duration;
 
 /**
  * According to the step and actual time given
  * this class will perform operations to give more accurate estimate time for one user
+ *
+ * For each step, the learner keeps an exponentially weighted mean and variance of the ratio of
+ * the actual time to the time in the recipe, and the number of samples. Each sample is weighted
+ * by the learn rate, which starts at 1 and decays to {@link #MIN_LEARN_RATE}, so that the first
+ * sample replaces the default and later samples still move the estimate.
+ *
+ * Steps that have never been timed are estimated with the {@link CookSpeed} of the user, which is
+ * learned from every timed step of every recipe, instead of with the time in the recipe.
  */
 public class TimeLearner implements TimeLearnerInterface {
     // Maximum multiple of estimated time learner can change each time
@@ -39,9 +46,27 @@ public class TimeLearner implements TimeLearnerInterface {
     // The rate that learn rate decays for each learn
     private static final double LEARN_RATE_DECAY_RATE = 0.75;
 
-    // Sorted list of learning weights. List is sorted by hash code
+    // The learn rate never decays below this, so that steps keep adapting
+    static final double MIN_LEARN_RATE = 0.1;
+
+    // The number of samples needed before the learned variance is used
+    private static final int MIN_SAMPLES_FOR_VARIANCE = 3;
+
+    // Smallest relative standard deviation that is estimated from learned variance
+    private static final double MIN_DEVIATION = 0.05;
+
+    // Relative standard deviation of the time of a step that has not been learned, and the
+    // limit that it approaches as the step is learned
+    private static final double UNLEARNED_DEVIATION = 0.4;
+    private static final double LEARNED_DEVIATION = 0.1;
+
+    // The learned time weight and learn rate of each step
     @NonNull
-    private Map<Long, List<LearningWeight>> mWeights;
+    private final LearnerWeights mWeights;
+
+    // The speed of the user across all recipes, used for steps that have not been learned
+    @NonNull
+    private final CookSpeed mCookSpeed;
 
     private StorageAccessor mStorageAccessor;
 
@@ -54,7 +79,8 @@ public class TimeLearner implements TimeLearnerInterface {
      */
     public TimeLearner(StorageAccessor sA, Bunch b) throws SQLException {
         mStorageAccessor = sA;
-        mWeights = mStorageAccessor.loadLearnerData(b);
+        mWeights = new LearnerWeights(mStorageAccessor.loadLearnerData(b));
+        mCookSpeed = mStorageAccessor.getCookSpeed();
     }
 
     /**
@@ -71,53 +97,69 @@ public class TimeLearner implements TimeLearnerInterface {
         long actualTime = time.getMillis();
         if (actualTime < 0) throw new IllegalArgumentException("time must not be negative");
 
-        LearningWeight lw = accessOrCreateLearningWeight(r, s);
+        final long recipeId = r.getObjectId();
+        update(mWeights, recipeId, s, getTimeWeight(recipeId, s), actualTime);
+        mStorageAccessor.updateLearnerData(r, mWeights.getLearningWeight(recipeId, s.getIndex()));
+        mStorageAccessor.updateSpeedFactors(learnSpeed(mCookSpeed, s, actualTime));
+    }
+
+    /**
+     * Updates the learned values of a step with its actual time. This is the learning model used
+     * both while cooking and by {@link LearnerRetrainer}.
+     *
+     * @param weights the learned values
+     * @param recipeId the ID of the recipe that contains the step
+     * @param s the step
+     * @param timeWeight the time weight that the step is currently estimated with
+     * @param actualTime the actual time of the step, in milliseconds
+     */
+    static void update(@NonNull LearnerWeights weights, long recipeId, @NonNull Step s,
+                       double timeWeight, long actualTime) {
+        final int index = s.getIndex();
+        final double learnRate = weights.getLearnRate(recipeId, index);
+        final double variance = weights.getVariance(recipeId, index);
+        final int sampleCount = weights.getSampleCount(recipeId, index);
 
         // calculate new weight
-        long oldEstimatedTime = (long) (s.getTime().getMillis() * lw.getTimeWeight());
+        double oldEstimatedTime = s.getTime().getMillis() * timeWeight;
         double weightChange;
         if (actualTime >= oldEstimatedTime * LEARNING_LIMIT)
             weightChange = LEARNING_LIMIT - 1;
         else if (actualTime * LEARNING_LIMIT <= oldEstimatedTime)
             weightChange = (1 / LEARNING_LIMIT) - 1;
         else {
-            weightChange = (actualTime * 1.0 / oldEstimatedTime) - 1;
+            weightChange = (actualTime / oldEstimatedTime) - 1;
         }
 
-        lw.setTimeWeight(lw.getTimeWeight() + lw.getTimeWeight() * weightChange * lw.getLearnRate());
-        lw.setLearnRate(lw.getLearnRate() * LEARN_RATE_DECAY_RATE);
-        mStorageAccessor.updateLearnerData(r, lw);
+        // This is an exponentially weighted update of the mean with the sample
+        // timeWeight * (1 + weightChange), using the learn rate as the weight of the sample.
+        // The variance update is the incremental form, which stays non-negative.
+        final double difference = timeWeight * weightChange;
+        final double newTimeWeight = timeWeight + timeWeight * weightChange * learnRate;
+        final double newVariance = (1 - learnRate)
+                * (variance + learnRate * difference * difference);
+        final double newLearnRate = Math.max(MIN_LEARN_RATE, learnRate * LEARN_RATE_DECAY_RATE);
+        weights.set(recipeId, index, newTimeWeight, newLearnRate, newVariance, sampleCount + 1);
     }
 
     /**
-     * Helper that finds a learning weight associated with the recipe and step or creates it if it does not exist
-     *
-     * @param r the recipe you want to record the time for
-     * @param s the particular step you want to record the time for
-     * @return the LearningWeight of this step
+     * Updates a cook speed with the actual time of a step
+     * @param speed the cook speed
+     * @param s the step
+     * @param actualTime the actual time of the step, in milliseconds
+     * @return the speed factors that changed
      */
-    private LearningWeight accessOrCreateLearningWeight(Recipe r, Step s) {
-        List<LearningWeight> weights = mWeights.get(r.getObjectId());
-
-        // mWeights does not contain the learningWeight for this recipe does not exist, so create one
-        if (weights == null || weights.size() == 0) {
-            int stepCount = r.getSteps().size();
-            weights = new ArrayList<>(stepCount);
-            for (int i = 0; i < stepCount; i++) {
-                weights.add(new LearningWeight(i));
-            }
-            mWeights.put(r.getObjectId(), weights);
-        }
-
-        LearningWeight lw = weights.get(s.getIndex());
-
-        // The learningWeight for this step does not exits
-        if (lw == null) {
-            lw = new LearningWeight(s.getIndex());
-            weights.add(s.getIndex(), lw);
+    @NonNull
+    static List<SpeedFactor> learnSpeed(@NonNull CookSpeed speed, @NonNull Step s,
+                                        long actualTime) {
+        // Simultaneous steps take as long as their timers, not as long as the user takes
+        final long baseTime = s.getTime().getMillis();
+        if (s.isSimultaneous() || baseTime <= 0 || actualTime <= 0) {
+            return Collections.emptyList();
         }
-        return lw;
+        return speed.learn(s, actualTime / (double) baseTime);
     }
+
     /**
      * Returns the estimated time for a step based on learning result.
      * If step is not learned before, returns the estimate time of that step.
@@ -128,10 +170,73 @@ public class TimeLearner implements TimeLearnerInterface {
     @Override
     @NonNull
     public Duration getEstimatedTime(@NonNull Recipe r, @NonNull Step s) {
+        return Duration.millis(getEstimatedMillis(r, s));
+    }
+
+    /**
+     * Returns the estimated time for a step based on learning result, without allocating.
+     * If step is not learned before, returns the estimate time of that step.
+     *
+     * @param r the recipe that contains the step
+     * @param s the step you need to estimate the time for
+     * @return the estimated time for that specific step, in milliseconds
+     */
+    @Override
+    public long getEstimatedMillis(@NonNull Recipe r, @NonNull Step s) {
+        Objects.requireNonNull(r, "recipe must not be null");
+        Objects.requireNonNull(s, "step must not be null");
+        return (long) (s.getTime().getMillis() * getTimeWeight(r.getObjectId(), s));
+    }
+
+    /**
+     * Returns the learned time weight of a step, or the weight predicted from the cook speed
+     * if the step has not been learned
+     */
+    private double getTimeWeight(long recipeId, @NonNull Step s) {
+        if (usesCookSpeed(recipeId, s)) {
+            return mCookSpeed.getFactor(s);
+        }
+        return mWeights.getTimeWeight(recipeId, s.getIndex());
+    }
+
+    @Override
+    public boolean usesCookSpeed(@NonNull Recipe r, @NonNull Step s) {
         Objects.requireNonNull(r, "recipe must not be null");
         Objects.requireNonNull(s, "step must not be null");
-        LearningWeight lw = accessOrCreateLearningWeight(r, s);
-        long time = (long) (s.getTime().getMillis() * lw.getTimeWeight());
-        return Duration.millis(time);
+        return usesCookSpeed(r.getObjectId(), s);
+    }
+
+    private boolean usesCookSpeed(long recipeId, @NonNull Step s) {
+        return !s.isSimultaneous() && !mWeights.isLearned(recipeId, s.getIndex());
+    }
+
+    /**
+     * Returns how uncertain the estimated time of a step is. Once a step has been learned a few
+     * times, this is the learned standard deviation relative to the learned mean. Before that,
+     * it starts high and decreases along with the learn rate. Simultaneous steps are timed, so
+     * their time is certain.
+     *
+     * @param r the recipe that contains the step
+     * @param s the step
+     * @return the standard deviation of the time the step takes, as a fraction of the
+     * estimated time
+     */
+    @Override
+    public double getRelativeDeviation(@NonNull Recipe r, @NonNull Step s) {
+        Objects.requireNonNull(r, "recipe must not be null");
+        Objects.requireNonNull(s, "step must not be null");
+        if (s.isSimultaneous()) {
+            return 0;
+        }
+        final long recipeId = r.getObjectId();
+        final int index = s.getIndex();
+        final double timeWeight = mWeights.getTimeWeight(recipeId, index);
+        if (mWeights.getSampleCount(recipeId, index) >= MIN_SAMPLES_FOR_VARIANCE
+                && timeWeight > 0) {
+            final double deviation = Math.sqrt(mWeights.getVariance(recipeId, index)) / timeWeight;
+            return Math.min(UNLEARNED_DEVIATION, Math.max(MIN_DEVIATION, deviation));
+        }
+        final double learnRate = mWeights.getLearnRate(recipeId, index);
+        return LEARNED_DEVIATION + (UNLEARNED_DEVIATION - LEARNED_DEVIATION) * learnRate;
     }
 }
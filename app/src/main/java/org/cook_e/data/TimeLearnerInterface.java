@@ -33,4 +33,23 @@ public interface TimeLearnerInterface {
 
     @NonNull
     Duration getEstimatedTime(@NonNull Recipe r, @NonNull Step s);
+
+    /**
+     * Returns the estimated time of a step, in milliseconds. This is the same as
+     * getEstimatedTime(r, s).getMillis(), but does not need to allocate.
+     */
+    long getEstimatedMillis(@NonNull Recipe r, @NonNull Step s);
+
+    /**
+     * Returns how uncertain the estimated time of a step is
+     * @return the standard deviation of the time the step takes, as a fraction of the
+     * estimated time
+     */
+    double getRelativeDeviation(@NonNull Recipe r, @NonNull Step s);
+
+    /**
+     * Returns whether the estimated time of a step comes from the {@link CookSpeed}, which is
+     * shared by all recipes, instead of from what was learned about the step itself
+     */
+    boolean usesCookSpeed(@NonNull Recipe r, @NonNull Step s);
 }
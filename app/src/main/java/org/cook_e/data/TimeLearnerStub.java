@@ -38,4 +38,19 @@ public class TimeLearnerStub implements TimeLearnerInterface {
     public Duration getEstimatedTime(@NonNull Recipe r, @NonNull Step s) {
         return s.getTime().toDuration();
     }
+
+    @Override
+    public long getEstimatedMillis(@NonNull Recipe r, @NonNull Step s) {
+        return s.getTime().getMillis();
+    }
+
+    @Override
+    public double getRelativeDeviation(@NonNull Recipe r, @NonNull Step s) {
+        return 0;
+    }
+
+    @Override
+    public boolean usesCookSpeed(@NonNull Recipe r, @NonNull Step s) {
+        return false;
+    }
 }
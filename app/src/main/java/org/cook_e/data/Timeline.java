@@ -0,0 +1,379 @@
+/*
+ * Copyright 2016 the Cook-E development team
+ *
+ * This file is part of Cook-E.
+ *
+ * Cook-E is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Cook-E is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Cook-E.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.cook_e.data;
+
+import android.support.annotation.NonNull;
+
+import org.joda.time.Duration;
+import org.joda.time.ReadableDuration;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The planned start and end times of every step of a {@link MealPlan}, measured from the start
+ * of cooking, for showing what is coming up without advancing a {@link Schedule}.
+ *
+ * The timeline is produced by one pass of the same list scheduler that Schedule uses. Each entry
+ * is placed in a lane so that entries in the same lane never overlap: lanes 0 to
+ * cookCount - 1 are the cooks, and simultaneous steps, which do not need a cook, are placed in
+ * the lanes after them.
+ *
+ * Entries are ordered by start time, and can be found by time with a binary search.
+ *
+ * Objects of this class are immutable.
+ */
+public final class Timeline {
+
+    /**
+     * The plan
+     */
+    @NonNull
+    private final MealPlan mPlan;
+
+    /**
+     * The number of cooks
+     */
+    private final int mCookCount;
+
+    /**
+     * The number of lanes used
+     */
+    private final int mLaneCount;
+
+    /**
+     * For each entry, the plan index of its step
+     */
+    @NonNull
+    private final int[] mSteps;
+
+    /**
+     * For each entry, the start time in milliseconds. This is in increasing order.
+     */
+    @NonNull
+    private final long[] mStarts;
+
+    /**
+     * For each entry, the end time in milliseconds
+     */
+    @NonNull
+    private final long[] mEnds;
+
+    /**
+     * For each entry, the latest end time of that entry and all entries before it.
+     * This is in increasing order.
+     */
+    @NonNull
+    private final long[] mMaxEnds;
+
+    /**
+     * For each entry, its lane
+     */
+    @NonNull
+    private final int[] mLanes;
+
+    /**
+     * For each step, the index of its entry
+     */
+    @NonNull
+    private final int[] mStepEntries;
+
+    /**
+     * Creates a timeline for a plan
+     * @param plan the plan
+     * @param cookCount the number of cooks
+     * @throws NullPointerException if plan is null
+     * @throws IllegalArgumentException if cookCount is less than 1
+     */
+    public Timeline(@NonNull MealPlan plan, int cookCount) {
+        Objects.requireNonNull(plan, "plan must not be null");
+        if (cookCount < 1) {
+            throw new IllegalArgumentException("cookCount must be at least 1");
+        }
+        mPlan = plan;
+        mCookCount = cookCount;
+        final int stepCount = plan.getStepCount();
+        mSteps = new int[stepCount];
+        mStarts = new long[stepCount];
+        mEnds = new long[stepCount];
+        mMaxEnds = new long[stepCount];
+        mLanes = new int[stepCount];
+        mStepEntries = new int[stepCount];
+
+        final ListScheduler scheduler = new ListScheduler(plan);
+        // The steps in progress, keyed by their negated end times so that the earliest end is at
+        // the head
+        final IndexedPriorityQueue running = new IndexedPriorityQueue(stepCount);
+        // The free cook lanes and the free simultaneous lanes, keyed by negated lane number
+        // so that the lowest lane is used first
+        final IndexedPriorityQueue freeCooks = new IndexedPriorityQueue(cookCount);
+        final IndexedPriorityQueue freeSimultaneousLanes = new IndexedPriorityQueue(stepCount);
+        for (int cook = 0; cook < cookCount; cook++) {
+            freeCooks.insert(cook, -cook);
+        }
+        int simultaneousLaneCount = 0;
+
+        long now = 0;
+        long maxEnd = 0;
+        int entry = 0;
+        while (scheduler.getUnstartedStepCount() > 0) {
+            final int step = !freeCooks.isEmpty() ? scheduler.startNextStep() : -1;
+            if (step == -1) {
+                // Wait for the next step to end
+                now = -running.getKey(running.peek());
+            } else {
+                final long end = now + plan.getDuration(step);
+                final int lane;
+                if (!plan.isSimultaneous(step)) {
+                    lane = freeCooks.poll();
+                } else if (!freeSimultaneousLanes.isEmpty()) {
+                    lane = cookCount + freeSimultaneousLanes.poll();
+                } else {
+                    lane = cookCount + simultaneousLaneCount;
+                    simultaneousLaneCount++;
+                }
+                running.insert(step, -end);
+
+                maxEnd = Math.max(maxEnd, end);
+                mSteps[entry] = step;
+                mStarts[entry] = now;
+                mEnds[entry] = end;
+                mMaxEnds[entry] = maxEnd;
+                mLanes[entry] = lane;
+                mStepEntries[step] = entry;
+                entry++;
+            }
+            // Release the cooks, lanes, steps, and equipment whose steps have ended
+            while (!running.isEmpty() && -running.getKey(running.peek()) <= now) {
+                final int ended = running.poll();
+                final int lane = mLanes[mStepEntries[ended]];
+                if (lane < cookCount) {
+                    freeCooks.insert(lane, -lane);
+                } else {
+                    freeSimultaneousLanes.insert(lane - cookCount, cookCount - lane);
+                }
+                scheduler.finishStep(ended);
+            }
+        }
+        mLaneCount = cookCount + simultaneousLaneCount;
+    }
+
+    /**
+     * @return the plan that this timeline is for
+     */
+    @NonNull
+    public MealPlan getPlan() {
+        return mPlan;
+    }
+
+    /**
+     * @return the number of cooks, which is also the number of lanes for non-simultaneous steps
+     */
+    public int getCookCount() {
+        return mCookCount;
+    }
+
+    /**
+     * @return the number of lanes used by this timeline
+     */
+    public int getLaneCount() {
+        return mLaneCount;
+    }
+
+    /**
+     * @return the number of entries, which is the number of steps in the plan
+     */
+    public int size() {
+        return mSteps.length;
+    }
+
+    /**
+     * @return the time from the start of cooking to the end of the last step
+     */
+    @NonNull
+    public Duration getTotalDuration() {
+        return Duration.millis(mSteps.length != 0 ? mMaxEnds[mSteps.length - 1] : 0);
+    }
+
+    /**
+     * @param index the index of an entry, from 0 to size() - 1
+     * @return the entry
+     */
+    @NonNull
+    public Entry get(int index) {
+        return new Entry(index);
+    }
+
+    /**
+     * @param step the plan index of a step
+     * @return the entry for the step
+     */
+    @NonNull
+    public Entry getStepEntry(int step) {
+        return new Entry(mStepEntries[step]);
+    }
+
+    /**
+     * Finds the first entry that starts at or after a time
+     * @param time the time from the start of cooking
+     * @return the index of the entry, or size() if every entry starts before the time
+     */
+    public int findFirstStartingAt(@NonNull ReadableDuration time) {
+        return lowerBound(mStarts, time.getMillis());
+    }
+
+    /**
+     * Returns the entries that are in progress at any time in a range, in order of start time
+     * @param from the start of the range, inclusive
+     * @param to the end of the range, exclusive
+     * @return the entries
+     */
+    @NonNull
+    public List<Entry> getEntriesBetween(@NonNull ReadableDuration from,
+                                         @NonNull ReadableDuration to) {
+        final long fromMillis = from.getMillis();
+        final long toMillis = to.getMillis();
+        final List<Entry> entries = new ArrayList<>();
+        // Entries before the first one that ends after fromMillis (counting earlier entries) end
+        // at or before fromMillis, and entries from the first one that starts at or after
+        // toMillis start too late
+        final int first = upperBound(mMaxEnds, fromMillis);
+        final int last = lowerBound(mStarts, toMillis);
+        for (int i = first; i < last; i++) {
+            if (mEnds[i] > fromMillis) {
+                entries.add(new Entry(i));
+            }
+        }
+        return entries;
+    }
+
+    /**
+     * Returns the entries that are in progress at a time, in order of start time
+     * @param time the time from the start of cooking
+     * @return the entries
+     */
+    @NonNull
+    public List<Entry> getEntriesAt(@NonNull ReadableDuration time) {
+        return getEntriesBetween(time, Duration.millis(time.getMillis() + 1));
+    }
+
+    /**
+     * @return the index of the first value in a sorted array that is not less than key,
+     * or the length of the array
+     */
+    private static int lowerBound(long[] values, long key) {
+        int low = 0;
+        int high = values.length;
+        while (low < high) {
+            final int mid = (low + high) >>> 1;
+            if (values[mid] < key) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * @return the index of the first value in a sorted array that is greater than key,
+     * or the length of the array
+     */
+    private static int upperBound(long[] values, long key) {
+        int low = 0;
+        int high = values.length;
+        while (low < high) {
+            final int mid = (low + high) >>> 1;
+            if (values[mid] <= key) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * A step in a timeline
+     */
+    public final class Entry {
+        /**
+         * The index of this entry
+         */
+        private final int mIndex;
+
+        private Entry(int index) {
+            mIndex = index;
+        }
+
+        /**
+         * @return the index of this entry in the timeline
+         */
+        public int getIndex() {
+            return mIndex;
+        }
+
+        /**
+         * @return the plan index of the step
+         */
+        public int getStepIndex() {
+            return mSteps[mIndex];
+        }
+
+        /**
+         * @return the step
+         */
+        @NonNull
+        public Step getStep() {
+            return mPlan.getStep(mSteps[mIndex]);
+        }
+
+        /**
+         * @return the recipe that contains the step
+         */
+        @NonNull
+        public Recipe getRecipe() {
+            return mPlan.getRecipe(mPlan.getStepRecipe(mSteps[mIndex]));
+        }
+
+        /**
+         * @return the time from the start of cooking to the start of the step
+         */
+        @NonNull
+        public Duration getStartOffset() {
+            return Duration.millis(mStarts[mIndex]);
+        }
+
+        /**
+         * @return the time from the start of cooking to the end of the step
+         */
+        @NonNull
+        public Duration getEndOffset() {
+            return Duration.millis(mEnds[mIndex]);
+        }
+
+        /**
+         * @return the lane of the step
+         */
+        public int getLane() {
+            return mLanes[mIndex];
+        }
+    }
+}